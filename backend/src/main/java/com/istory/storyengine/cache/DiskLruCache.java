@@ -0,0 +1,314 @@
+package com.istory.storyengine.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Cache disque borné en octets (LRU), un fichier par clé, conservé entre deux redémarrages.
+ * Les clés sont des empreintes hexadécimales (contenu adressé) : rangées en sous-dossiers de 2 caractères.
+ * <p>
+ * - écriture atomique (fichier temporaire puis move) : un crash ne laisse jamais d'entrée tronquée ;
+ * - l'ordre LRU est tenu en mémoire et reflété dans la date de modification des fichiers
+ *   (touchée à la lecture), ce qui permet de le reconstruire au démarrage ;
+ * - I/O hors verrou : seul l'index est protégé.
+ * <p>
+ * Métriques : mêmes noms que LruCache (cache.gets, cache.evictions, cache.size, cache.weight.bytes).
+ */
+public final class DiskLruCache {
+
+    private static final Logger log = LoggerFactory.getLogger(DiskLruCache.class);
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final String name;
+    private final Path dir;
+    private final long maxBytes;
+
+    // accessOrder = true : l'itération commence par l'entrée la moins récemment utilisée
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter sizeEvictions;
+    private final Counter failures;
+
+    public DiskLruCache(String name, Path dir, long maxBytes, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+
+        Tags tags = Tags.of("cache", name);
+        this.hits = meterRegistry.counter("cache.gets", tags.and("result", "hit"));
+        this.misses = meterRegistry.counter("cache.gets", tags.and("result", "miss"));
+        this.sizeEvictions = meterRegistry.counter("cache.evictions", tags.and("reason", "size"));
+        this.failures = meterRegistry.counter("cache.io.failures", tags);
+        meterRegistry.gauge("cache.size", tags, this, DiskLruCache::size);
+        meterRegistry.gauge("cache.weight.bytes", tags, this, DiskLruCache::weight);
+
+        load();
+    }
+
+    /**
+     * @return le contenu, ou vide si absent (ou illisible : traité comme un miss)
+     */
+    public Optional<byte[]> get(String key) {
+        return read(key, Files::readAllBytes);
+    }
+
+    /**
+     * Contenu projeté en mémoire (mmap, lecture seule) : pas de copie sur le heap, les pages
+     * viennent du cache du système. Le mapping reste valide même si l'entrée est évincée ensuite.
+     */
+    public Optional<ByteBuffer> map(String key) {
+        return read(key, file -> {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            }
+        });
+    }
+
+    /**
+     * Comme map(), sans effet sur les métriques ni sur l'ordre LRU (inspection du contenu juste écrit).
+     */
+    public Optional<ByteBuffer> peek(String key) {
+        synchronized (this) {
+            if (!index.containsKey(key)) return Optional.empty();
+        }
+        try (FileChannel ch = FileChannel.open(fileFor(key), StandardOpenOption.READ)) {
+            return Optional.of(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    private interface Reader<T> {
+        T read(Path file) throws IOException;
+    }
+
+    private <T> Optional<T> read(String key, Reader<T> reader) {
+        synchronized (this) {
+            if (index.get(key) == null) {
+                misses.increment();
+                return Optional.empty();
+            }
+        }
+
+        Path file = fileFor(key);
+        try {
+            T data = reader.read(file);
+            // ordre LRU retrouvé au redémarrage
+            Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+            hits.increment();
+            return Optional.of(data);
+
+        } catch (NoSuchFileException e) {
+            // évincé entre-temps
+            forget(key);
+        } catch (IOException e) {
+            failures.increment();
+            log.warn("Disk cache {}: failed to read {}", name, file, e);
+            forget(key);
+        }
+        misses.increment();
+        return Optional.empty();
+    }
+
+    /**
+     * Écrit (ou remplace) l'entrée ; une entrée plus grosse que tout le cache est ignorée.
+     * Une erreur d'écriture n'est jamais propagée : le cache est un accélérateur, pas une source de vérité.
+     */
+    public void put(String key, byte[] data) {
+        put(key, ByteBuffer.wrap(data));
+    }
+
+    public void put(String key, ByteBuffer data) {
+        if (data.remaining() > maxBytes) return;
+
+        try (Writer writer = writer(key)) {
+            writer.write(data.duplicate());
+            writer.commit();
+        }
+    }
+
+    /**
+     * Écriture en flux (contenu relayé au fil de son téléchargement) : rien n'est visible avant commit(),
+     * close() sans commit() abandonne. Mêmes garanties que put() : atomique, erreurs jamais propagées.
+     */
+    public Writer writer(String key) {
+        return new Writer(key);
+    }
+
+    public final class Writer implements AutoCloseable {
+
+        private final String key;
+        private final Path file;
+        private Path tmp;
+        private FileChannel channel;
+        private long length;
+
+        private Writer(String key) {
+            this.key = key;
+            this.file = fileFor(key);
+            try {
+                Files.createDirectories(file.getParent());
+                tmp = Files.createTempFile(file.getParent(), key, TMP_SUFFIX);
+                channel = FileChannel.open(tmp, StandardOpenOption.WRITE);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        public void write(ByteBuffer data) {
+            if (channel == null) return;
+
+            length += data.remaining();
+            if (length > maxBytes) {
+                // plus gros que tout le cache : ignoré
+                close();
+                return;
+            }
+            try {
+                while (data.hasRemaining()) channel.write(data);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        public void commit() {
+            if (channel == null) return;
+            try {
+                channel.close();
+                channel = null;
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+            admit(key, length);
+        }
+
+        @Override
+        public void close() {
+            try {
+                if (channel != null) channel.close();
+                if (tmp != null) Files.deleteIfExists(tmp);
+            } catch (IOException e) {
+                log.warn("Disk cache {}: failed to discard {}", name, tmp, e);
+            } finally {
+                channel = null;
+            }
+        }
+
+        private void fail(IOException e) {
+            failures.increment();
+            log.warn("Disk cache {}: failed to write {}", name, file, e);
+            close();
+        }
+    }
+
+    private void admit(String key, long length) {
+        List<String> victims = new ArrayList<>();
+        synchronized (this) {
+            Long previous = index.put(key, length);
+            if (previous != null) weight -= previous;
+            weight += length;
+            collectVictims(victims);
+        }
+        delete(victims);
+    }
+
+    public void invalidate(String key) {
+        forget(key);
+        delete(List.of(key));
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    public synchronized long weight() {
+        return weight;
+    }
+
+    Path fileFor(String key) {
+        String shard = key.length() >= 2 ? key.substring(0, 2) : "_";
+        return dir.resolve(shard).resolve(key);
+    }
+
+    /**
+     * Reconstruit l'index depuis le disque (du moins au plus récemment utilisé) et purge les temporaires orphelins.
+     */
+    private void load() {
+        record Found(String key, long size, FileTime modified) {}
+
+        List<Found> found = new ArrayList<>();
+        try {
+            Files.createDirectories(dir);
+            try (Stream<Path> files = Files.walk(dir, 2)) {
+                for (Path p : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                    String fileName = p.getFileName().toString();
+                    if (fileName.endsWith(TMP_SUFFIX)) {
+                        Files.deleteIfExists(p);
+                        continue;
+                    }
+                    found.add(new Found(fileName, Files.size(p), Files.getLastModifiedTime(p)));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open disk cache " + name + " at " + dir, e);
+        }
+
+        found.sort(Comparator.comparing(Found::modified));
+        List<String> victims = new ArrayList<>();
+        synchronized (this) {
+            for (Found f : found) {
+                index.put(f.key(), f.size());
+                weight += f.size();
+            }
+            collectVictims(victims);
+        }
+        delete(victims);
+        log.info("Disk cache {}: {} entries, {} bytes in {}", name, size(), weight(), dir);
+    }
+
+    private void collectVictims(List<String> victims) {
+        Iterator<Map.Entry<String, Long>> eldest = index.entrySet().iterator();
+        while (weight > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> e = eldest.next();
+            weight -= e.getValue();
+            victims.add(e.getKey());
+            eldest.remove();
+            sizeEvictions.increment();
+        }
+    }
+
+    private void delete(List<String> keys) {
+        for (String key : keys) {
+            try {
+                Files.deleteIfExists(fileFor(key));
+            } catch (IOException e) {
+                failures.increment();
+                log.warn("Disk cache {}: failed to delete {}", name, key, e);
+            }
+        }
+    }
+
+    private synchronized void forget(String key) {
+        Long size = index.remove(key);
+        if (size != null) weight -= size;
+    }
+}
@@ -0,0 +1,128 @@
+package com.istory.storyengine.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Cache mémoire borné en nombre d'entrées (LRU) avec expiration (ttl depuis la dernière écriture).
+ * Accès sous verrou : les sections sont courtes (pas d'I/O), la simplicité prime.
+ * <p>
+ * Métriques (conventions Micrometer) : cache.gets{result=hit|miss}, cache.evictions{reason=size|expired},
+ * cache.size, cache.weight.bytes (empreinte estimée via le weigher).
+ */
+public final class LruCache<K, V> {
+
+    private record Slot<V>(V value, long weight, Instant writtenAt) {}
+
+    private final int maxEntries;
+    private final Duration ttl;
+    private final ToLongFunction<V> weigher;
+
+    // accessOrder = true : l'itération commence par l'entrée la moins récemment utilisée
+    private final LinkedHashMap<K, Slot<V>> slots = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+
+    // balayage des expirées au plus une fois par ttl/10 (les get() expirent aussi à la lecture)
+    private final Duration sweepInterval;
+    private Instant nextSweep = Instant.MIN;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter sizeEvictions;
+    private final Counter expiredEvictions;
+
+    public LruCache(String name, int maxEntries, Duration ttl, ToLongFunction<V> weigher, MeterRegistry meterRegistry) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttl = ttl;
+        this.weigher = weigher;
+        this.sweepInterval = ttl.dividedBy(10);
+
+        Tags tags = Tags.of("cache", name);
+        this.hits = meterRegistry.counter("cache.gets", tags.and("result", "hit"));
+        this.misses = meterRegistry.counter("cache.gets", tags.and("result", "miss"));
+        this.sizeEvictions = meterRegistry.counter("cache.evictions", tags.and("reason", "size"));
+        this.expiredEvictions = meterRegistry.counter("cache.evictions", tags.and("reason", "expired"));
+        meterRegistry.gauge("cache.size", tags, this, LruCache::size);
+        meterRegistry.gauge("cache.weight.bytes", tags, this, LruCache::weight);
+    }
+
+    /**
+     * @return la valeur, ou null si absente / expirée
+     */
+    public synchronized V get(K key) {
+        Slot<V> slot = slots.get(key);
+        if (slot == null) {
+            misses.increment();
+            return null;
+        }
+        if (isExpired(slot, Instant.now())) {
+            remove(key);
+            expiredEvictions.increment();
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return slot.value();
+    }
+
+    public synchronized void put(K key, V value) {
+        Instant now = Instant.now();
+        Slot<V> slot = new Slot<>(value, weigher.applyAsLong(value), now);
+        Slot<V> previous = slots.put(key, slot);
+        if (previous != null) weight -= previous.weight();
+        weight += slot.weight();
+
+        if (now.isAfter(nextSweep)) {
+            evictExpired(now);
+            nextSweep = now.plus(sweepInterval);
+        }
+        Iterator<Map.Entry<K, Slot<V>>> eldest = slots.entrySet().iterator();
+        while (slots.size() > maxEntries && eldest.hasNext()) {
+            weight -= eldest.next().getValue().weight();
+            eldest.remove();
+            sizeEvictions.increment();
+        }
+    }
+
+    public synchronized void invalidate(K key) {
+        remove(key);
+    }
+
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    public synchronized long weight() {
+        return weight;
+    }
+
+    private void remove(K key) {
+        Slot<V> slot = slots.remove(key);
+        if (slot != null) weight -= slot.weight();
+    }
+
+    private void evictExpired(Instant now) {
+        // ordre d'accès ≠ ordre d'écriture : parcours complet, d'où le balayage espacé
+        Iterator<Slot<V>> it = slots.values().iterator();
+        while (it.hasNext()) {
+            Slot<V> slot = it.next();
+            if (isExpired(slot, now)) {
+                weight -= slot.weight();
+                it.remove();
+                expiredEvictions.increment();
+            }
+        }
+    }
+
+    private boolean isExpired(Slot<V> slot, Instant now) {
+        return slot.writtenAt().plus(ttl).isBefore(now);
+    }
+}
@@ -0,0 +1,60 @@
+package com.istory.storyengine.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Portée structurée pour des sous-tâches concurrentes (une virtual thread par tâche) :
+ * - join() attend que toutes les tâches réussissent ;
+ * - au premier échec, les autres sont annulées (interruption) et l'erreur est relancée ;
+ * - close() annule ce qui reste et attend la fin des threads : aucune tâche ne survit à la portée.
+ * <p>
+ * Même sémantique que StructuredTaskScope.open() (Joiner.awaitAllSuccessfulOrThrow), encore en preview
+ * dans le JDK 25 : on garde une implémentation sur API stable.
+ * <pre>
+ * try (var scope = new FailFastTaskScope()) {
+ *     Future&lt;A&gt; a = scope.fork(() -> ...);
+ *     Future&lt;B&gt; b = scope.fork(() -> ...);
+ *     scope.join();
+ *     use(a.resultNow(), b.resultNow());
+ * }
+ * </pre>
+ */
+public final class FailFastTaskScope implements AutoCloseable {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final CompletionService<Object> completion = new ExecutorCompletionService<>(executor);
+    private final List<Future<?>> forks = new ArrayList<>();
+
+    @SuppressWarnings("unchecked")
+    public <T> Future<T> fork(Callable<T> task) {
+        Callable<Object> untyped = task::call;
+        Future<T> f = (Future<T>) completion.submit(untyped);
+        forks.add(f);
+        return f;
+    }
+
+    public void join() throws InterruptedException, ExecutionException {
+        try {
+            for (int i = 0; i < forks.size(); i++) {
+                completion.take().get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            cancelAll();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        cancelAll();
+        executor.close(); // attend la terminaison des virtual threads
+    }
+
+    private void cancelAll() {
+        for (Future<?> f : forks) {
+            if (!f.isDone()) f.cancel(true);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.istory.storyengine.concurrent;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Un verrou par clé, créé à la demande et retiré quand plus personne ne le tient ni ne l'attend :
+ * deux clés différentes n'attendent jamais l'une après l'autre, et la mémoire suit le nombre de clés
+ * actives (pas le nombre de clés vues).
+ */
+public final class KeyedLocks<K> {
+
+    private final ConcurrentMap<K, Entry> locks = new ConcurrentHashMap<>();
+
+    private static final class Entry {
+        final ReentrantLock lock = new ReentrantLock();
+        // détenteurs + attente ; modifié uniquement dans compute() (atomique par clé)
+        int leases;
+    }
+
+    /**
+     * Bail sur le verrou de la clé : à fermer (try-with-resources) après lock()/unlock().
+     */
+    public final class Lease implements AutoCloseable {
+        private final K key;
+        private final ReentrantLock lock;
+
+        private Lease(K key, ReentrantLock lock) {
+            this.key = key;
+            this.lock = lock;
+        }
+
+        public ReentrantLock lock() {
+            return lock;
+        }
+
+        @Override
+        public void close() {
+            locks.computeIfPresent(key, (k, e) -> --e.leases == 0 ? null : e);
+        }
+    }
+
+    public Lease lease(K key) {
+        Entry entry = locks.compute(key, (k, e) -> {
+            Entry held = (e == null) ? new Entry() : e;
+            held.leases++;
+            return held;
+        });
+        return new Lease(key, entry.lock);
+    }
+
+    /**
+     * Clés dont le verrou est tenu ou attendu.
+     */
+    public int size() {
+        return locks.size();
+    }
+}
@@ -0,0 +1,66 @@
+package com.istory.storyengine.concurrent;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight : un seul appel en cours par clé ; les appels identiques arrivés pendant
+ * l'exécution attendent et reçoivent le même résultat (ou la même exception).
+ * Rien n'est mémorisé une fois l'appel terminé : l'appel suivant s'exécute à nouveau.
+ */
+public final class SingleFlight<K, V> {
+
+    /**
+     * @param shared true si le résultat vient d'un appel lancé par un autre thread
+     */
+    public record Outcome<V>(V value, boolean shared) {}
+
+    private final ConcurrentMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+
+    public Outcome<V> execute(K key, Supplier<V> action) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> running = calls.putIfAbsent(key, mine);
+        if (running != null) {
+            return new Outcome<>(await(running), true);
+        }
+
+        try {
+            V value = action.get();
+            mine.complete(value);
+            return new Outcome<>(value, false);
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, mine);
+        }
+    }
+
+    /**
+     * Attend l'appel en cours pour cette clé, s'il y en a un ; n'en lance jamais.
+     */
+    public Optional<V> join(K key) {
+        CompletableFuture<V> running = calls.get(key);
+        return running == null ? Optional.empty() : Optional.ofNullable(await(running));
+    }
+
+    public int inFlight() {
+        return calls.size();
+    }
+
+    private static <V> V await(CompletableFuture<V> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            // on relance l'exception d'origine (IllegalStateException -> 400, etc.)
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) throw re;
+            if (cause instanceof Error err) throw err;
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.istory.storyengine.controller;
+
+import com.istory.storyengine.dto.StorySegmentResponse;
+import com.istory.storyengine.service.streaming.SegmentStreamListener;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Expose une génération de segment en Server-Sent Events :
+ * - "narration" : {"text": "..."} au fil de la génération
+ * - "restart"   : la narration reçue est à effacer (nouvelle tentative)
+ * - "segment"   : StorySegmentResponse complet, une fois le segment validé
+ * - "error"     : {"message": "..."} si la génération échoue
+ */
+@Component
+public class SegmentSseStreamer {
+
+    private static final Logger log = LoggerFactory.getLogger(SegmentSseStreamer.class);
+
+    // génération + relecture OpenAI en streaming : large marge
+    private static final long TIMEOUT_MS = 120_000;
+
+    // le thread attend surtout OpenAI : virtual threads
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public SseEmitter stream(Function<SegmentStreamListener, StorySegmentResponse> generation) {
+        SseEmitter emitter = new SseEmitter(TIMEOUT_MS);
+        ClientChannel channel = new ClientChannel(emitter);
+
+        executor.execute(() -> {
+            try {
+                StorySegmentResponse response = generation.apply(new SegmentStreamListener() {
+                    @Override
+                    public void onNarrationDelta(String delta) {
+                        channel.send("narration", Map.of("text", delta));
+                    }
+
+                    @Override
+                    public void onRestart() {
+                        channel.send("restart", Map.of());
+                    }
+                });
+                channel.send("segment", response);
+            } catch (Exception e) {
+                log.warn("Streamed generation failed: {}", e.toString(), e);
+                channel.send("error", Map.of("message", safeMessage(e)));
+            } finally {
+                emitter.complete();
+            }
+        });
+
+        return emitter;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private String safeMessage(Exception e) {
+        String msg = e.getMessage();
+        if (msg == null || msg.isBlank()) return e.getClass().getSimpleName();
+        return msg.length() > 400 ? msg.substring(0, 400) + "…" : msg;
+    }
+
+    /**
+     * Si le client se déconnecte, on continue la génération (l'état de session doit rester cohérent)
+     * mais on arrête d'écrire.
+     */
+    private static final class ClientChannel {
+        private final SseEmitter emitter;
+        private volatile boolean open = true;
+
+        ClientChannel(SseEmitter emitter) {
+            this.emitter = emitter;
+            emitter.onCompletion(() -> open = false);
+            emitter.onTimeout(() -> open = false);
+            emitter.onError(e -> open = false);
+        }
+
+        void send(String event, Object data) {
+            if (!open) return;
+            try {
+                emitter.send(SseEmitter.event().name(event).data(data, MediaType.APPLICATION_JSON));
+            } catch (IOException | IllegalStateException e) {
+                open = false;
+            }
+        }
+    }
+}
@@ -1,13 +1,19 @@
 package com.istory.storyengine.controller;
 
+import com.istory.storyengine.concurrent.SingleFlight;
 import com.istory.storyengine.dto.ChoiceRequest;
 import com.istory.storyengine.dto.RewindResponse;
+import com.istory.storyengine.dto.SessionUsageResponse;
 import com.istory.storyengine.dto.StartStoryRequest;
 import com.istory.storyengine.dto.StorySegmentResponse;
+import com.istory.storyengine.idempotency.IdempotentResponses;
 import com.istory.storyengine.service.StoryService;
+import com.istory.storyengine.service.streaming.SegmentStreamListener;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.UUID;
 
@@ -17,19 +23,69 @@ import java.util.UUID;
 public class StoryController {
 
     private final StoryService storyService;
+    private final SegmentSseStreamer sseStreamer;
+    private final IdempotentResponses idempotentResponses;
 
     @PostMapping("/start")
-    public StorySegmentResponse start(@Valid @RequestBody StartStoryRequest req) {
-        return storyService.start(req);
+    public StorySegmentResponse start(
+            @Valid @RequestBody StartStoryRequest req,
+            @RequestHeader(value = IdempotentResponses.HEADER, required = false) String idempotencyKey
+    ) {
+        return idempotentResponses.execute("start", null, idempotencyKey, req,
+                () -> storyService.start(req)).value();
+    }
+
+    @PostMapping(value = "/start/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter startStream(
+            @Valid @RequestBody StartStoryRequest req,
+            @RequestHeader(value = IdempotentResponses.HEADER, required = false) String idempotencyKey
+    ) {
+        return sseStreamer.stream(listener -> streamed(idempotentResponses.execute("start", null, idempotencyKey, req,
+                () -> storyService.start(req, listener)), listener));
     }
 
     @PostMapping("/{id}/choose")
-    public StorySegmentResponse choose(@PathVariable UUID id, @Valid @RequestBody ChoiceRequest req) {
-        return storyService.choose(id, req);
+    public StorySegmentResponse choose(
+            @PathVariable UUID id,
+            @Valid @RequestBody ChoiceRequest req,
+            @RequestHeader(value = IdempotentResponses.HEADER, required = false) String idempotencyKey
+    ) {
+        return idempotentResponses.execute("choose", id, idempotencyKey, req,
+                () -> storyService.choose(id, req)).value();
+    }
+
+    @PostMapping(value = "/{id}/choose/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter chooseStream(
+            @PathVariable UUID id,
+            @Valid @RequestBody ChoiceRequest req,
+            @RequestHeader(value = IdempotentResponses.HEADER, required = false) String idempotencyKey
+    ) {
+        return sseStreamer.stream(listener -> streamed(idempotentResponses.execute("choose", id, idempotencyKey, req,
+                () -> storyService.choose(id, req, listener)), listener));
+    }
+
+    @GetMapping("/{id}/usage")
+    public SessionUsageResponse usage(@PathVariable UUID id) {
+        return storyService.usage(id);
     }
 
     @PostMapping("/{id}/rewind")
-    public RewindResponse rewind(@PathVariable UUID id) {
-        return storyService.rewind(id);
+    public RewindResponse rewind(
+            @PathVariable UUID id,
+            @RequestHeader(value = IdempotentResponses.HEADER, required = false) String idempotencyKey
+    ) {
+        return idempotentResponses.execute("rewind", id, idempotencyKey, null,
+                () -> storyService.rewind(id)).value();
+    }
+
+    /**
+     * Réponse rejouée (retry avec Idempotency-Key) : la narration part d'un bloc avant le segment.
+     */
+    private static StorySegmentResponse streamed(SingleFlight.Outcome<StorySegmentResponse> outcome,
+                                                 SegmentStreamListener listener) {
+        if (outcome.shared()) {
+            listener.onNarrationDelta(outcome.value().narration());
+        }
+        return outcome.value();
     }
 }
@@ -1,11 +1,28 @@
 package com.istory.storyengine.controller;
 
+import com.istory.storyengine.dto.TtsManifestResponse;
+import com.istory.storyengine.dto.TtsSegmentRequest;
 import com.istory.storyengine.dto.TtsUtteranceRequest;
 import com.istory.storyengine.service.openai.OpenAiTtsService;
+import com.istory.storyengine.service.tts.AudioClip;
+import com.istory.storyengine.service.tts.AudioFormat;
+import com.istory.storyengine.service.tts.AudioFrames;
+import com.istory.storyengine.service.tts.AudioPart;
+import com.istory.storyengine.service.tts.AudioStream;
+import com.istory.storyengine.service.tts.ByteRange;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @RestController
@@ -13,23 +30,151 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class TtsController {
 
+    private static final MediaType AUDIO_FRAMES = MediaType.valueOf(AudioFrames.MEDIA_TYPE);
+
+    private static final String CLIPS_PATH = "/api/tts/clips/";
+
+    // ⚠️ l'url est l'empreinte de la requête, pas des octets : un clip resynthétisé après éviction peut
+    // différer sous la même url. Pas d'immutable : frais un jour, puis revalidé par ETag (304 sans relecture)
+    private static final CacheControl CLIP_CACHE = CacheControl.maxAge(Duration.ofDays(1)).cachePublic();
+
     private final OpenAiTtsService tts;
 
-    @PostMapping(value = "/{sessionId}/utterance", produces = "audio/mpeg")
-    public @ResponseBody byte[] utterance(
+    /**
+     * Format négocié : ?format=mp3|opus|aac, sinon en-tête Accept (audio/mpeg, audio/ogg, audio/aac), sinon mp3.
+     */
+    @PostMapping(value = "/{sessionId}/utterance", produces = {"audio/mpeg", "audio/ogg", "audio/aac"})
+    public ResponseEntity<StreamingResponseBody> utterance(
             @PathVariable UUID sessionId,
             @RequestParam(name = "locale", defaultValue = "fr-FR") String locale,
+            @RequestParam(name = "format", required = false) String format,
+            @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept,
             @Valid @RequestBody TtsUtteranceRequest req
     ) {
+        AudioFormat audioFormat = AudioFormat.negotiate(format, accept);
+
         // speed is optional; default handled in service
-        return tts.synthesizeUtterance(
+        AudioStream audio = tts.synthesizeUtterance(
                 sessionId,
                 req.speaker(),
                 req.ageGroup(),
                 req.gender(),
                 req.text(),
                 req.speed(),
-                locale
+                locale,
+                audioFormat
         );
+
+        // ⚡ clip du cache écrit depuis son buffer (heap ou mmap) ; sinon relais chunk par chunk (chunked)
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(audioFormat.mediaType());
+        if (audio.contentLength() >= 0) {
+            response.contentLength(audio.contentLength());
+        }
+        return response.body(audio::writeTo);
+    }
+
+    /**
+     * ⚡ Tout le segment en une requête : clips synthétisés en parallèle, renvoyés en trames dans l'ordre de lecture
+     * (format : AudioFrames). Les options suivent les lignes. Format des clips négocié comme pour /utterance :
+     * ?format=, sinon les types audio de l'en-tête Accept (ex: "application/vnd.istory.audio-frames, audio/ogg;q=0.9"),
+     * sinon mp3.
+     */
+    @PostMapping(value = "/{sessionId}/segment", produces = AudioFrames.MEDIA_TYPE)
+    public ResponseEntity<StreamingResponseBody> segment(
+            @PathVariable UUID sessionId,
+            @RequestParam(name = "locale", defaultValue = "fr-FR") String locale,
+            @RequestParam(name = "format", required = false) String format,
+            @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept,
+            @Valid @RequestBody TtsSegmentRequest req
+    ) {
+        List<AudioPart> parts = tts.synthesizeSegment(sessionId, req.lines(), locale, AudioFormat.negotiate(format, accept));
+
+        return ResponseEntity.ok()
+                .contentType(AUDIO_FRAMES)
+                .body(out -> AudioFrames.write(parts, out));
+    }
+
+    /**
+     * Manifeste du segment : une url GET par clip (adresse = empreinte du contenu), synthèses lancées aussitôt.
+     * Réécoute, retour en arrière et seek passent ensuite par le cache HTTP du client ou d'un proxy.
+     * Format des clips : ?format=, sinon les types audio de l'en-tête Accept (ex: "application/json, audio/ogg"), sinon mp3.
+     */
+    @PostMapping("/{sessionId}/manifest")
+    public TtsManifestResponse manifest(
+            @PathVariable UUID sessionId,
+            @RequestParam(name = "locale", defaultValue = "fr-FR") String locale,
+            @RequestParam(name = "format", required = false) String format,
+            @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept,
+            @Valid @RequestBody TtsSegmentRequest req
+    ) {
+        List<TtsManifestResponse.Clip> clips = tts.manifest(sessionId, req.lines(), AudioFormat.negotiate(format, accept)).stream()
+                .map(c -> new TtsManifestResponse.Clip(c.line(), CLIPS_PATH + c.key(), c.format().mediaType().toString()))
+                .toList();
+        return new TtsManifestResponse(clips);
+    }
+
+    /**
+     * Clip par adresse : ETag fort (empreinte des octets), 304 sur If-None-Match, 206 sur Range (une plage).
+     * ⚡ Le 304 est répondu depuis l'ETag retenu pour la clé : ni lecture du clip, ni resynthèse s'il a été évincé.
+     */
+    @GetMapping("/clips/{key:[0-9a-f]+}")
+    public ResponseEntity<StreamingResponseBody> clip(
+            @PathVariable String key,
+            @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(name = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(name = HttpHeaders.IF_RANGE, required = false) String ifRange
+    ) {
+        Optional<String> known = tts.etag(key);
+        if (ifNoneMatch != null && known.isPresent() && (ifNoneMatch.trim().equals("*") || ifNoneMatch.contains(known.get()))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(known.get())
+                    .cacheControl(CLIP_CACHE)
+                    .build();
+        }
+
+        Optional<AudioClip> found = tts.clip(key);
+        if (found.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        AudioClip clip = found.get();
+        // retenu à l'écriture du clip (y compris s'il vient d'être resynthétisé)
+        String etag = tts.etag(key).orElseGet(clip::etag);
+
+        MediaType type = AudioFormat.sniff(clip.data())
+                .map(AudioFormat::mediaType)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM);
+
+        // If-Range périmé (autre version du clip) : on renvoie tout
+        Optional<ByteRange> requested = (ifRange == null || ifRange.trim().equals(etag))
+                ? ByteRange.parse(range, clip.size())
+                : Optional.empty();
+
+        if (requested.isEmpty()) {
+            return ResponseEntity.ok()
+                    .eTag(etag)
+                    .cacheControl(CLIP_CACHE)
+                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                    .contentType(type)
+                    .contentLength(clip.size())
+                    .body(clip::writeTo);
+        }
+
+        ByteRange r = requested.get();
+        if (r == ByteRange.UNSATISFIABLE) {
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + clip.size())
+                    .build();
+        }
+
+        AudioClip part = clip.slice(r.start(), r.length());
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                .eTag(etag)
+                .cacheControl(CLIP_CACHE)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .header(HttpHeaders.CONTENT_RANGE, r.contentRange(clip.size()))
+                .contentType(type)
+                .contentLength(part.size())
+                .body(part::writeTo);
     }
 }
@@ -0,0 +1,14 @@
+package com.istory.storyengine.dto;
+
+import java.util.UUID;
+
+/**
+ * Tokens OpenAI consommés par une session ; cacheHitRatio = part de l'input servie par le cache de prompt.
+ */
+public record SessionUsageResponse(
+        UUID sessionId,
+        long inputTokens,
+        long cachedInputTokens,
+        long outputTokens,
+        double cacheHitRatio
+) {}
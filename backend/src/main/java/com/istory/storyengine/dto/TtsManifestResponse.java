@@ -0,0 +1,13 @@
+package com.istory.storyengine.dto;
+
+import java.util.List;
+
+/**
+ * Clips d'un segment dans l'ordre de lecture ; chaque url est l'empreinte de la requête de synthèse,
+ * fraîche un jour puis revalidée par ETag.
+ * Plusieurs clips consécutifs de même line se lisent bout à bout (narration découpée).
+ */
+public record TtsManifestResponse(List<Clip> clips) {
+
+    public record Clip(int line, String url, String contentType) {}
+}
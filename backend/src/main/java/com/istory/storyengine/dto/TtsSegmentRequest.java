@@ -0,0 +1,31 @@
+package com.istory.storyengine.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Segment complet à lire : lignes dans l'ordre de lecture, puis les options (voix CHOICE_NARRATOR).
+ * speed s'applique aux options ; chaque ligne garde la sienne.
+ */
+public record TtsSegmentRequest(
+        @NotEmpty @Valid List<TtsUtteranceRequest> utterances,
+        List<String> choices,
+        Double speed
+) {
+
+    /**
+     * @return toutes les lignes à synthétiser, options comprises, dans l'ordre de lecture
+     */
+    public List<TtsUtteranceRequest> lines() {
+        List<TtsUtteranceRequest> lines = new ArrayList<>(utterances);
+        if (choices != null) {
+            for (String choice : choices) {
+                lines.add(new TtsUtteranceRequest("CHOICE_NARRATOR", "ADULT", null, choice, speed));
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,17 @@
+package com.istory.storyengine.idempotency;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "story.idempotency")
+public class IdempotencyProperties {
+
+    // Réponses rejouables (Idempotency-Key) gardées en mémoire, au-delà : les plus anciennes sortent
+    private int maxEntries = 10_000;
+
+    // Fenêtre pendant laquelle un retry client reçoit la réponse déjà produite
+    private Duration ttl = Duration.ofMinutes(10);
+}
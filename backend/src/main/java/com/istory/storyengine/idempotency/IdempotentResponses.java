@@ -0,0 +1,134 @@
+package com.istory.storyengine.idempotency;
+
+import com.istory.storyengine.concurrent.SingleFlight;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Réponses des POST rejouables via l'en-tête Idempotency-Key, clé = (endpoint, session, clé client) :
+ * - réponse terminée : rejouée telle quelle sans repasser par StoryService ;
+ * - réponse en cours : le retry attend la génération déjà lancée ;
+ * - échec : rien n'est gardé, le retry suivant relance l'opération.
+ * Cache borné (maxEntries, ordre d'insertion) et expiré (ttl).
+ * ⚠️ Seules les réponses terminées sont évincées : évincer une clé en cours ferait relancer l'opération
+ * par son retry. Si tout est en cours, le cache dépasse maxEntries (borné par les requêtes simultanées).
+ */
+@Component
+@RequiredArgsConstructor
+public class IdempotentResponses {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private final IdempotencyProperties props;
+    private final MeterRegistry meterRegistry;
+
+    // accès sous synchronized(entries) : LinkedHashMap = éviction du plus ancien en O(1)
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+    private record Entry(Object request, CompletableFuture<Object> response, Instant createdAt) {}
+
+    @PostConstruct
+    void registerGauges() {
+        meterRegistry.gauge("story.idempotency.entries", Tags.empty(), this, IdempotentResponses::size);
+    }
+
+    /**
+     * @param sessionId null pour /start
+     * @param request   corps de la requête : une même clé réutilisée pour une autre requête est refusée
+     */
+    @SuppressWarnings("unchecked")
+    public <T> SingleFlight.Outcome<T> execute(String endpoint, Object sessionId, String idempotencyKey, Object request, Supplier<T> action) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return new SingleFlight.Outcome<>(action.get(), false);
+        }
+
+        String key = endpoint + ":" + (sessionId == null ? "-" : sessionId) + ":" + idempotencyKey.trim();
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        Entry existing;
+
+        synchronized (entries) {
+            evictExpired(Instant.now());
+            existing = entries.get(key);
+            if (existing == null) {
+                entries.put(key, new Entry(request, mine, Instant.now()));
+                evictCompleted(Math.max(1, props.getMaxEntries()));
+            }
+        }
+
+        if (existing != null) {
+            if (!Objects.equals(existing.request(), request)) {
+                meterRegistry.counter("story.idempotency.requests", "endpoint", endpoint, "result", "conflict").increment();
+                throw new IllegalStateException(HEADER + " already used for a different request");
+            }
+            String result = existing.response().isDone() ? "replay" : "attached";
+            meterRegistry.counter("story.idempotency.requests", "endpoint", endpoint, "result", result).increment();
+            return new SingleFlight.Outcome<>((T) await(existing.response()), true);
+        }
+
+        meterRegistry.counter("story.idempotency.requests", "endpoint", endpoint, "result", "miss").increment();
+        try {
+            T value = action.get();
+            mine.complete(value);
+            return new SingleFlight.Outcome<>(value, false);
+        } catch (RuntimeException | Error e) {
+            // ❌ on ne garde pas un échec : le retry suivant doit pouvoir réussir
+            synchronized (entries) {
+                entries.remove(key);
+            }
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private void evictExpired(Instant now) {
+        // ordre d'insertion : on s'arrête à la première entrée encore valide ; une entrée en cours reste
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry e = it.next().getValue();
+            if (!e.createdAt().plus(props.getTtl()).isBefore(now)) return;
+            if (e.response().isDone()) it.remove();
+        }
+    }
+
+    /**
+     * Plus anciennes réponses terminées d'abord, jusqu'à maxEntries ; les clés en cours sont sautées.
+     */
+    private void evictCompleted(int maxEntries) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (entries.size() > maxEntries && it.hasNext()) {
+            if (it.next().response().isDone()) it.remove();
+        }
+        if (entries.size() > maxEntries) {
+            meterRegistry.counter("story.idempotency.overflow").increment();
+        }
+    }
+
+    private static Object await(CompletableFuture<Object> response) {
+        try {
+            return response.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) throw re;
+            if (cause instanceof Error err) throw err;
+            throw e;
+        }
+    }
+}
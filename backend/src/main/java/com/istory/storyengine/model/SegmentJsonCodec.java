@@ -0,0 +1,108 @@
+package com.istory.storyengine.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression du JSON de segment stocké en base : deflate avec dictionnaire prédéfini
+ * (clés du schéma, squelette des utterances/choix, vocabulaire courant des histoires),
+ * efficace sur des documents de quelques Ko où deflate seul n'a pas assez d'historique.
+ * <p>
+ * Format : 1 octet de version puis les données.
+ * - 0 : UTF-8 brut (documents trop petits pour gagner quoi que ce soit)
+ * - 1 : deflate (sans en-tête zlib) + dictionnaire segment-dictionary-v1
+ * Un nouveau dictionnaire = une nouvelle version ; les anciennes restent décodables.
+ */
+public final class SegmentJsonCodec {
+
+    static final byte RAW = 0;
+    static final byte DEFLATE_DICT_V1 = 1;
+
+    // en dessous, l'en-tête deflate coûte plus qu'il ne rapporte
+    private static final int MIN_COMPRESS_BYTES = 64;
+
+    private static final byte[] DICTIONARY_V1 = loadDictionary("/codec/segment-dictionary-v1.txt");
+
+    private SegmentJsonCodec() {}
+
+    public static byte[] encode(String json) {
+        byte[] utf8 = json.getBytes(StandardCharsets.UTF_8);
+        if (utf8.length < MIN_COMPRESS_BYTES) return withVersion(RAW, utf8, utf8.length);
+
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setDictionary(DICTIONARY_V1);
+            deflater.setInput(utf8);
+            deflater.finish();
+
+            // +1 version ; un document incompressible peut grossir de quelques octets
+            byte[] out = new byte[utf8.length + 64];
+            out[0] = DEFLATE_DICT_V1;
+            int len = 1;
+            while (!deflater.finished()) {
+                if (len == out.length) out = Arrays.copyOf(out, out.length * 2);
+                len += deflater.deflate(out, len, out.length - len);
+            }
+            return len - 1 < utf8.length ? Arrays.copyOf(out, len) : withVersion(RAW, utf8, utf8.length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static String decode(byte[] stored) {
+        if (stored == null || stored.length == 0) return null;
+
+        return switch (stored[0]) {
+            case RAW -> new String(stored, 1, stored.length - 1, StandardCharsets.UTF_8);
+            case DEFLATE_DICT_V1 -> inflate(stored, DICTIONARY_V1);
+            default -> throw new IllegalStateException("Unknown segment codec version: " + stored[0]);
+        };
+    }
+
+    private static String inflate(byte[] stored, byte[] dictionary) {
+        Inflater inflater = new Inflater(true);
+        try {
+            // deflate brut : le dictionnaire se pose avant toute entrée
+            inflater.setDictionary(dictionary);
+            inflater.setInput(stored, 1, stored.length - 1);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(stored.length * 4);
+            byte[] buf = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated segment payload");
+                }
+                out.write(buf, 0, n);
+            }
+            return out.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted segment payload", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] withVersion(byte version, byte[] data, int len) {
+        byte[] out = new byte[len + 1];
+        out[0] = version;
+        System.arraycopy(data, 0, out, 1, len);
+        return out;
+    }
+
+    private static byte[] loadDictionary(String resource) {
+        try (InputStream in = SegmentJsonCodec.class.getResourceAsStream(resource)) {
+            if (in == null) throw new IllegalStateException("Missing compression dictionary " + resource);
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.istory.storyengine.model;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * StoryNode.segmentJson reste une String côté Java ; la colonne contient la version compressée.
+ */
+@Converter
+public class SegmentJsonConverter implements AttributeConverter<String, byte[]> {
+
+    @Override
+    public byte[] convertToDatabaseColumn(String json) {
+        return json == null ? null : SegmentJsonCodec.encode(json);
+    }
+
+    @Override
+    public String convertToEntityAttribute(byte[] stored) {
+        return SegmentJsonCodec.decode(stored);
+    }
+}
@@ -2,21 +2,31 @@ package com.istory.storyengine.model;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.springframework.data.domain.Persistable;
 
 import java.time.Instant;
 import java.util.UUID;
 
 @Entity
-@Table(name = "story_node")
+// ✅ arbre des segments : un noeud par (parent, choix) ; un rewind déplace le curseur de session sans rien supprimer
+// (session_id, segment_index) : archivage / parcours d'une session (plusieurs branches au même index)
+@Table(
+        name = "story_node",
+        indexes = @Index(name = "idx_story_node_session_segment", columnList = "session_id, segment_index"),
+        uniqueConstraints = @UniqueConstraint(
+                name = "uk_story_node_parent_choice",
+                columnNames = {"parent_node_id", "choice_id"}
+        )
+)
 @Getter
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-public class StoryNode {
+public class StoryNode implements Persistable<UUID> {
 
+    // ✅ attribué par l'application : la session pointe sur le noeud avant son écriture (write-behind)
     @Id
-    @GeneratedValue
     private UUID id;
 
     @Column(nullable = false)
@@ -26,6 +36,10 @@ public class StoryNode {
     @Column(nullable = true)
     private UUID parentNodeId;
 
+    // id du choix joué sur le parent pour arriver ici ; null pour le 1er noeud (racine)
+    @Column(nullable = true, length = 5)
+    private String choiceId;
+
     // null pour le 1er noeud (racine)
     @Column(nullable = true, length = 2000)
     private String choiceText;
@@ -36,11 +50,29 @@ public class StoryNode {
     @Column(nullable = false)
     private int segmentIndex;
 
-    @Lob
-    @Column(nullable = false)
+    // ⚡ stocké compressé (deflate + dictionnaire, cf. SegmentJsonCodec) ; String côté Java
+    @Convert(converter = SegmentJsonConverter.class)
+    @Column(nullable = false, length = 262144)
     private String segmentJson; // JSON complet renvoyé par l'IA (narration + choix)
 
     // ✅ conservé (utile pour rewind / logique morale si présente)
     @Column(nullable = false)
     private boolean moralSegment; // true si choix moral fait pour arriver à ce segment
+
+    // un noeud n'est jamais modifié : save() = INSERT direct, sans SELECT pour deviner s'il existe
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private boolean persisted;
+
+    @Override
+    public boolean isNew() {
+        return !persisted;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markPersisted() {
+        persisted = true;
+    }
 }
@@ -6,10 +6,15 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.hibernate.annotations.Check;
 
+import java.time.Instant;
 import java.util.UUID;
 
 @Entity
-@Table(name = "story_session")
+// index sur l'activité : expiration et éviction LRU (SessionLifecycleManager)
+@Table(
+        name = "story_session",
+        indexes = @Index(name = "idx_story_session_last_activity", columnList = "last_activity_at")
+)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -42,6 +47,10 @@ public class StorySession {
     @Column(nullable = false)
     private int currentSegmentIndex = 0;
 
+    // Curseur dans l'arbre des segments (noeud courant) ; déplacé par choose / rewind
+    @Column(nullable = true)
+    private UUID currentNodeId;
+
     @Column(nullable = false)
     private int lastMoralSegmentIndex = 0;
 
@@ -92,4 +101,18 @@ public class StorySession {
     // Affichage “Chapitre X/Y”
     @Column(nullable = false)
     private int plannedSegments;
+
+    // Consommation OpenAI cumulée des segments servis (cachedInputTokens ⊂ inputTokens)
+    @Column(nullable = false)
+    private long inputTokens;
+
+    @Column(nullable = false)
+    private long cachedInputTokens;
+
+    @Column(nullable = false)
+    private long outputTokens;
+
+    // Dernière écriture de la session (expiration / éviction)
+    @Column(name = "last_activity_at", nullable = false)
+    private Instant lastActivityAt;
 }
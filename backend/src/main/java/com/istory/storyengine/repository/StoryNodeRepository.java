@@ -2,17 +2,45 @@ package com.istory.storyengine.repository;
 
 import com.istory.storyengine.model.StoryNode;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 public interface StoryNodeRepository extends JpaRepository<StoryNode, UUID> {
 
-    Optional<StoryNode> findFirstBySessionIdAndSegmentIndex(UUID sessionId, int segmentIndex);
+    /**
+     * Suite déjà générée pour (parent, choix) : servie par la contrainte unique uk_story_node_parent_choice.
+     */
+    Optional<StoryNode> findFirstByParentNodeIdAndChoiceId(UUID parentNodeId, String choiceId);
+
+    @Query("select n.choiceId from StoryNode n where n.parentNodeId = :parentNodeId")
+    List<String> findChildChoiceIds(@Param("parentNodeId") UUID parentNodeId);
 
     Optional<StoryNode> findFirstBySessionIdOrderBySegmentIndexDesc(UUID sessionId);
 
-    void deleteBySessionIdAndSegmentIndexGreaterThan(UUID sessionId, int segmentIndex);
+    List<StoryNode> findBySessionIdOrderBySegmentIndexAsc(UUID sessionId);
+
+    /**
+     * Octets des segments stockés (colonne compressée, cf. SegmentJsonCodec) : ce que la table pèse vraiment.
+     * ⚠️ Parcourt la table : appelé par le balayage du cycle de vie, jamais par requête.
+     */
+    @Query(value = "select coalesce(sum(octet_length(segment_json)), 0) from story_node", nativeQuery = true)
+    long sumStoredSegmentBytes();
+
+    /**
+     * Idem pour une session (octets rendus par son expiration), servi par idx_story_node_session_segment.
+     */
+    @Query(value = "select coalesce(sum(octet_length(segment_json)), 0) from story_node where session_id = :sessionId",
+            nativeQuery = true)
+    long sumStoredSegmentBytes(@Param("sessionId") UUID sessionId);
+
+    @Modifying
+    @Query("delete from StoryNode n where n.sessionId = :sessionId")
+    int deleteAllOfSession(@Param("sessionId") UUID sessionId);
 
     /**
      * ✅ Implémentation Java (default method) -> Spring Data ne tente PAS de générer de query.
@@ -1,10 +1,29 @@
 package com.istory.storyengine.repository;
 
 import com.istory.storyengine.model.StorySession;
+import com.istory.storyengine.model.StoryStatus;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
 public interface StorySessionRepository
         extends JpaRepository<StorySession, UUID> {
+
+    // Sessions sans activité depuis "before" (les plus anciennes d'abord)
+    @Query("select s.id from StorySession s where s.status in :statuses and s.lastActivityAt < :before order by s.lastActivityAt")
+    List<UUID> findIdsInactiveSince(
+            @Param("statuses") Collection<StoryStatus> statuses,
+            @Param("before") Instant before,
+            Pageable page
+    );
+
+    // Éviction LRU quand le plafond est dépassé
+    @Query("select s.id from StorySession s order by s.lastActivityAt")
+    List<UUID> findLeastRecentlyActiveIds(Pageable page);
 }
@@ -0,0 +1,18 @@
+package com.istory.storyengine.service;
+
+import com.istory.storyengine.model.StorySegment;
+import com.istory.storyengine.service.openai.TokenUsage;
+
+/**
+ * Segment validé prêt à être persisté, avec le JSON brut renvoyé par l'IA
+ * et les tokens consommés pour l'obtenir.
+ */
+public record GeneratedSegment(
+        StorySegment segment,
+        String segmentJson,
+        TokenUsage usage
+) {
+    public long tokensUsed() {
+        return usage.total();
+    }
+}
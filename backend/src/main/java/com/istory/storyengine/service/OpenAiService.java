@@ -2,18 +2,38 @@ package com.istory.storyengine.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.istory.storyengine.service.openai.CompletionCache;
+import com.istory.storyengine.service.openai.OpenAiCompletion;
 import com.istory.storyengine.service.openai.OpenAiProperties;
+import com.istory.storyengine.service.openai.OutputMode;
+import com.istory.storyengine.service.openai.ResponseTextExtractor;
+import com.istory.storyengine.service.openai.TokenUsage;
+import com.istory.storyengine.service.prompt.OutputSchemas;
 import com.istory.storyengine.service.prompt.PromptSystem;
+import com.istory.storyengine.service.prompt.SegmentPrompt;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -22,117 +42,302 @@ public class OpenAiService {
 
     private final WebClient openAiWebClient;
     private final OpenAiProperties props;
+    private final MeterRegistry meterRegistry;
+    private final CompletionCache completionCache;
+
+    // même plafond que les codecs du WebClient (OpenAiConfig)
+    private static final int MAX_RESPONSE_BYTES = 20 * 1024 * 1024;
+
+    private static final int ERROR_BODY_CHARS = 500;
 
     private final ObjectMapper mapper = new ObjectMapper();
 
-    public String generateJsonText(String userPromptJson) {
+    /**
+     * Génère un segment à partir du prompt découpé (préfixe stable + état du tour)
+     * et renvoie aussi l'usage (tokens, dont tokens servis par le cache de prompt).
+     * ⚠️ Pas mis en cache : l'appelant le conserve via keepSegmentCompletion une fois validé.
+     */
+    public OpenAiCompletion generateSegmentCompletion(SegmentPrompt prompt, boolean ending) {
+        OpenAiCompletion completion = callUnvalidated("segment", segmentRequestBody(prompt, ending));
 
-        Map<String, Object> body = new HashMap<>();
-        body.put("model", props.getModel());
-        body.put("instructions", PromptSystem.SYSTEM_PROMPT);
-        body.put("input", userPromptJson);
-        body.put("temperature", 0.7);
+        // Petit log de sanity
+        String extracted = completion.text();
+        log.debug("OpenAI extracted (first 80 chars) => {}", extracted.substring(0, Math.min(80, extracted.length())));
+
+        return completion;
+    }
+
+    /**
+     * Réparation ciblée d'un segment invalide (segment + violations), température basse.
+     * ⚠️ Pas mise en cache : l'appelant la conserve via keepRepairCompletion une fois validée.
+     */
+    public OpenAiCompletion repairSegmentCompletion(String repairInputJson, boolean ending) {
+        return callUnvalidated("repair", repairRequestBody(repairInputJson, ending));
+    }
+
+    /**
+     * Conserve une réponse de segment validée : seules celles-ci sont resservies (rejeu, redémarrage).
+     * Une réponse rejetée n'est jamais conservée, la tentative suivante rappelle le modèle.
+     */
+    public void keepSegmentCompletion(SegmentPrompt prompt, boolean ending, OpenAiCompletion completion) {
+        keep(segmentRequestBody(prompt, ending), completion);
+    }
+
+    /**
+     * Idem pour une réparation validée.
+     */
+    public void keepRepairCompletion(String repairInputJson, boolean ending, OpenAiCompletion completion) {
+        keep(repairRequestBody(repairInputJson, ending), completion);
+    }
+
+    private void keep(Map<String, Object> body, OpenAiCompletion completion) {
+        // usage ZERO = déjà servie par le cache : rien de neuf à conserver (et l'usage d'origine est préservé)
+        if (completion.usage().total() == 0) return;
+        completionCache.put(completionCache.fingerprint(body), completion);
+    }
+
+    public String generateTitleJson(String contextJson) {
+        // titre : pas de validation métier, la réponse est mise en cache telle quelle (callResponses)
+        Map<String, Object> format = props.getOutputMode().getTitle() == OutputMode.JSON_SCHEMA
+                ? OutputSchemas.STORY_TITLE
+                : null;
+        return callResponses("title", PromptSystem.TITLE_PROMPT, contextJson, 0.7, format, null).text();
+    }
+
+    /**
+     * Variante streamée de generateSegmentCompletion : chaque delta de texte est transmis
+     * à onTextDelta dès son arrivée (SSE "response.output_text.delta"), puis le texte complet
+     * est renvoyé une fois "response.completed" reçu. Comme generateSegmentCompletion, pas mis en cache.
+     * <p>
+     * ⚠️ onTextDelta peut bloquer (SseEmitter.send vers un client lent) : les événements sont consommés
+     * sur le thread appelant (virtual thread de la requête), jamais sur l'event loop Netty partagée par
+     * tous les appels OpenAI. Le flux est tiré avec backpressure : un client lent ralentit sa seule lecture.
+     */
+    public OpenAiCompletion streamSegmentCompletion(SegmentPrompt prompt, boolean ending, Consumer<String> onTextDelta) {
+
+        Map<String, Object> body = segmentRequestBody(prompt, ending);
 
-        String raw = openAiWebClient
+        // ⚡ même requête déjà servie : le texte part d'un bloc, sans appel au modèle
+        String fingerprint = completionCache.fingerprint(body);
+        Optional<OpenAiCompletion> cached = completionCache.get("segment", fingerprint);
+        if (cached.isPresent()) {
+            onTextDelta.accept(cached.get().text());
+            return cached.get();
+        }
+
+        body.put("stream", true);
+
+        StringBuilder text = new StringBuilder();
+        TokenUsage[] usage = {TokenUsage.ZERO};
+
+        // close() annule l'abonnement si le listener ou le parsing échoue en cours de route
+        try (Stream<ServerSentEvent<String>> events = openAiWebClient
                 .post()
                 .uri("/responses")
+                .accept(MediaType.TEXT_EVENT_STREAM)
                 .bodyValue(body)
                 .retrieve()
-                .onStatus(HttpStatusCode::isError, resp ->
-                        resp.bodyToMono(String.class)
-                                .defaultIfEmpty("")
-                                .flatMap(b -> Mono.error(new RuntimeException(
-                                        "OpenAI HTTP " + resp.statusCode().value() + " body=" + b
-                                )))
-                )
-                .bodyToMono(String.class)
-                .block();
-
-        if (raw == null || raw.isBlank()) {
-            throw new RuntimeException("OpenAI returned empty response body");
+                .onStatus(HttpStatusCode::isError, this::httpError)
+                .bodyToFlux(new ParameterizedTypeReference<ServerSentEvent<String>>() {})
+                .toStream()) {
+            events.forEach(event -> handleStreamEvent(event.data(), text, usage, onTextDelta));
         }
 
-        try {
-            JsonNode root = mapper.readTree(raw);
+        String extracted = text.toString().trim();
+        if (extracted.isBlank()) {
+            throw new RuntimeException("OpenAI stream produced no output_text");
+        }
+        recordUsage("segment", usage[0]);
+        return new OpenAiCompletion(extracted, usage[0]);
+    }
 
-            String extracted = extractOutputText(root);
+    private void handleStreamEvent(String data, StringBuilder text, TokenUsage[] usage, Consumer<String> onTextDelta) {
+        if (data == null || data.isBlank() || "[DONE]".equals(data)) return;
 
-            if (extracted == null || extracted.isBlank()) {
-                // 🔥 on log le raw pour comprendre
-                throw new RuntimeException("OpenAI output_text empty. raw=" + raw);
+        JsonNode event;
+        try {
+            event = mapper.readTree(data);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to parse OpenAI stream event. data=" + abbreviate(data), e);
+        }
+
+        switch (event.path("type").asText("")) {
+            case "response.output_text.delta" -> {
+                String delta = event.path("delta").asText("");
+                if (!delta.isEmpty()) {
+                    text.append(delta);
+                    onTextDelta.accept(delta);
+                }
             }
+            case "response.completed" -> usage[0] = TokenUsage.from(event.path("response").path("usage"));
+            case "response.failed", "response.incomplete", "error" ->
+                    throw new RuntimeException("OpenAI stream failed. event=" + abbreviate(data));
+            default -> {
+                // response.created, output_item.added, ... : rien à faire
+            }
+        }
+    }
 
-            // Petit log de sanity
-            log.debug("OpenAI extracted (first 80 chars) => {}", extracted.substring(0, Math.min(80, extracted.length())));
+    /**
+     * Schéma strict du segment (fin ou suite) si le mode JSON_SCHEMA est actif pour les segments.
+     */
+    private Map<String, Object> segmentFormat(boolean ending) {
+        if (props.getOutputMode().getSegment() != OutputMode.JSON_SCHEMA) return null;
+        return ending ? OutputSchemas.SEGMENT_ENDING : OutputSchemas.SEGMENT_CONTINUE;
+    }
 
-            return extracted.trim();
+    private Map<String, Object> segmentRequestBody(SegmentPrompt prompt, boolean ending) {
+        return requestBody(PromptSystem.SYSTEM_PROMPT, prompt.toInput(), 0.7, segmentFormat(ending), prompt.cacheKey());
+    }
 
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to parse OpenAI response JSON. raw=" + raw, e);
-        }
+    private Map<String, Object> repairRequestBody(String repairInputJson, boolean ending) {
+        return requestBody(PromptSystem.REPAIR_PROMPT, repairInputJson, 0.2, segmentFormat(ending), null);
     }
 
-    public String generateTitleJson(String contextJson) {
-        // même mécanique que generateJsonText, mais avec TITLE_PROMPT
+    /**
+     * @param input      texte, ou liste de messages (préfixe stable en premier)
+     * @param cacheKey   prompt_cache_key (null = pas de routage de cache explicite)
+     */
+    private Map<String, Object> requestBody(
+            String instructions,
+            Object input,
+            double temperature,
+            Map<String, Object> textFormat,
+            String cacheKey
+    ) {
         Map<String, Object> body = new HashMap<>();
         body.put("model", props.getModel());
-        body.put("instructions", PromptSystem.TITLE_PROMPT);
-        body.put("input", contextJson);
-        body.put("temperature", 0.7);
-
-        String raw = openAiWebClient
-                .post()
-                .uri("/responses")
-                .bodyValue(body)
-                .retrieve()
-                .onStatus(HttpStatusCode::isError, resp ->
-                        resp.bodyToMono(String.class)
-                                .defaultIfEmpty("")
-                                .flatMap(b -> Mono.error(new RuntimeException(
-                                        "OpenAI HTTP " + resp.statusCode().value() + " body=" + b
-                                )))
-                )
-                .bodyToMono(String.class)
-                .block();
-
-        if (raw == null || raw.isBlank()) {
-            throw new RuntimeException("OpenAI returned empty response body");
+        body.put("instructions", instructions);
+        body.put("input", input);
+        body.put("temperature", temperature);
+        if (textFormat != null) {
+            body.put("text", textFormat);
         }
+        if (cacheKey != null) {
+            body.put("prompt_cache_key", cacheKey);
+        }
+        return body;
+    }
 
+    /**
+     * Compteurs globaux de tokens (dont la part servie par le cache de prompt du provider).
+     */
+    private void recordUsage(String workload, TokenUsage usage) {
+        meterRegistry.counter("openai.tokens", "workload", workload, "type", "input").increment(usage.inputTokens());
+        meterRegistry.counter("openai.tokens", "workload", workload, "type", "cached").increment(usage.cachedInputTokens());
+        meterRegistry.counter("openai.tokens", "workload", workload, "type", "output").increment(usage.outputTokens());
+    }
+
+    private Mono<? extends Throwable> httpError(ClientResponse resp) {
+        return resp.bodyToMono(String.class)
+                .defaultIfEmpty("")
+                .flatMap(b -> Mono.error(new RuntimeException(
+                        "OpenAI HTTP " + resp.statusCode().value() + " body=" + abbreviate(b)
+                )));
+    }
+
+    private OpenAiCompletion callResponses(
+            String workload,
+            String instructions,
+            Object input,
+            double temperature,
+            Map<String, Object> textFormat,
+            String cacheKey
+    ) {
+        return callResponses(workload, requestBody(instructions, input, temperature, textFormat, cacheKey));
+    }
+
+    private OpenAiCompletion callResponses(String workload, Map<String, Object> body) {
+
+        // ⚡ même requête déjà servie (rejeu, QA, branche réexplorée) : pas d'appel au modèle
+        String fingerprint = completionCache.fingerprint(body);
+        Optional<OpenAiCompletion> cached = completionCache.get(workload, fingerprint);
+        if (cached.isPresent()) return cached.get();
+
+        OpenAiCompletion result = fetch(workload, body);
+        completionCache.put(fingerprint, result);
+        return result;
+    }
+
+    /**
+     * Comme callResponses, sans mise en cache de la réponse obtenue (validée ensuite par l'appelant).
+     */
+    private OpenAiCompletion callUnvalidated(String workload, Map<String, Object> body) {
+        return completionCache.get(workload, completionCache.fingerprint(body))
+                .orElseGet(() -> fetch(workload, body));
+    }
+
+    /**
+     * ⚡ Chaque buffer réseau est donné au parser non bloquant dès son arrivée puis libéré : le corps n'est
+     * jamais joint en un seul buffer, ni copié dans une String, ni lu en arbre JSON complet.
+     * Seule copie restante : l'output_text lui-même, en String (voir ResponseTextExtractor) ; trim() ne
+     * la recopie que s'il y a des blancs en bordure.
+     */
+    private OpenAiCompletion fetch(String workload, Map<String, Object> body) {
+        ResponseTextExtractor.Feed feed = ResponseTextExtractor.feed();
+
+        Long size;
         try {
-            JsonNode root = mapper.readTree(raw);
-            String extracted = extractOutputText(root);
-            if (extracted == null || extracted.isBlank()) {
-                throw new RuntimeException("OpenAI output_text empty. raw=" + raw);
-            }
-            return extracted.trim();
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to parse OpenAI response JSON. raw=" + raw, e);
+            size = openAiWebClient
+                    .post()
+                    .uri("/responses")
+                    .bodyValue(body)
+                    .retrieve()
+                    .onStatus(HttpStatusCode::isError, this::httpError)
+                    .bodyToFlux(DataBuffer.class)
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                    .reduce(0L, (read, buffer) -> read + parse(feed, buffer, read))
+                    .block();
+        } catch (UncheckedIOException e) {
+            throw new RuntimeException("Failed to parse OpenAI response JSON", e.getCause());
         }
-    }
 
+        if (size == null || size == 0) {
+            throw new RuntimeException("OpenAI returned empty response body");
+        }
 
-    private String extractOutputText(JsonNode root) {
-        StringBuilder sb = new StringBuilder();
+        OpenAiCompletion completion;
+        try {
+            completion = feed.finish();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to parse OpenAI response JSON (" + size + " bytes)", e);
+        }
 
-        JsonNode output = root.get("output");
-        if (output == null || !output.isArray()) return null;
+        if (completion.text() == null || completion.text().isBlank()) {
+            throw new RuntimeException("OpenAI output_text empty (" + size + " bytes)");
+        }
 
-        for (JsonNode item : output) {
-            JsonNode content = item.get("content");
-            if (content == null || !content.isArray()) continue;
+        recordUsage(workload, completion.usage());
+        return new OpenAiCompletion(completion.text().trim(), completion.usage());
+    }
 
-            for (JsonNode c : content) {
-                String type = c.path("type").asText("");
-                if ("output_text".equals(type)) {
-                    String text = c.path("text").asText("");
-                    if (!text.isBlank()) {
-                        if (!sb.isEmpty()) sb.append("\n");
-                        sb.append(text);
-                    }
-                }
+    /**
+     * Donne un buffer au parser puis le libère ; même plafond que l'ancien join (corps complet).
+     *
+     * @return octets lus
+     */
+    private static long parse(ResponseTextExtractor.Feed feed, DataBuffer buffer, long alreadyRead) {
+        try {
+            int n = buffer.readableByteCount();
+            if (alreadyRead + n > MAX_RESPONSE_BYTES) {
+                throw new DataBufferLimitException("OpenAI response exceeds " + MAX_RESPONSE_BYTES + " bytes");
+            }
+            try (DataBuffer.ByteBufferIterator chunks = buffer.readableByteBuffers()) {
+                while (chunks.hasNext()) feed.accept(chunks.next());
             }
+            return n;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            DataBufferUtils.release(buffer);
         }
-        return sb.isEmpty() ? null : sb.toString();
+    }
+
+    /**
+     * Extrait de corps pour les messages d'erreur (on ne recopie jamais une réponse entière).
+     */
+    static String abbreviate(String body) {
+        if (body == null) return "";
+        return body.length() <= ERROR_BODY_CHARS ? body : body.substring(0, ERROR_BODY_CHARS) + "…";
     }
 }
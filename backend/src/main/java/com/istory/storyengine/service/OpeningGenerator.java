@@ -0,0 +1,270 @@
+package com.istory.storyengine.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.istory.storyengine.concurrent.FailFastTaskScope;
+import com.istory.storyengine.dto.StartStoryRequest;
+import com.istory.storyengine.model.StorySession;
+import com.istory.storyengine.model.StoryStatus;
+import com.istory.storyengine.service.openai.OpenAiProperties;
+import com.istory.storyengine.service.prompt.PromptUser;
+import com.istory.storyengine.service.streaming.SegmentStreamListener;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Ouverture d'une histoire : session initiale (defaults + variété) puis titre et 1er segment.
+ * Ne touche pas à la base : utilisé par StoryService (démarrage live) et par le pool d'ouvertures.
+ */
+@Service
+@RequiredArgsConstructor
+public class OpeningGenerator {
+
+    public static final String FIRST_CHOICE_SUMMARY = "Début de l'histoire : lancement de l'aventure.";
+
+    private final OpenAiService openAiService;
+    private final SegmentGenerator segmentGenerator;
+    private final OpenAiProperties openAiProperties;
+    private final MeterRegistry meterRegistry;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public record Opening(String title, GeneratedSegment firstSegment) {}
+
+    public StorySession newSession(StartStoryRequest req) {
+
+        StorySession session = new StorySession();
+        session.setTargetAge(req.targetAge());
+        session.setPlayerName(req.playerName());
+        session.setTheme(req.theme());
+
+        // ✅ durationMinutes -> chapterCount
+        session.setChapterCount(req.chapterCount());
+
+        // Defaults simples si le front n'envoie pas le reste
+        session.setTone((req.tone() == null || req.tone().isBlank()) ? "Aventure et bienveillance" : req.tone());
+        session.setMission((req.mission() == null || req.mission().isBlank()) ? "Vivre une aventure et aider quelqu’un" : req.mission());
+        session.setEnvironment((req.environment() == null || req.environment().isBlank())
+                ? "Un lieu original lié au thème : " + req.theme()
+                : req.environment());
+
+        // IMPORTANT : le héros = playerName
+        session.setCharacter((req.character() == null || req.character().isBlank())
+                ? ("Un enfant héroïque nommé " + req.playerName())
+                : req.character());
+
+        session.setImmoralChoicesCount(0);
+        session.setCurrentSegmentIndex(0);
+        session.setLastMoralSegmentIndex(0);
+        session.setStatus(StoryStatus.RUNNING);
+
+        // 🔥 Variété forte, cohérente par session via storySeed
+        String seed = newSeed();
+        session.setStorySeed(seed);
+
+        Random rng = new Random(seed.hashCode());
+
+        session.setOpeningStyle(pickOpeningStyle(rng));
+        session.setVariationPack(pickVariationPack(rng, req.theme(), req.targetAge(), req.chapterCount()));
+        session.setAvoidListCsv(buildAvoidListCsv(rng, req.theme()));
+
+        // plannedSegments / vies : nécessaires au prompt du 1er segment
+        initPlanning(session);
+
+        return session;
+    }
+
+    /**
+     * Titre (avec seed + variationPack) et 1er segment en parallèle :
+     * le 1er segment est donc généré sans titre, les suivants l'ont dans leur contexte.
+     */
+    public Opening generate(StorySession session, SegmentStreamListener listener) {
+        PromptUser firstPrompt = segmentGenerator.promptFor(session, 0, 0, FIRST_CHOICE_SUMMARY, false);
+
+        try (var scope = new FailFastTaskScope()) {
+            Future<String> titleTask = scope.fork(() -> generateTitle(session));
+            Future<GeneratedSegment> firstTask = scope.fork(() -> segmentGenerator.generate(firstPrompt, listener));
+            scope.join();
+            return new Opening(titleTask.resultNow(), firstTask.resultNow());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Story start interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to generate story segment", e.getCause());
+        }
+    }
+
+    String generateTitle(StorySession session) {
+        try {
+            String contextJson = mapper.writeValueAsString(new LinkedHashMap<String, Object>() {{
+                put("targetAge", session.getTargetAge());
+                put("playerName", session.getPlayerName());
+                put("theme", session.getTheme());
+                put("chapterCount", session.getChapterCount());
+
+                put("character", session.getCharacter());
+                put("environment", session.getEnvironment());
+                put("mission", session.getMission());
+                put("tone", session.getTone());
+
+                // 🔥 Variété
+                put("storySeed", session.getStorySeed());
+                put("openingStyle", session.getOpeningStyle());
+                put("variationPack", session.getVariationPack());
+                put("avoidList", SegmentGenerator.splitAvoidList(session.getAvoidListCsv()));
+            }});
+
+            String titleJson = openAiService.generateTitleJson(contextJson);
+
+            var node = mapper.readTree(titleJson);
+            String title = node.path("title").asText("").trim();
+
+            if (title.isBlank()) return "Une aventure surprenante";
+
+            // mobile-friendly
+            if (title.length() > 46) title = title.substring(0, 46).trim();
+
+            return title;
+
+        } catch (Exception e) {
+            String mode = openAiProperties.getOutputMode().getTitle().name().toLowerCase();
+            meterRegistry.counter("story.title.failures", "mode", mode).increment();
+            return "Une aventure surprenante";
+        }
+    }
+
+    static void initPlanning(StorySession session) {
+        // ✅ plannedSegments = chapterCount (une seule fois)
+        if (session.getPlannedSegments() <= 0) {
+            int planned = Math.max(1, session.getChapterCount());
+            session.setPlannedSegments(planned);
+        }
+
+        // ✅ lives calculées une seule fois (et livesRemaining initialisée une seule fois)
+        if (session.getLivesTotal() <= 0) {
+            int livesTotal = Math.max(2, (int) Math.ceil(session.getPlannedSegments() / 2.0)); // 1 vie / 2 chapitres (≈)
+            session.setLivesTotal(livesTotal);
+
+            if (session.getLivesRemaining() <= 0) {
+                session.setLivesRemaining(livesTotal);
+            }
+        }
+    }
+
+    // -------------------------
+    // 🔥 Variabilité (cohérente)
+    // -------------------------
+
+    private String newSeed() {
+        return UUID.randomUUID().toString();
+    }
+
+    private String pickOpeningStyle(Random rng) {
+        String[] styles = {
+                "journal intime",
+                "dialogue",
+                "message secret",
+                "bulletin radio",
+                "enquête",
+                "conte",
+                "carte au trésor",
+                "in medias res",
+                "rumeur",
+                "défi",
+                "lettre",
+                "rêve étrange",
+                "annonce au micro",
+                "petite scène de théâtre",
+                "plan de mission"
+        };
+        return styles[rng.nextInt(styles.length)];
+    }
+
+    private String pickVariationPack(Random rng, String theme, int age, int chapterCount) {
+        String[] eras = {
+                "aujourd'hui", "futur proche", "moyen âge", "monde sous-marin",
+                "station spatiale", "ville volante", "désert de cristal",
+                "île mécanique", "musée vivant", "train magique"
+        };
+
+        String[] twists = {
+                "un allié inattendu", "une règle magique", "un secret à protéger",
+                "un malentendu", "un objet étrange", "un lieu qui change",
+                "un double objectif", "un piège moral subtil", "un personnage ambigu"
+        };
+
+        String[] obstacles = {
+                "énigme", "négociation", "courage", "coopération",
+                "patience", "observation", "créativité", "empathie", "prudence"
+        };
+
+        String[] styles = {
+                "vif", "drôle", "poétique", "suspense doux", "épique", "mystérieux", "tendre"
+        };
+
+        String era = eras[rng.nextInt(eras.length)];
+        String twist = twists[rng.nextInt(twists.length)];
+        String obstacle = obstacles[rng.nextInt(obstacles.length)];
+        String style = styles[rng.nextInt(styles.length)];
+
+        String humour = (age <= 7 ? "léger" : "modéré");
+
+        // ✅ plannedSegments = chapterCount (pas de conversion /4)
+        int plannedSegments = Math.max(1, chapterCount);
+
+        return "theme=" + theme +
+                "; epoque=" + era +
+                "; twist=" + twist +
+                "; obstacle_cle=" + obstacle +
+                "; style=" + style +
+                "; humour=" + humour +
+                "; segments=" + plannedSegments;
+    }
+
+    private String buildAvoidListCsv(Random rng, String theme) {
+        List<String> global = new ArrayList<>(List.of(
+                "renard blessé",
+                "forêt mystérieuse",
+                "petit explorateur curieux",
+                "rayons de soleil à travers les arbres",
+                "soudain un bruit étrange",
+                "un vieux chêne",
+                "un filet de pêche",
+                "un animal coincé",
+                "tu marches doucement",
+                "grands yeux brillants"
+        ));
+
+        // Ajoute quelques bans “template”
+        List<String> extra = List.of(
+                "un sac d’aventurier contient",
+                "tu entends des oiseaux chanter",
+                "un écureuil te regarde",
+                "motifs dorés sur le sol"
+        );
+
+        // on tire 4 de extra au hasard + 6 de global
+        Collections.shuffle(global, rng);
+        List<String> picked = new ArrayList<>(global.subList(0, Math.min(6, global.size())));
+
+        List<String> extraShuffled = new ArrayList<>(extra);
+        Collections.shuffle(extraShuffled, rng);
+        picked.addAll(extraShuffled.subList(0, Math.min(4, extraShuffled.size())));
+
+        // mini contrainte liée au theme : éviter de répéter le thème “sans le vouloir”
+        if (theme != null && !theme.isBlank()) {
+            picked.add("forêt"); // évite le fallback forêt si thème différent
+        }
+
+        return picked.stream()
+                .map(String::trim)
+                .filter(s -> !s.isBlank())
+                .distinct()
+                .collect(Collectors.joining("|"));
+    }
+}
@@ -0,0 +1,299 @@
+package com.istory.storyengine.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.istory.storyengine.model.Choice;
+import com.istory.storyengine.model.StorySegment;
+import com.istory.storyengine.model.StorySession;
+import com.istory.storyengine.model.Utterance;
+import com.istory.storyengine.service.openai.OpenAiCompletion;
+import com.istory.storyengine.service.openai.OpenAiProperties;
+import com.istory.storyengine.service.openai.TokenUsage;
+import com.istory.storyengine.service.prompt.PromptBuilder;
+import com.istory.storyengine.service.prompt.PromptUser;
+import com.istory.storyengine.service.prompt.SegmentPrompt;
+import com.istory.storyengine.service.streaming.NarrationDeltaExtractor;
+import com.istory.storyengine.service.streaming.SegmentStreamListener;
+import com.istory.storyengine.validation.SegmentRepairer;
+import com.istory.storyengine.validation.StorySegmentValidator;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Génération "pure" d'un segment : prompt -> OpenAI -> parse -> normalisation -> validation.
+ * Ne touche pas à la base : utilisé par StoryService (génération live) et par la génération spéculative.
+ */
+@Service
+@RequiredArgsConstructor
+public class SegmentGenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(SegmentGenerator.class);
+
+    private final PromptBuilder promptBuilder;
+    private final OpenAiService openAiService;
+    private final StorySegmentValidator validator;
+    private final SegmentRepairer repairer;
+    private final MeterRegistry meterRegistry;
+    private final OpenAiProperties props;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Construit le prompt du segment suivant à partir de l'état (éventuellement projeté) de la session.
+     */
+    public PromptUser promptFor(
+            StorySession session,
+            int segmentIndex,
+            int immoralChoicesCount,
+            String lastChoiceSummary,
+            boolean failureImminent
+    ) {
+        return new PromptUser(
+                session.getTargetAge(),
+                session.getPlayerName(),
+                session.getTheme(),
+                session.getChapterCount(),          // ✅ chapterCount
+                session.getPlannedSegments(),       // ✅ plannedSegments
+
+                session.getCharacter(),
+                session.getEnvironment(),
+                session.getMission(),
+                session.getTone(),
+                session.getTitle(),
+
+                session.getStorySeed(),
+                session.getOpeningStyle(),
+                session.getVariationPack(),
+                splitAvoidList(session.getAvoidListCsv()),
+
+                segmentIndex,
+                immoralChoicesCount,
+                lastChoiceSummary,
+                failureImminent
+        );
+    }
+
+    public GeneratedSegment generate(PromptUser promptUser) throws Exception {
+        return generate(promptUser, SegmentStreamListener.NONE);
+    }
+
+    /**
+     * Génère un segment validé ; si un listener est fourni, la narration lui est transmise
+     * au fil de l'eau pendant la génération (la validation reste faite sur le JSON complet).
+     */
+    public GeneratedSegment generate(PromptUser promptUser, SegmentStreamListener listener) throws Exception {
+
+        boolean failureImminent = promptUser.isFailureImminent();
+        SegmentPrompt prompt = promptBuilder.buildSegmentPrompt(promptUser);
+
+        String mode = props.getOutputMode().getSegment().name().toLowerCase();
+        long start = System.nanoTime();
+        try {
+            return generateAttempts(promptUser, prompt, failureImminent, listener, mode);
+        } finally {
+            meterRegistry.timer("story.segment.latency", "mode", mode).record(Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    private GeneratedSegment generateAttempts(
+            PromptUser promptUser,
+            SegmentPrompt prompt,
+            boolean failureImminent,
+            SegmentStreamListener listener,
+            String mode
+    ) throws Exception {
+        TokenUsage usage = TokenUsage.ZERO;
+
+        for (int attempt = 1; attempt <= 2; attempt++) {
+
+            String extraStrict = "";
+            if (failureImminent && attempt == 2) {
+                extraStrict =
+                        "\n\nIMPORTANT: TU DOIS TERMINER MAINTENANT. " +
+                                "Retourne ended=true, choices=[], moralChoiceIds=[], et explanation non vide. " +
+                                "La narration doit montrer une conséquence claire du mauvais choix puis STOP.";
+            }
+
+            if (attempt > 1) listener.onRestart();
+
+            meterRegistry.counter("story.segment.generations", "mode", mode).increment();
+
+            // extraStrict en fin d'état : le préfixe (system + contexte) reste identique
+            SegmentPrompt attemptPrompt = prompt.withStateSuffix(extraStrict);
+            OpenAiCompletion completion = (listener == SegmentStreamListener.NONE)
+                    ? openAiService.generateSegmentCompletion(attemptPrompt, failureImminent)
+                    : streamAttempt(attemptPrompt, failureImminent, listener);
+            usage = usage.plus(completion.usage());
+
+            String segmentJson = completion.text();
+            StorySegment segment;
+            try {
+                segment = mapper.readValue(segmentJson, StorySegment.class);
+            } catch (JsonProcessingException e) {
+                meterRegistry.counter("story.segment.parse.failures", "mode", mode).increment();
+                if (attempt == 1) {
+                    meterRegistry.counter("story.segment.retries", "mode", mode, "reason", "parse").increment();
+                    continue;
+                }
+                throw e;
+            }
+
+            normalizeUtterances(segment, promptUser.playerName());
+
+            if (failureImminent && !segment.isEnded()) {
+                if (attempt == 1) {
+                    meterRegistry.counter("story.segment.retries", "mode", mode, "reason", "not_ended").increment();
+                    continue;
+                }
+                throw new IllegalStateException("AI did not end story while failureImminent=true. raw=" + segmentJson);
+            }
+
+            List<String> violations = validator.violations(segment);
+            if (violations.isEmpty()) {
+                // ✅ seule une réponse validée est conservée dans le cache de réponses
+                openAiService.keepSegmentCompletion(attemptPrompt, failureImminent, completion);
+                return new GeneratedSegment(segment, segmentJson, usage);
+            }
+
+            // 🔧 réparation ciblée plutôt qu'une régénération complète
+            // ⚠️ en cas d'échec, rien n'est conservé : un nouvel essai du même choix rappelle le modèle
+            GeneratedSegment repaired;
+            try {
+                repaired = repair(segment, violations, promptUser.playerName());
+            } catch (IllegalStateException | JsonProcessingException e) {
+                // réparation ratée au premier essai : on régénère plutôt que d'échouer
+                if (attempt == 1) {
+                    meterRegistry.counter("story.segment.retries", "mode", mode, "reason", "repair").increment();
+                    continue;
+                }
+                throw e;
+            }
+            openAiService.keepSegmentCompletion(attemptPrompt, failureImminent, completion);
+            return new GeneratedSegment(repaired.segment(), repaired.segmentJson(), usage.plus(repaired.usage()));
+        }
+
+        throw new IllegalStateException("Unreachable generate loop");
+    }
+
+    /**
+     * 1) corrections déterministes locales (aucun appel modèle) ;
+     * 2) sinon, prompt "fix-only" avec le JSON invalide + la liste exacte des violations.
+     * Chaque réparation réussie = une régénération complète évitée.
+     */
+    private GeneratedSegment repair(StorySegment segment, List<String> violations, String playerName) throws Exception {
+        boolean ended = segment.isEnded();
+
+        List<String> fixes = repairer.repairLocally(segment);
+        List<String> remaining = validator.violations(segment);
+        if (remaining.isEmpty()) {
+            log.info("Segment repaired locally {} (violations: {})", fixes, violations);
+            meterRegistry.counter("story.segment.repairs", "mode", "local", "outcome", "success").increment();
+            return new GeneratedSegment(segment, mapper.writeValueAsString(segment), TokenUsage.ZERO);
+        }
+
+        Map<String, Object> repairInput = new LinkedHashMap<>();
+        repairInput.put("segment", segment);
+        repairInput.put("violations", remaining);
+
+        String repairInputJson = mapper.writeValueAsString(repairInput);
+        OpenAiCompletion completion = openAiService.repairSegmentCompletion(repairInputJson, ended);
+
+        StorySegment fixed;
+        try {
+            fixed = mapper.readValue(completion.text(), StorySegment.class);
+        } catch (JsonProcessingException e) {
+            // ⚠️ compté avant de remonter, sinon une réparation illisible n'apparaît dans aucune métrique
+            meterRegistry.counter("story.segment.repairs", "mode", "model", "outcome", "parse").increment();
+            throw e;
+        }
+        normalizeUtterances(fixed, playerName);
+        repairer.repairLocally(fixed);
+
+        List<String> after = validator.violations(fixed);
+        if (fixed.isEnded() != ended) {
+            after.add("Repair changed ended flag");
+        }
+        if (!after.isEmpty()) {
+            meterRegistry.counter("story.segment.repairs", "mode", "model", "outcome", "failure").increment();
+            throw new IllegalStateException(after.get(0));
+        }
+
+        openAiService.keepRepairCompletion(repairInputJson, ended, completion);
+        log.info("Segment repaired by model (violations: {})", remaining);
+        meterRegistry.counter("story.segment.repairs", "mode", "model", "outcome", "success").increment();
+        return new GeneratedSegment(fixed, mapper.writeValueAsString(fixed), completion.usage());
+    }
+
+    private OpenAiCompletion streamAttempt(SegmentPrompt prompt, boolean ending, SegmentStreamListener listener) {
+        NarrationDeltaExtractor extractor = new NarrationDeltaExtractor();
+        return openAiService.streamSegmentCompletion(prompt, ending, delta -> {
+            String narration = extractor.feed(delta);
+            if (!narration.isEmpty()) listener.onNarrationDelta(narration);
+        });
+    }
+
+    /**
+     * Résumé du dernier choix transmis au modèle (identique en live et en spéculatif,
+     * sinon le segment pré-généré ne correspondrait pas au choix réel).
+     */
+    public static String choiceSummary(boolean moralChoice, Choice chosen) {
+        return moralChoice
+                ? "Le héros a choisi une voie juste, même si elle demande un effort."
+                : ("Le héros a choisi une option tentante à court terme (" + safe(chosen.getText()) + "), mais cela a un coût moral.");
+    }
+
+    /**
+     * Normalise les champs de chaque Utterance après désérialisation du JSON de l'IA :
+     * - Force ageGroup="CHILD" pour le héros (speaker=HERO ou playerName)
+     * - Défaut ageGroup="ADULT" si absent/vide
+     * - Normalise gender en majuscules ; défaut "NEUTRAL" si invalide/absent
+     */
+    private void normalizeUtterances(StorySegment segment, String playerName) {
+        if (segment.getUtterances() == null) return;
+
+        for (Utterance u : segment.getUtterances()) {
+            if (u == null) continue;
+
+            String speaker = u.getSpeaker() == null ? "" : u.getSpeaker().trim();
+
+            // Force CHILD pour le héros
+            boolean isHero = "HERO".equalsIgnoreCase(speaker)
+                    || (playerName != null && playerName.equalsIgnoreCase(speaker));
+            if (isHero) {
+                u.setAgeGroup("CHILD");
+            } else if (u.getAgeGroup() == null || u.getAgeGroup().isBlank()) {
+                u.setAgeGroup("ADULT");
+            }
+
+            // Normalise gender
+            String g = u.getGender() == null ? "" : u.getGender().trim().toUpperCase();
+            if (!g.equals("MALE") && !g.equals("FEMALE") && !g.equals("NEUTRAL")) {
+                g = "NEUTRAL";
+            }
+            u.setGender(g);
+        }
+    }
+
+    private static String safe(String s) {
+        if (s == null) return "";
+        return s.length() > 120 ? s.substring(0, 120) + "…" : s;
+    }
+
+    static List<String> splitAvoidList(String csv) {
+        if (csv == null || csv.isBlank()) return List.of();
+        return Arrays.stream(csv.split("\\|"))
+                .map(String::trim)
+                .filter(s -> !s.isBlank())
+                .distinct()
+                .toList();
+    }
+}
@@ -0,0 +1,75 @@
+package com.istory.storyengine.service;
+
+import com.istory.storyengine.concurrent.SingleFlight;
+import com.istory.storyengine.concurrent.KeyedLocks;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Sérialise les opérations qui modifient une session (choose, rewind) :
+ * - requêtes identiques en vol (double tap, retry client) fusionnées sur une seule exécution ;
+ * - opérations différentes sur une même session appliquées l'une après l'autre (verrou par session).
+ * <p>
+ * ⚠️ Le verrou est tenu pendant tout l'appel au modèle (plusieurs secondes) : un verrou par session,
+ * jamais partagé avec une autre (des bandes feraient attendre des sessions sans rapport derrière une génération).
+ * En contrepartie, une entrée par session active (retirée dès qu'elle n'est plus tenue ni attendue).
+ */
+@Component
+@RequiredArgsConstructor
+public class SessionGate {
+
+    private final MeterRegistry meterRegistry;
+
+    private final KeyedLocks<UUID> locks = new KeyedLocks<>();
+    private final SingleFlight<String, Object> flights = new SingleFlight<>();
+
+    @PostConstruct
+    void registerGauges() {
+        meterRegistry.gauge("story.session.flights.inflight", Tags.empty(), flights, SingleFlight::inFlight);
+        meterRegistry.gauge("story.session.locks.active", Tags.empty(), locks, KeyedLocks::size);
+    }
+
+    /**
+     * @param operation     nom de l'opération (tag de métrique, faible cardinalité)
+     * @param discriminator ce qui rend deux requêtes "identiques" pour cette opération (ex: choiceId)
+     */
+    @SuppressWarnings("unchecked")
+    public <T> SingleFlight.Outcome<T> execute(UUID sessionId, String operation, String discriminator, Supplier<T> action) {
+        String key = sessionId + ":" + operation + ":" + discriminator;
+
+        SingleFlight.Outcome<Object> outcome = flights.execute(key, () -> locked(sessionId, operation, action));
+
+        meterRegistry.counter("story.session.flights",
+                "operation", operation,
+                "result", outcome.shared() ? "coalesced" : "leader").increment();
+
+        return new SingleFlight.Outcome<>((T) outcome.value(), outcome.shared());
+    }
+
+    private <T> T locked(UUID sessionId, String operation, Supplier<T> action) {
+        try (KeyedLocks<UUID>.Lease lease = locks.lease(sessionId)) {
+            ReentrantLock lock = lease.lock();
+
+            if (!lock.tryLock()) {
+                meterRegistry.counter("story.session.lock.contended", "operation", operation).increment();
+                Timer.Sample wait = Timer.start(meterRegistry);
+                lock.lock();
+                wait.stop(meterRegistry.timer("story.session.lock.wait", "operation", operation));
+            }
+
+            try {
+                return action.get();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -1,123 +1,87 @@
 package com.istory.storyengine.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.istory.storyengine.concurrent.SingleFlight;
 import com.istory.storyengine.dto.ChoiceRequest;
 import com.istory.storyengine.dto.RewindResponse;
+import com.istory.storyengine.dto.SessionUsageResponse;
 import com.istory.storyengine.dto.StartStoryRequest;
 import com.istory.storyengine.dto.StorySegmentResponse;
 import com.istory.storyengine.model.*;
-import com.istory.storyengine.repository.StoryNodeRepository;
-import com.istory.storyengine.repository.StorySessionRepository;
-import com.istory.storyengine.service.prompt.PromptBuilder;
-import com.istory.storyengine.service.prompt.PromptUser;
-import com.istory.storyengine.validation.StorySegmentValidator;
+import com.istory.storyengine.service.opening.OpeningPool;
+import com.istory.storyengine.service.session.SessionStore;
+import com.istory.storyengine.service.speculation.SpeculativeSegmentEngine;
+import com.istory.storyengine.service.streaming.SegmentStreamListener;
+import com.istory.storyengine.service.tts.AudioPrefetcher;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class StoryService {
 
-    private final StorySessionRepository sessionRepository;
-    private final StoryNodeRepository nodeRepository;
+    private final SessionStore sessionStore;
 
-    private final PromptBuilder promptBuilder;
-    private final OpenAiService openAiService;
-    private final StorySegmentValidator validator;
-
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final SegmentGenerator segmentGenerator;
+    private final OpeningGenerator openingGenerator;
+    private final OpeningPool openingPool;
+    private final SpeculativeSegmentEngine speculativeEngine;
+    private final AudioPrefetcher audioPrefetcher;
+    private final SessionGate sessionGate;
+    private final MeterRegistry meterRegistry;
 
     public StorySegmentResponse start(StartStoryRequest req) {
+        return start(req, SegmentStreamListener.NONE);
+    }
 
-        StorySession session = new StorySession();
-        session.setTargetAge(req.targetAge());
-        session.setPlayerName(req.playerName());
-        session.setTheme(req.theme());
-
-        // ✅ durationMinutes -> chapterCount
-        session.setChapterCount(req.chapterCount());
-
-        // Defaults simples si le front n'envoie pas le reste
-        session.setTone((req.tone() == null || req.tone().isBlank()) ? "Aventure et bienveillance" : req.tone());
-        session.setMission((req.mission() == null || req.mission().isBlank()) ? "Vivre une aventure et aider quelqu’un" : req.mission());
-        session.setEnvironment((req.environment() == null || req.environment().isBlank())
-                ? "Un lieu original lié au thème : " + req.theme()
-                : req.environment());
-
-        // IMPORTANT : le héros = playerName
-        session.setCharacter((req.character() == null || req.character().isBlank())
-                ? ("Un enfant héroïque nommé " + req.playerName())
-                : req.character());
-
-        session.setImmoralChoicesCount(0);
-        session.setCurrentSegmentIndex(0);
-        session.setLastMoralSegmentIndex(0);
-        session.setStatus(StoryStatus.RUNNING);
-
-        // 🔥 Variété forte, cohérente par session via storySeed
-        String seed = newSeed();
-        session.setStorySeed(seed);
+    /**
+     * Démarre une histoire ; la narration du 1er segment est poussée au listener pendant la génération.
+     */
+    public StorySegmentResponse start(StartStoryRequest req, SegmentStreamListener listener) {
 
-        Random rng = new Random(seed.hashCode());
+        StorySession session = openingGenerator.newSession(req);
 
-        session.setOpeningStyle(pickOpeningStyle(rng));
-        session.setVariationPack(pickVariationPack(rng, req.theme(), req.targetAge(), req.chapterCount()));
-        session.setAvoidListCsv(buildAvoidListCsv(rng, req.theme()));
+        // ⚡ ouverture pré-générée (demande non personnalisée) : pas d'appel OpenAI sur le chemin critique
+        Optional<OpeningGenerator.Opening> pooled = openingPool.take(req, session);
 
-        // Titre via OpenAI (avec seed + variationPack)
-        String title = generateTitle(session, req);
-        session.setTitle(title);
+        // sinon titre et 1er segment en parallèle (narration streamée au listener pendant la génération)
+        OpeningGenerator.Opening opening = pooled.orElseGet(() -> openingGenerator.generate(session, listener));
 
-        session = sessionRepository.save(session);
+        session.setTitle(opening.title());
 
-        String lastChoiceSummary = "Début de l'histoire : lancement de l'aventure.";
-        return generateAndPersistSegment(session, lastChoiceSummary, true);
+        // pool : la narration part d'un bloc ; live : elle a déjà été streamée
+        // (session insérée avec son 1er noeud, dans la même transaction)
+        return generateAndPersistSegment(session, null, null, OpeningGenerator.FIRST_CHOICE_SUMMARY, true,
+                Optional.of(opening.firstSegment()),
+                pooled.isPresent() ? listener : SegmentStreamListener.NONE);
     }
 
-    private String generateTitle(StorySession session, StartStoryRequest req) {
-        try {
-            String contextJson = mapper.writeValueAsString(new LinkedHashMap<String, Object>() {{
-                put("targetAge", req.targetAge());
-                put("playerName", req.playerName());
-                put("theme", req.theme());
-                put("chapterCount", req.chapterCount());
-
-                put("character", session.getCharacter());
-                put("environment", session.getEnvironment());
-                put("mission", session.getMission());
-                put("tone", session.getTone());
-
-                // 🔥 Variété
-                put("storySeed", session.getStorySeed());
-                put("openingStyle", session.getOpeningStyle());
-                put("variationPack", session.getVariationPack());
-                put("avoidList", splitAvoidList(session.getAvoidListCsv()));
-            }});
-
-            String titleJson = openAiService.generateTitleJson(contextJson);
-
-            var node = mapper.readTree(titleJson);
-            String title = node.path("title").asText("").trim();
-
-            if (title.isBlank()) return "Une aventure surprenante";
+    public StorySegmentResponse choose(UUID sessionId, ChoiceRequest req) {
+        return choose(sessionId, req, SegmentStreamListener.NONE);
+    }
 
-            // mobile-friendly
-            if (title.length() > 46) title = title.substring(0, 46).trim();
+    /**
+     * Applique un choix ; la narration du segment suivant est poussée au listener pendant la génération.
+     */
+    public StorySegmentResponse choose(UUID sessionId, ChoiceRequest req, SegmentStreamListener listener) {
+        String choiceKey = req.choice() == null ? "" : req.choice().trim().toLowerCase(Locale.ROOT);
 
-            return title;
+        // 🔒 double tap / retry du même choix : une seule génération, même réponse pour tous
+        SingleFlight.Outcome<StorySegmentResponse> outcome =
+                sessionGate.execute(sessionId, "choose", choiceKey, () -> applyChoice(sessionId, req, listener));
 
-        } catch (Exception e) {
-            return "Une aventure surprenante";
+        // requête fusionnée : la narration n'a été streamée qu'à l'appel qui a généré
+        if (outcome.shared()) {
+            listener.onNarrationDelta(outcome.value().narration());
         }
+        return outcome.value();
     }
 
-    public StorySegmentResponse choose(UUID sessionId, ChoiceRequest req) {
+    private StorySegmentResponse applyChoice(UUID sessionId, ChoiceRequest req, SegmentStreamListener listener) {
 
-        StorySession session = sessionRepository.findById(sessionId)
+        StorySession session = sessionStore.find(sessionId)
                 .orElseThrow(() -> new IllegalStateException("Session not found"));
 
         if (session.getStatus() != StoryStatus.RUNNING) {
@@ -125,16 +89,10 @@ public class StoryService {
         }
 
         int currentIndex = session.getCurrentSegmentIndex();
+        UUID currentNodeId = session.getCurrentNodeId();
 
-        StoryNode node = nodeRepository.findFirstBySessionIdAndSegmentIndex(sessionId, currentIndex)
-                .orElseThrow(() -> new IllegalStateException("No segment found at index=" + currentIndex));
-
-        final StorySegment lastSegment;
-        try {
-            lastSegment = mapper.readValue(node.getSegmentJson(), StorySegment.class);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to parse segment json at index=" + currentIndex, e);
-        }
+        // ⚡ segment courant déjà parsé (cache) : ni requête ni désérialisation à chaque choix
+        StorySegment lastSegment = sessionStore.segment(sessionId, currentNodeId);
 
         if (lastSegment.isEnded()) {
             throw new IllegalStateException("Cannot choose on an ended segment");
@@ -172,21 +130,52 @@ public class StoryService {
             session.setLastFailedChoiceId(choiceId);
         }
 
-        // ✅ on avance pour générer le segment suivant
+        // ✅ on avance pour générer le segment suivant (écrit avec le segment, en une seule fois)
         session.setCurrentSegmentIndex(currentIndex + 1);
-        sessionRepository.save(session);
 
-        String lastChoiceSummary = isMoralChoice
-                ? "Le héros a choisi une voie juste, même si elle demande un effort."
-                : ("Le héros a choisi une option tentante à court terme (" + safe(chosen.getText()) + "), mais cela a un coût moral.");
+        try {
+            // ⚡ branche déjà jouée (rewind puis même choix) : on reprend le noeud existant, sans génération
+            Optional<StoryNode> existing = sessionStore.child(currentNodeId, chosen.getId());
+            if (existing.isPresent()) {
+                speculativeEngine.forget(sessionId);
+                return reuseNode(session, existing.get(), listener);
+            }
+
+            String lastChoiceSummary = SegmentGenerator.choiceSummary(isMoralChoice, chosen);
+
+            // ⚡ suite pré-générée pendant que l'enfant lisait le segment ?
+            Optional<GeneratedSegment> speculative = speculativeEngine.take(sessionId, currentIndex, chosen.getId());
 
-        return generateAndPersistSegment(session, lastChoiceSummary, isMoralChoice);
+            return generateAndPersistSegment(session, currentNodeId, chosen, lastChoiceSummary, isMoralChoice,
+                    speculative, listener);
+        } catch (RuntimeException e) {
+            // rien n'a été écrit : on oublie l'état modifié en mémoire, le choix peut être rejoué
+            sessionStore.evict(sessionId);
+            throw e;
+        }
     }
 
 
-    @Transactional
+    public SessionUsageResponse usage(UUID sessionId) {
+        StorySession session = sessionStore.find(sessionId)
+                .orElseThrow(() -> new IllegalStateException("Session not found"));
+
+        long input = session.getInputTokens();
+        return new SessionUsageResponse(
+                sessionId,
+                input,
+                session.getCachedInputTokens(),
+                session.getOutputTokens(),
+                input == 0 ? 0.0 : (double) session.getCachedInputTokens() / input
+        );
+    }
+
     public RewindResponse rewind(UUID sessionId) {
-        StorySession session = sessionRepository.findById(sessionId)
+        return sessionGate.execute(sessionId, "rewind", "", () -> applyRewind(sessionId)).value();
+    }
+
+    private RewindResponse applyRewind(UUID sessionId) {
+        StorySession session = sessionStore.find(sessionId)
                 .orElseThrow(() -> new IllegalStateException("Session not found"));
 
         Integer failedIndex = session.getLastFailedSegmentIndex();
@@ -197,20 +186,15 @@ public class StoryService {
             failedIndex = session.getLastMoralSegmentIndex();
         }
 
-        final int idx = failedIndex;
-
-        StoryNode node = nodeRepository.findFirstBySessionIdAndSegmentIndex(sessionId, idx)
-                .orElseThrow(() -> new IllegalStateException("No node found at index=" + idx));
-
-        // supprime tout ce qui est après ce segment
-        nodeRepository.deleteBySessionIdAndSegmentIndexGreaterThan(sessionId, failedIndex);
+        // ✅ on remonte la branche courante ; rien n'est supprimé, les suites déjà générées restent réutilisables
+        StoryNode target = sessionStore.ancestorAt(session.getCurrentNodeId(), failedIndex);
+        StorySegment segment = sessionStore.segment(sessionId, target);
 
         try {
-            StorySegment segment = mapper.readValue(node.getSegmentJson(), StorySegment.class);
-
+            session.setCurrentNodeId(target.getId());
             session.setCurrentSegmentIndex(failedIndex);
             session.setStatus(StoryStatus.RUNNING);
-            sessionRepository.save(session);
+            sessionStore.commit(session, null, segment);
 
             List<String> disabled = List.of();
             if (failedChoiceId != null && !failedChoiceId.isBlank()
@@ -219,6 +203,13 @@ public class StoryService {
                 disabled = List.of(failedChoiceId);
             }
 
+            // pas de pré-génération pour les choix grisés ni pour ceux dont la suite existe déjà
+            Set<String> excluded = new HashSet<>(disabled);
+            excluded.addAll(sessionStore.choicesWithChild(target.getId()));
+            speculativeEngine.forget(sessionId);
+            speculativeEngine.speculate(session, segment, excluded);
+            audioPrefetcher.prefetch(session, segment);
+
             return new RewindResponse(
                     sessionId,
                     session.getTitle(),
@@ -237,281 +228,126 @@ public class StoryService {
     }
 
 
-    private StorySegmentResponse generateAndPersistSegment(
-            StorySession session,
-            String lastChoiceSummary,
-            boolean arrivedFromMoralChoice
-    ) {
-        try {
-            boolean failureImminent = (session.getStatus() == StoryStatus.FAILED);
-
-            // ✅ plannedSegments = chapterCount (une seule fois)
-            if (session.getPlannedSegments() <= 0) {
-                int planned = Math.max(1, session.getChapterCount());
-                session.setPlannedSegments(planned);
-            }
-
-            // ✅ lives calculées une seule fois (et livesRemaining initialisée une seule fois)
-            if (session.getLivesTotal() <= 0) {
-                int livesTotal = Math.max(2, (int) Math.ceil(session.getPlannedSegments() / 2.0)); // 1 vie / 2 chapitres (≈)
-                session.setLivesTotal(livesTotal);
-
-                if (session.getLivesRemaining() <= 0) {
-                    session.setLivesRemaining(livesTotal);
-                }
-            }
-
-            // ⚠️ Important : on persiste ces champs si on vient de les initialiser
-            sessionRepository.save(session);
-
-            // ❌ IMPORTANT: NE PAS reset lastFailed* ici
-
-            var avoid = splitAvoidList(session.getAvoidListCsv());
-
-            PromptUser promptUser = new PromptUser(
-                    session.getTargetAge(),
-                    session.getPlayerName(),
-                    session.getTheme(),
-                    session.getChapterCount(),          // ✅ chapterCount
-                    session.getPlannedSegments(),       // ✅ plannedSegments
-
-                    session.getCharacter(),
-                    session.getEnvironment(),
-                    session.getMission(),
-                    session.getTone(),
-                    session.getTitle(),
+    /**
+     * Reprend un noeud déjà généré (même parent, même choix) : déplace le curseur, aucun appel OpenAI.
+     */
+    private StorySegmentResponse reuseNode(StorySession session, StoryNode node, SegmentStreamListener listener) {
+        StorySegment segment = sessionStore.segment(session.getId(), node);
 
-                    session.getStorySeed(),
-                    session.getOpeningStyle(),
-                    session.getVariationPack(),
-                    avoid,
+        // déjà prêt : la narration part d'un bloc
+        listener.onNarrationDelta(segment.getNarration());
 
-                    session.getCurrentSegmentIndex(),
-                    session.getImmoralChoicesCount(),
-                    lastChoiceSummary,
-                    failureImminent
-            );
-
-            String userPromptJson = promptBuilder.build(promptUser);
-
-            for (int attempt = 1; attempt <= 2; attempt++) {
-
-                String extraStrict = "";
-                if (failureImminent && attempt == 2) {
-                    extraStrict =
-                            "\n\nIMPORTANT: TU DOIS TERMINER MAINTENANT. " +
-                                    "Retourne ended=true, choices=[], moralChoiceIds=[], et explanation non vide. " +
-                                    "La narration doit montrer une conséquence claire du mauvais choix puis STOP.";
-                }
-
-                String segmentJson = openAiService.generateJsonText(userPromptJson + extraStrict);
-
-                StorySegment segment = mapper.readValue(segmentJson, StorySegment.class);
-
-                normalizeUtterances(segment, session.getPlayerName());
-
-                if (failureImminent && !segment.isEnded()) {
-                    if (attempt == 1) continue;
-                    throw new IllegalStateException("AI did not end story while failureImminent=true. raw=" + segmentJson);
-                }
-
-                validator.validate(segment);
-
-                // ✅ createdAt est NOT NULL dans StoryNode -> on le renseigne
-                nodeRepository.save(StoryNode.builder()
-                        .sessionId(session.getId())
-                        .parentNodeId(null)
-                        .choiceText(null)
-                        .createdAt(java.time.Instant.now())
-                        .segmentIndex(session.getCurrentSegmentIndex())
-                        .segmentJson(segmentJson)
-                        .moralSegment(arrivedFromMoralChoice)
-                        .build());
-
-                if (segment.isEnded()) {
-                    session.setStatus(StoryStatus.FAILED);
-                    sessionRepository.save(session);
-                }
-
-                return new StorySegmentResponse(
-                        session.getId(),
-                        session.getTitle(),
-                        segment.getNarration(),
-                        segment.getChoices(),
-                        segment.isEnded(),
-                        segment.getExplanation() == null ? "" : segment.getExplanation(),
-                        session.getLivesRemaining(),
-                        session.getLivesTotal(),
-                        session.getCurrentSegmentIndex(),
-                        session.getPlannedSegments(),
-                        List.of(),
-                        session.getChapterCount(),
-                        segment.getUtterances() == null ? List.of() : segment.getUtterances()
-                );
-            }
+        session.setCurrentNodeId(node.getId());
+        if (segment.isEnded()) {
+            session.setStatus(StoryStatus.FAILED);
+        }
 
-            throw new IllegalStateException("Unreachable generate loop");
+        sessionStore.commit(session, null, segment);
+        meterRegistry.counter("story.segments.served", "source", "reused").increment();
+        audioPrefetcher.prefetch(session, segment);
 
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to generate story segment", e);
+        if (!segment.isEnded()) {
+            speculativeEngine.speculate(session, segment, sessionStore.choicesWithChild(node.getId()));
         }
+        return toResponse(session, segment);
     }
 
     /**
-     * Normalise les champs de chaque Utterance après désérialisation du JSON de l'IA :
-     * - Force ageGroup="CHILD" pour le héros (speaker=HERO ou playerName)
-     * - Défaut ageGroup="ADULT" si absent/vide
-     * - Normalise gender en majuscules ; défaut "NEUTRAL" si invalide/absent
+     * @param parentNodeId noeud sur lequel le choix a été joué (null pour le 1er segment)
+     * @param chosen       choix joué (null pour le 1er segment)
      */
-    private void normalizeUtterances(StorySegment segment, String playerName) {
-        if (segment.getUtterances() == null) return;
+    private StorySegmentResponse generateAndPersistSegment(
+            StorySession session,
+            UUID parentNodeId,
+            Choice chosen,
+            String lastChoiceSummary,
+            boolean arrivedFromMoralChoice,
+            Optional<GeneratedSegment> pregenerated,
+            SegmentStreamListener listener
+    ) {
+        try {
+            boolean failureImminent = (session.getStatus() == StoryStatus.FAILED);
 
-        for (Utterance u : segment.getUtterances()) {
-            if (u == null) continue;
+            OpeningGenerator.initPlanning(session);
 
-            String speaker = u.getSpeaker() == null ? "" : u.getSpeaker().trim();
+            // ❌ IMPORTANT: NE PAS reset lastFailed* ici
 
-            // Force CHILD pour le héros
-            boolean isHero = "HERO".equalsIgnoreCase(speaker)
-                    || (playerName != null && playerName.equalsIgnoreCase(speaker));
-            if (isHero) {
-                u.setAgeGroup("CHILD");
-            } else if (u.getAgeGroup() == null || u.getAgeGroup().isBlank()) {
-                u.setAgeGroup("ADULT");
+            GeneratedSegment generated = pregenerated.isPresent()
+                    ? pregenerated.get()
+                    : segmentGenerator.generate(segmentGenerator.promptFor(
+                            session,
+                            session.getCurrentSegmentIndex(),
+                            session.getImmoralChoicesCount(),
+                            lastChoiceSummary,
+                            failureImminent
+                    ), listener);
+
+            StorySegment segment = generated.segment();
+
+            // déjà prêt : la narration part d'un bloc
+            if (pregenerated.isPresent()) {
+                listener.onNarrationDelta(segment.getNarration());
             }
 
-            // Normalise gender
-            String g = u.getGender() == null ? "" : u.getGender().trim().toUpperCase();
-            if (!g.equals("MALE") && !g.equals("FEMALE") && !g.equals("NEUTRAL")) {
-                g = "NEUTRAL";
+            // ✅ createdAt est NOT NULL dans StoryNode -> on le renseigne
+            StoryNode node = StoryNode.builder()
+                    .id(UUID.randomUUID())
+                    .sessionId(session.getId())
+                    .parentNodeId(parentNodeId)
+                    .choiceId(chosen == null ? null : chosen.getId())
+                    .choiceText(chosen == null ? null : chosen.getText())
+                    .createdAt(java.time.Instant.now())
+                    .segmentIndex(session.getCurrentSegmentIndex())
+                    .segmentJson(generated.segmentJson())
+                    .moralSegment(arrivedFromMoralChoice)
+                    .build();
+
+            session.setInputTokens(session.getInputTokens() + generated.usage().inputTokens());
+            session.setCachedInputTokens(session.getCachedInputTokens() + generated.usage().cachedInputTokens());
+            session.setOutputTokens(session.getOutputTokens() + generated.usage().outputTokens());
+
+            if (segment.isEnded()) {
+                session.setStatus(StoryStatus.FAILED);
             }
-            u.setGender(g);
-        }
-    }
-
-    private String safe(String s) {
-        if (s == null) return "";
-        return s.length() > 120 ? s.substring(0, 120) + "…" : s;
-    }
-
-    // -------------------------
-    // 🔥 Variabilité (cohérente)
-    // -------------------------
 
-    private String newSeed() {
-        return UUID.randomUUID().toString();
-    }
+            session.setCurrentNodeId(node.getId());
 
-    private String pickOpeningStyle(Random rng) {
-        String[] styles = {
-                "journal intime",
-                "dialogue",
-                "message secret",
-                "bulletin radio",
-                "enquête",
-                "conte",
-                "carte au trésor",
-                "in medias res",
-                "rumeur",
-                "défi",
-                "lettre",
-                "rêve étrange",
-                "annonce au micro",
-                "petite scène de théâtre",
-                "plan de mission"
-        };
-        return styles[rng.nextInt(styles.length)];
-    }
+            // ⚠️ Important : une seule écriture par interaction (choix, planning, tokens, statut + noeud)
+            sessionStore.commit(session, node, segment);
 
-    private String pickVariationPack(Random rng, String theme, int age, int chapterCount) {
-        String[] eras = {
-                "aujourd'hui", "futur proche", "moyen âge", "monde sous-marin",
-                "station spatiale", "ville volante", "désert de cristal",
-                "île mécanique", "musée vivant", "train magique"
-        };
-
-        String[] twists = {
-                "un allié inattendu", "une règle magique", "un secret à protéger",
-                "un malentendu", "un objet étrange", "un lieu qui change",
-                "un double objectif", "un piège moral subtil", "un personnage ambigu"
-        };
-
-        String[] obstacles = {
-                "énigme", "négociation", "courage", "coopération",
-                "patience", "observation", "créativité", "empathie", "prudence"
-        };
-
-        String[] styles = {
-                "vif", "drôle", "poétique", "suspense doux", "épique", "mystérieux", "tendre"
-        };
-
-        String era = eras[rng.nextInt(eras.length)];
-        String twist = twists[rng.nextInt(twists.length)];
-        String obstacle = obstacles[rng.nextInt(obstacles.length)];
-        String style = styles[rng.nextInt(styles.length)];
-
-        String humour = (age <= 7 ? "léger" : "modéré");
-
-        // ✅ plannedSegments = chapterCount (pas de conversion /4)
-        int plannedSegments = Math.max(1, chapterCount);
-
-        return "theme=" + theme +
-                "; epoque=" + era +
-                "; twist=" + twist +
-                "; obstacle_cle=" + obstacle +
-                "; style=" + style +
-                "; humour=" + humour +
-                "; segments=" + plannedSegments;
-    }
+            String source = parentNodeId == null ? "opening" : pregenerated.isPresent() ? "speculative" : "generated";
+            meterRegistry.counter("story.segments.served", "source", source).increment();
 
-    private String buildAvoidListCsv(Random rng, String theme) {
-        List<String> global = new ArrayList<>(List.of(
-                "renard blessé",
-                "forêt mystérieuse",
-                "petit explorateur curieux",
-                "rayons de soleil à travers les arbres",
-                "soudain un bruit étrange",
-                "un vieux chêne",
-                "un filet de pêche",
-                "un animal coincé",
-                "tu marches doucement",
-                "grands yeux brillants"
-        ));
-
-        // Ajoute quelques bans “template”
-        List<String> extra = List.of(
-                "un sac d’aventurier contient",
-                "tu entends des oiseaux chanter",
-                "un écureuil te regarde",
-                "motifs dorés sur le sol"
-        );
+            // ⚡ l'audio du segment (narration, dialogues, options) se synthétise pendant que le texte part
+            audioPrefetcher.prefetch(session, segment);
 
-        // on tire 4 de extra au hasard + 6 de global
-        Collections.shuffle(global, rng);
-        List<String> picked = new ArrayList<>(global.subList(0, Math.min(6, global.size())));
+            if (!segment.isEnded()) {
+                // ⚡ pré-génère les 4 suites pendant que l'enfant lit
+                speculativeEngine.speculate(session, segment, List.of());
+            }
 
-        List<String> extraShuffled = new ArrayList<>(extra);
-        Collections.shuffle(extraShuffled, rng);
-        picked.addAll(extraShuffled.subList(0, Math.min(4, extraShuffled.size())));
+            return toResponse(session, segment);
 
-        // mini contrainte liée au theme : éviter de répéter le thème “sans le vouloir”
-        if (theme != null && !theme.isBlank()) {
-            picked.add("forêt"); // évite le fallback forêt si thème différent
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to generate story segment", e);
         }
-
-        return picked.stream()
-                .map(String::trim)
-                .filter(s -> !s.isBlank())
-                .distinct()
-                .collect(Collectors.joining("|"));
     }
 
-    private List<String> splitAvoidList(String csv) {
-        if (csv == null || csv.isBlank()) return List.of();
-        return Arrays.stream(csv.split("\\|"))
-                .map(String::trim)
-                .filter(s -> !s.isBlank())
-                .distinct()
-                .toList();
+    private static StorySegmentResponse toResponse(StorySession session, StorySegment segment) {
+        return new StorySegmentResponse(
+                session.getId(),
+                session.getTitle(),
+                segment.getNarration(),
+                segment.getChoices(),
+                segment.isEnded(),
+                segment.getExplanation() == null ? "" : segment.getExplanation(),
+                session.getLivesRemaining(),
+                session.getLivesTotal(),
+                session.getCurrentSegmentIndex(),
+                session.getPlannedSegments(),
+                List.of(),
+                session.getChapterCount(),
+                segment.getUtterances() == null ? List.of() : segment.getUtterances()
+        );
     }
 }
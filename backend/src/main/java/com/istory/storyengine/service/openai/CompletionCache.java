@@ -0,0 +1,153 @@
+package com.istory.storyengine.service.openai;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.istory.storyengine.cache.DiskLruCache;
+import com.istory.storyengine.cache.LruCache;
+import com.istory.storyengine.model.SegmentJsonCodec;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Cache des réponses OpenAI adressé par contenu : même requête canonique (modèle, instructions, input,
+ * température, format de sortie) = même réponse, servie sans rappeler le modèle.
+ * Deux tiers : mémoire (LRU + ttl) puis disque (LRU en octets, conservé entre deux redémarrages).
+ * <p>
+ * L'empreinte ignore ce qui ne change pas le contenu demandé :
+ * "stream" (streamé ou non, même texte) et "prompt_cache_key" (routage du cache provider, propre à la session).
+ */
+@Component
+public class CompletionCache {
+
+    private static final Logger log = LoggerFactory.getLogger(CompletionCache.class);
+
+    // à incrémenter si le format des entrées ou de l'empreinte change
+    private static final String FORMAT = "v1";
+
+    private static final Set<String> IGNORED_FIELDS = Set.of("stream", "prompt_cache_key");
+
+    // 3 compteurs de tokens (usage d'origine) avant le texte encodé
+    private static final int HEADER_BYTES = 3 * Long.BYTES;
+
+    // clés triées : deux Map équivalentes donnent les mêmes octets
+    private static final ObjectMapper CANONICAL = JsonMapper.builder()
+            .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+            .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+            .build();
+
+    private final CompletionCacheProperties props;
+    private final MeterRegistry meterRegistry;
+
+    private final LruCache<String, OpenAiCompletion> memory;
+    private final DiskLruCache disk;
+
+    public CompletionCache(CompletionCacheProperties props, MeterRegistry meterRegistry) {
+        this.props = props;
+        this.meterRegistry = meterRegistry;
+        this.memory = new LruCache<>("openai.completions", props.getMemoryMaxEntries(), props.getMemoryTtl(),
+                c -> 64 + 2L * c.text().length(), meterRegistry);
+        this.disk = props.isEnabled() && props.getDisk().isEnabled()
+                ? new DiskLruCache("openai.completions.disk", Path.of(props.getDisk().getDir()),
+                        props.getDisk().getMaxSize().toBytes(), meterRegistry)
+                : null;
+    }
+
+    /**
+     * @return empreinte SHA-256 (hex) du corps de requête canonique, ou null si le cache est désactivé
+     */
+    public String fingerprint(Map<String, Object> requestBody) {
+        if (!props.isEnabled()) return null;
+
+        Map<String, Object> content = new TreeMap<>(requestBody);
+        content.keySet().removeAll(IGNORED_FIELDS);
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update(FORMAT.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(sha.digest(CANONICAL.writeValueAsBytes(content)));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            // requête non sérialisable : pas de cache, l'appel part normalement
+            log.warn("Failed to fingerprint OpenAI request", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return réponse déjà obtenue pour cette empreinte ; usage ZERO (aucun token dépensé cette fois)
+     */
+    public Optional<OpenAiCompletion> get(String workload, String fingerprint) {
+        if (fingerprint == null) return Optional.empty();
+
+        OpenAiCompletion hit = memory.get(fingerprint);
+        String tier = "memory";
+        if (hit == null && disk != null) {
+            hit = disk.get(fingerprint).map(CompletionCache::decode).orElse(null);
+            if (hit != null) memory.put(fingerprint, hit);
+            tier = "disk";
+        }
+
+        if (hit == null) {
+            meterRegistry.counter("openai.completion.cache", "workload", workload, "result", "miss").increment();
+            return Optional.empty();
+        }
+
+        meterRegistry.counter("openai.completion.cache", "workload", workload, "result", tier).increment();
+        meterRegistry.counter("openai.tokens.saved", "workload", workload).increment(hit.usage().total());
+        return Optional.of(new OpenAiCompletion(hit.text(), TokenUsage.ZERO));
+    }
+
+    public void put(String fingerprint, OpenAiCompletion completion) {
+        if (fingerprint == null) return;
+
+        memory.put(fingerprint, completion);
+        if (disk != null) disk.put(fingerprint, encode(completion));
+    }
+
+    public void invalidate(String fingerprint) {
+        if (fingerprint == null) return;
+
+        memory.invalidate(fingerprint);
+        if (disk != null) disk.invalidate(fingerprint);
+    }
+
+    static byte[] encode(OpenAiCompletion completion) {
+        byte[] text = SegmentJsonCodec.encode(completion.text());
+        TokenUsage usage = completion.usage();
+        return ByteBuffer.allocate(HEADER_BYTES + text.length)
+                .putLong(usage.inputTokens())
+                .putLong(usage.cachedInputTokens())
+                .putLong(usage.outputTokens())
+                .put(text)
+                .array();
+    }
+
+    static OpenAiCompletion decode(byte[] stored) {
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(stored);
+            TokenUsage usage = new TokenUsage(buf.getLong(), buf.getLong(), buf.getLong());
+            byte[] text = new byte[buf.remaining()];
+            buf.get(text);
+            String decoded = SegmentJsonCodec.decode(text);
+            return decoded == null || decoded.isBlank() ? null : new OpenAiCompletion(decoded, usage);
+        } catch (RuntimeException e) {
+            // entrée corrompue : traitée comme un miss, réécrite au prochain appel
+            log.warn("Discarding unreadable completion cache entry", e);
+            return null;
+        }
+    }
+}
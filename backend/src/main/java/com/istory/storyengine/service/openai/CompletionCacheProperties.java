@@ -0,0 +1,32 @@
+package com.istory.storyengine.service.openai;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "story.completion-cache")
+public class CompletionCacheProperties {
+
+    // Cache des réponses OpenAI adressé par contenu (empreinte de la requête canonique)
+    private boolean enabled = true;
+
+    // Tier mémoire : réponses récentes (rejeu, exploration de branches)
+    private int memoryMaxEntries = 2_000;
+    private Duration memoryTtl = Duration.ofHours(12);
+
+    private Disk disk = new Disk();
+
+    @Data
+    public static class Disk {
+        // false = tier mémoire seul (rien ne survit au redémarrage)
+        private boolean enabled = true;
+
+        private String dir = "./data/completions";
+
+        // au-delà, les réponses les moins récemment servies sont supprimées (LRU)
+        private DataSize maxSize = DataSize.ofMegabytes(512);
+    }
+}
@@ -0,0 +1,13 @@
+package com.istory.storyengine.service.openai;
+
+/**
+ * Texte extrait d'une réponse /responses + consommation de tokens (bloc "usage").
+ */
+public record OpenAiCompletion(
+        String text,
+        TokenUsage usage
+) {
+    public long totalTokens() {
+        return usage.total();
+    }
+}
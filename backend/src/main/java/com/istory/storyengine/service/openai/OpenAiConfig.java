@@ -13,11 +13,12 @@ import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 import java.time.Duration;
 
 @Configuration
-@EnableConfigurationProperties(OpenAiProperties.class)
+@EnableConfigurationProperties({OpenAiProperties.class, CompletionCacheProperties.class})
 @RequiredArgsConstructor
 public class OpenAiConfig {
 
@@ -27,13 +28,22 @@ public class OpenAiConfig {
     public WebClient openAiWebClient() {
 
         // ✅ Fix DataBufferLimitException (256KB) → on monte à 20MB
+        // (réponses agrégées : JSON, clips du batch / préchargement ; /utterance est relayé en flux)
         int maxInMemorySize = 20 * 1024 * 1024;
 
         ExchangeStrategies strategies = ExchangeStrategies.builder()
                 .codecs(cfg -> cfg.defaultCodecs().maxInMemorySize(maxInMemorySize))
                 .build();
 
-        HttpClient httpClient = HttpClient.create()
+        // ✅ Pool par défaut de Reactor Netty (2×CPU connexions) trop petit dès que les appels
+        // bloquants tournent sur des virtual threads : c'est lui qui devient le goulot.
+        ConnectionProvider pool = ConnectionProvider.builder("openai")
+                .maxConnections(props.getMaxConnections())
+                .pendingAcquireMaxCount(props.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(Duration.ofSeconds(props.getTimeoutSeconds()))
+                .build();
+
+        HttpClient httpClient = HttpClient.create(pool)
                 .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, props.getTimeoutSeconds() * 1000)
                 .responseTimeout(Duration.ofSeconds(props.getTimeoutSeconds()))
                 .doOnConnected(conn -> conn
@@ -10,4 +10,17 @@ public class OpenAiProperties {
     private String apiKey;
     private String model;
     private int timeoutSeconds = 30;
+
+    // Une requête OpenAI en vol = une connexion HTTP/1.1 : le pool doit suivre le nombre de sessions actives
+    private int maxConnections = 500;
+    private int pendingAcquireMaxCount = 1000;
+
+    // Mode de sortie JSON par type d'appel
+    private OutputModes outputMode = new OutputModes();
+
+    @Data
+    public static class OutputModes {
+        private OutputMode segment = OutputMode.JSON_SCHEMA;
+        private OutputMode title = OutputMode.JSON_SCHEMA;
+    }
 }
@@ -0,0 +1,56 @@
+package com.istory.storyengine.service.openai;
+
+import com.istory.storyengine.service.tts.AudioFormat;
+import com.istory.storyengine.service.tts.TtsProvider;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+
+/**
+ * /audio/speech d'OpenAI : moteur principal (voix, accents verrouillés, formats compacts).
+ */
+@Component
+@RequiredArgsConstructor
+public class OpenAiSpeechProvider implements TtsProvider {
+
+    public static final String NAME = "openai";
+
+    private final WebClient openAiWebClient;
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] synthesize(Map<String, Object> request) {
+        return openAiWebClient.post()
+                .uri("/audio/speech")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(mediaTypeOf(request))
+                .bodyValue(request)
+                .retrieve()
+                .bodyToMono(byte[].class)
+                .block();
+    }
+
+    @Override
+    public Flux<DataBuffer> stream(Map<String, Object> request) {
+        return openAiWebClient.post()
+                .uri("/audio/speech")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(mediaTypeOf(request))
+                .bodyValue(request)
+                .retrieve()
+                .bodyToFlux(DataBuffer.class);
+    }
+
+    private static MediaType mediaTypeOf(Map<String, Object> request) {
+        return AudioFormat.fromResponseFormat((String) request.get("response_format")).mediaType();
+    }
+}
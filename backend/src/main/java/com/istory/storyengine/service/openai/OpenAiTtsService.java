@@ -1,22 +1,50 @@
 package com.istory.storyengine.service.openai;
 
+import com.istory.storyengine.dto.TtsUtteranceRequest;
 import com.istory.storyengine.model.StorySession;
-import com.istory.storyengine.repository.StorySessionRepository;
+import com.istory.storyengine.service.session.SessionStore;
+import com.istory.storyengine.service.tts.AudioClip;
+import com.istory.storyengine.service.tts.AudioFormat;
+import com.istory.storyengine.service.tts.AudioPart;
+import com.istory.storyengine.service.tts.AudioStream;
+import com.istory.storyengine.service.tts.ChunkedAudio;
+import com.istory.storyengine.service.tts.ClipRef;
+import com.istory.storyengine.service.tts.NarrationSplitter;
+import com.istory.storyengine.service.tts.TimedAudio;
+import com.istory.storyengine.service.tts.TtsAudioCache;
+import com.istory.storyengine.service.tts.TtsBatchProperties;
+import com.istory.storyengine.service.tts.TtsChunkingProperties;
+import com.istory.storyengine.service.tts.TtsProviders;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
-import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
 
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 @Service
 @RequiredArgsConstructor
 public class OpenAiTtsService {
 
-    private final WebClient openAiWebClient;
-    private final StorySessionRepository sessionRepository;
+    private final TtsProviders providers;
+    private final SessionStore sessionStore;
+    private final TtsAudioCache audioCache;
+    private final TtsBatchProperties batchProps;
+    private final TtsChunkingProperties chunkingProps;
+    private final MeterRegistry meterRegistry;
+
+    // un virtual thread par clip : l'attente réseau ne bloque aucun thread OS (borne par segment : sémaphore)
+    private final ExecutorService batchExecutor = Executors.newVirtualThreadPerTaskExecutor();
 
     // ✅ Narration stable + speed
     private static final String NARRATOR_MODEL = "tts-1-hd";
@@ -89,20 +117,206 @@ public class OpenAiTtsService {
         return TTS_VOICES[idx];
     }
 
-    public byte[] synthesizeUtterance(
+    /**
+     * ⚡ Réponse en flux : clip du cache, relais direct du fournisseur, ou narration longue découpée
+     * (morceaux synthétisés en parallèle, lus dans l'ordre). Lecture dès les premières trames.
+     */
+    public AudioStream synthesizeUtterance(
             UUID sessionId,
             String speaker,
             String ageGroup,
             String gender,
             String text,
             Double speed,
-            String locale
+            String locale,
+            AudioFormat format
+    ) {
+        long start = System.nanoTime();
+        StorySession session = sessionStore.find(sessionId)
+                .orElseThrow(() -> new IllegalStateException("Session not found"));
+
+        List<Map<String, Object>> bodies = speechRequests(session, speaker, ageGroup, text, speed, format, new HashMap<>());
+
+        AudioStream audio;
+        if (bodies.isEmpty()) {
+            audio = AudioClip.EMPTY;
+        } else if (bodies.size() == 1) {
+            audio = speechStream(bodies.get(0));
+        } else {
+            audio = new ChunkedAudio(submit(bodies, chunkingProps.getWindow(), true));
+        }
+        return new TimedAudio(audio, start,
+                meterRegistry.timer("tts.first.audio", "mode", audio.mode(), "format", format.responseFormat()));
+    }
+
+    /**
+     * Segment complet (narration, dialogues, options) : session lue une fois, voix résolues une fois par locuteur,
+     * clips synthétisés en parallèle (au plus maxConcurrency appels en vol pour ce segment).
+     *
+     * @return les clips à venir dans l'ordre de lecture (plusieurs par ligne si la narration est découpée)
+     */
+    public List<AudioPart> synthesizeSegment(UUID sessionId, List<TtsUtteranceRequest> lines, String locale, AudioFormat format) {
+        if (lines.size() > batchProps.getMaxItems()) {
+            throw new IllegalStateException("Too many utterances in one segment: " + lines.size());
+        }
+
+        StorySession session = sessionStore.find(sessionId)
+                .orElseThrow(() -> new IllegalStateException("Session not found"));
+
+        return synthesizeSegment(session, lines, format, batchProps.getMaxConcurrency(), true);
+    }
+
+    /**
+     * Même chose pour une session déjà chargée (préchargement) : les corps de requête sont construits
+     * dans le thread appelant, la session n'est plus lue ensuite. Personne n'attend : pas de secours local.
+     */
+    public List<AudioPart> synthesizeSegment(
+            StorySession session,
+            List<TtsUtteranceRequest> lines,
+            AudioFormat format,
+            int maxConcurrency
+    ) {
+        return synthesizeSegment(session, lines, format, maxConcurrency, false);
+    }
+
+    private List<AudioPart> synthesizeSegment(
+            StorySession session,
+            List<TtsUtteranceRequest> lines,
+            AudioFormat format,
+            int maxConcurrency,
+            boolean interactive
     ) {
-        StorySession session = sessionRepository.findById(sessionId)
+        Map<String, String> voices = new HashMap<>();
+        List<Integer> owners = new ArrayList<>();
+        List<Map<String, Object>> bodies = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            TtsUtteranceRequest line = lines.get(i);
+            for (Map<String, Object> body : speechRequests(session, line.speaker(), line.ageGroup(), line.text(), line.speed(), format, voices)) {
+                owners.add(i);
+                bodies.add(body);
+            }
+        }
+
+        List<Future<AudioClip>> clips = submit(bodies, maxConcurrency, interactive);
+        List<AudioPart> parts = new ArrayList<>(clips.size());
+        for (int i = 0; i < clips.size(); i++) {
+            parts.add(new AudioPart(owners.get(i), clips.get(i)));
+        }
+        return parts;
+    }
+
+    /**
+     * Manifeste d'un segment : l'adresse (empreinte) de chaque clip, dans l'ordre de lecture. Les synthèses
+     * partent aussitôt en arrière-plan ; le client télécharge ensuite chaque clip par GET, cacheable.
+     */
+    public List<ClipRef> manifest(UUID sessionId, List<TtsUtteranceRequest> lines, AudioFormat format) {
+        if (lines.size() > batchProps.getMaxItems()) {
+            throw new IllegalStateException("Too many utterances in one segment: " + lines.size());
+        }
+
+        StorySession session = sessionStore.find(sessionId)
                 .orElseThrow(() -> new IllegalStateException("Session not found"));
 
+        Map<String, String> voices = new HashMap<>();
+        List<ClipRef> clips = new ArrayList<>();
+        List<Map<String, Object>> bodies = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            TtsUtteranceRequest line = lines.get(i);
+            for (Map<String, Object> body : speechRequests(session, line.speaker(), line.ageGroup(), line.text(), line.speed(), format, voices)) {
+                clips.add(new ClipRef(i, audioCache.register(body), format));
+                bodies.add(body);
+            }
+        }
+
+        submit(bodies, batchProps.getMaxConcurrency(), false);
+        return clips;
+    }
+
+    /**
+     * Clip par adresse : cache, synthèse en cours, ou resynthèse si la requête est encore connue.
+     * ⚠️ Jamais de secours local ici : l'URL reste fraîche un jour chez le client (revalidée ensuite par
+     * ETag), une voix de secours y resterait collée pour toute la durée de fraîcheur.
+     */
+    public Optional<AudioClip> clip(String key) {
+        return audioCache.find(key).or(() -> audioCache.recipe(key).map(this::speech));
+    }
+
+    /**
+     * ETag de la version courante du clip, sans le relire ni le resynthétiser (GET conditionnel).
+     */
+    public Optional<String> etag(String key) {
+        return audioCache.etag(key);
+    }
+
+    /**
+     * @param interactive un client attend ces clips : secours local si le moteur principal tarde
+     */
+    private List<Future<AudioClip>> submit(List<Map<String, Object>> bodies, int maxConcurrency, boolean interactive) {
+        // sémaphore équitable : les premiers clips (lus en premier) passent en premier
+        Semaphore permits = new Semaphore(Math.max(1, maxConcurrency), true);
+        List<Future<AudioClip>> clips = new ArrayList<>(bodies.size());
+        for (Map<String, Object> body : bodies) {
+            clips.add(batchExecutor.submit(() -> {
+                permits.acquire();
+                try {
+                    return interactive ? hedgedSpeech(body) : speech(body);
+                } finally {
+                    permits.release();
+                }
+            }));
+        }
+        return clips;
+    }
+
+    @PreDestroy
+    void stop() {
+        batchExecutor.shutdownNow();
+    }
+
+    /**
+     * Corps /audio/speech d'une ligne : aucun si rien à dire, un par morceau pour une narration longue.
+     */
+    private List<Map<String, Object>> speechRequests(
+            StorySession session,
+            String speaker,
+            String ageGroup,
+            String text,
+            Double speed,
+            AudioFormat format,
+            Map<String, String> voices
+    ) {
+        boolean narrator = isNarrator(speaker == null ? "" : speaker.trim());
+        if (!narrator || !chunkingProps.isEnabled()) {
+            Map<String, Object> body = speechRequest(session, speaker, ageGroup, text, speed, format, voices);
+            return body == null ? List.of() : List.of(body);
+        }
+
+        List<Map<String, Object>> bodies = new ArrayList<>();
+        for (String chunk : NarrationSplitter.split(text, chunkingProps.getFirstChunkMaxChars(), chunkingProps.getMaxChunkChars())) {
+            Map<String, Object> body = speechRequest(session, speaker, ageGroup, chunk, speed, format, voices);
+            if (body != null) bodies.add(body);
+        }
+        return bodies;
+    }
+
+    /**
+     * Corps /audio/speech d'un texte (null si rien à dire).
+     *
+     * @param voices voix déjà résolues (locuteur -> voix), partagées par toutes les lignes d'un segment
+     */
+    private Map<String, Object> speechRequest(
+            StorySession session,
+            String speaker,
+            String ageGroup,
+            String text,
+            Double speed,
+            AudioFormat format,
+            Map<String, String> voices
+    ) {
+        UUID sessionId = session.getId();
+
         String safeText = (text == null) ? "" : text;
-        if (safeText.isBlank()) return new byte[0];
+        if (safeText.isBlank()) return null;
 
         String speakerNorm = (speaker == null) ? "" : speaker.trim();
 
@@ -110,26 +324,19 @@ public class OpenAiTtsService {
         // 🎙 NARRATION (stable)
         // =========================
         if (isNarrator(speakerNorm)) {
-            String narratorVoice = pickStableNarratorVoice(sessionId);
+            String narratorVoice = voices.computeIfAbsent("NARRATOR", k -> pickStableNarratorVoice(sessionId));
 
             Map<String, Object> body = new HashMap<>();
             body.put("model", NARRATOR_MODEL);
             body.put("voice", narratorVoice);
-            body.put("response_format", "mp3");
+            body.put("response_format", format.responseFormat());
             body.put("input", safeText);
 
             if (modelSupportsSpeed(NARRATOR_MODEL)) {
                 body.put("speed", clampSpeed(speed));
             }
 
-            return openAiWebClient.post()
-                    .uri("/audio/speech")
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .accept(MediaType.valueOf("audio/mpeg"))
-                    .bodyValue(body)
-                    .retrieve()
-                    .bodyToMono(byte[].class)
-                    .block();
+            return body;
         }
 
         // =========================
@@ -137,23 +344,16 @@ public class OpenAiTtsService {
         // =========================
         if (isChoiceNarrator(speakerNorm)) {
 
-            String v = pickStableVoice(sessionId, "CHOICE_NARRATOR");
+            String v = voices.computeIfAbsent("CHOICE_NARRATOR", k -> pickStableVoice(sessionId, k));
 
             Map<String, Object> body = new HashMap<>();
             body.put("model", INSTRUCT_MODEL);
             body.put("voice", v);
-            body.put("response_format", "mp3");
+            body.put("response_format", format.responseFormat());
             body.put("input", safeText);
             body.put("instructions", FR_ADULT_LOCKED);
 
-            return openAiWebClient.post()
-                    .uri("/audio/speech")
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .accept(MediaType.valueOf("audio/mpeg"))
-                    .bodyValue(body)
-                    .retrieve()
-                    .bodyToMono(byte[].class)
-                    .block();
+            return body;
         }
 
         // =========================
@@ -162,22 +362,51 @@ public class OpenAiTtsService {
         boolean hero = isHero(session, speakerNorm);
         String effectiveAge = hero ? "CHILD" : (ageGroup == null ? "ADULT" : ageGroup.trim());
 
-        String dialogueVoice = pickStableVoice(sessionId, speakerNorm);
+        String dialogueVoice = voices.computeIfAbsent(speakerNorm.toLowerCase(), k -> pickStableVoice(sessionId, speakerNorm));
 
         Map<String, Object> body = new HashMap<>();
         body.put("model", INSTRUCT_MODEL);
         body.put("voice", dialogueVoice);
-        body.put("response_format", "mp3");
+        body.put("response_format", format.responseFormat());
         body.put("input", safeText);
         body.put("instructions", hero ? FR_CHILD_LOCKED : FR_ADULT_LOCKED);
 
-        return openAiWebClient.post()
-                .uri("/audio/speech")
-                .contentType(MediaType.APPLICATION_JSON)
-                .accept(MediaType.valueOf("audio/mpeg"))
-                .bodyValue(body)
-                .retrieve()
-                .bodyToMono(byte[].class)
-                .block();
+        return body;
+    }
+
+    /**
+     * Relais du moteur principal, couvert par le moteur local si le premier chunk tarde. Un relais
+     * devancé est vidé en arrière-plan : il finit de remplir le cache.
+     */
+    private AudioStream speechStream(Map<String, Object> body) {
+        return providers.hedge(TtsProviders.FIRST_CHUNK,
+                () -> audioCache.open(body, () -> providers.stream(providers.primary(), body)),
+                fallback -> AudioClip.of("", providers.synthesize(fallback, body)),
+                this::drain);
+    }
+
+    private void drain(AudioStream audio) {
+        batchExecutor.submit(() -> {
+            audio.writeTo(OutputStream.nullOutputStream());
+            return null;
+        });
+    }
+
+    /**
+     * ⚡ Le corps de requête détermine entièrement le son : clip servi depuis le cache s'il a déjà été synthétisé.
+     * Moteur principal uniquement : seul son audio est mis en cache.
+     */
+    private AudioClip speech(Map<String, Object> body) {
+        return audioCache.get(body, () -> providers.synthesize(providers.primary(), body));
+    }
+
+    /**
+     * speech() couvert par le moteur local ; le clip de secours n'est servi qu'une fois (jamais mis en cache).
+     */
+    private AudioClip hedgedSpeech(Map<String, Object> body) {
+        return providers.hedge(TtsProviders.COMPLETE,
+                () -> speech(body),
+                fallback -> AudioClip.of("", providers.synthesize(fallback, body)),
+                clip -> {});
     }
 }
@@ -0,0 +1,11 @@
+package com.istory.storyengine.service.openai;
+
+/**
+ * Comment on obtient du JSON du modèle.
+ */
+public enum OutputMode {
+    /** Consigne en prose dans le prompt ("Retourne STRICTEMENT un JSON valide") */
+    PROMPT,
+    /** Schéma JSON strict envoyé à /responses (text.format = json_schema) */
+    JSON_SCHEMA
+}
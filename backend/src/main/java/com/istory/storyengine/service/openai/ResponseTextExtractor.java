@@ -0,0 +1,159 @@
+package com.istory.storyengine.service.openai;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lecture en flux d'une réponse /responses avec le parser non bloquant de Jackson : les buffers réseau
+ * sont donnés au parser au fil de leur arrivée (feed), sans être joints en un seul buffer ni copiés dans
+ * une String. On ne garde que output[].content[] de type "output_text" et le bloc "usage".
+ * <p>
+ * Copies qui restent : chaque output_text devient une String (le parser la décode depuis son propre
+ * tampon de texte ; c'est elle que l'appelant valide, met en cache et persiste) ; plusieurs parts sont
+ * concaténées ; le bloc usage (quelques tokens) passe par un petit arbre.
+ */
+public final class ResponseTextExtractor {
+
+    // thread-safe une fois configuré ; sert aussi à lire le petit bloc "usage" en arbre
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // conteneurs ouverts jusqu'à une part de contenu ("[]" : élément de tableau)
+    private static final List<String> PART_PATH = List.of("[]", "output", "[]", "content", "[]");
+
+    private ResponseTextExtractor() {}
+
+    public static Feed feed() {
+        return new Feed();
+    }
+
+    /**
+     * @return texte (null si aucun output_text non vide) + usage (ZERO si absent)
+     */
+    public static OpenAiCompletion extract(byte[] body) throws IOException {
+        Feed feed = new Feed();
+        feed.accept(ByteBuffer.wrap(body));
+        return feed.finish();
+    }
+
+    /**
+     * Extraction incrémentale : accept() pour chaque buffer reçu (dans l'ordre, un seul thread à la fois),
+     * puis finish(). Le buffer peut être libéré dès le retour d'accept().
+     */
+    public static final class Feed {
+
+        private final JsonParser parser;
+        private final ByteBufferFeeder feeder;
+
+        private final List<String> path = new ArrayList<>();
+        private boolean complete;
+
+        // part en cours : "type" et "text" peuvent arriver dans n'importe quel ordre
+        private String type;
+        private String partText;
+
+        // ⚡ cas courant, une seule part : gardée telle quelle, sans StringBuilder
+        private String text;
+        private StringBuilder joined;
+
+        // tokens du bloc usage, relus en arbre une fois le bloc fermé
+        private TokenBuffer usageTokens;
+        private TokenUsage usage = TokenUsage.ZERO;
+
+        private Feed() {
+            try {
+                this.parser = MAPPER.getFactory().createNonBlockingByteBufferParser();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            this.feeder = (ByteBufferFeeder) parser.getNonBlockingInputFeeder();
+        }
+
+        public void accept(ByteBuffer chunk) throws IOException {
+            if (!chunk.hasRemaining()) return;
+            feeder.feedInput(chunk);
+            drain();
+        }
+
+        public OpenAiCompletion finish() throws IOException {
+            feeder.endOfInput();
+            drain();
+            parser.close();
+            if (!complete) throw new IOException("OpenAI response JSON is truncated");
+
+            String result = joined != null ? joined.toString() : text;
+            return new OpenAiCompletion(result, usage);
+        }
+
+        private void drain() throws IOException {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                on(token);
+            }
+        }
+
+        private void on(JsonToken token) throws IOException {
+            if (path.isEmpty() && token != JsonToken.START_OBJECT) {
+                if (complete) return;
+                throw new IOException("OpenAI response is not a JSON object");
+            }
+            if (usageTokens != null) usageTokens.copyCurrentEvent(parser);
+
+            switch (token) {
+                case START_OBJECT, START_ARRAY -> {
+                    // sur un START_*, currentName() est le champ qui contient le conteneur
+                    String name = parser.currentName();
+                    if (token == JsonToken.START_OBJECT && path.size() == 1 && "usage".equals(name)) {
+                        usageTokens = new TokenBuffer(parser);
+                        usageTokens.copyCurrentEvent(parser);
+                    }
+                    path.add(name == null ? "[]" : name);
+                    if (token == JsonToken.START_OBJECT && inPart()) {
+                        type = null;
+                        partText = null;
+                    }
+                }
+                case END_OBJECT, END_ARRAY -> {
+                    if (token == JsonToken.END_OBJECT && inPart()) keepPart();
+                    path.remove(path.size() - 1);
+                    if (usageTokens != null && path.size() == 1) {
+                        usage = TokenUsage.from(MAPPER.readTree(usageTokens.asParser()));
+                        usageTokens = null;
+                    }
+                    if (path.isEmpty()) complete = true;
+                }
+                case VALUE_STRING -> {
+                    if (!inPart()) return;
+                    String field = parser.currentName();
+                    if ("type".equals(field)) type = parser.getText();
+                    else if ("text".equals(field)) partText = parser.getText();
+                }
+                default -> {
+                }
+            }
+        }
+
+        private boolean inPart() {
+            return path.size() == PART_PATH.size() && path.equals(PART_PATH);
+        }
+
+        private void keepPart() {
+            if (!"output_text".equals(type) || partText == null || partText.isBlank()) return;
+
+            if (text == null) {
+                text = partText;
+                return;
+            }
+            if (joined == null) joined = new StringBuilder(text);
+            joined.append("\n").append(partText);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.istory.storyengine.service.openai;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Bloc "usage" d'une réponse /responses.
+ * cachedInputTokens ⊂ inputTokens : part du prompt servie par le cache de préfixe du provider.
+ */
+public record TokenUsage(
+        long inputTokens,
+        long cachedInputTokens,
+        long outputTokens
+) {
+    public static final TokenUsage ZERO = new TokenUsage(0, 0, 0);
+
+    public static TokenUsage from(JsonNode usage) {
+        return new TokenUsage(
+                usage.path("input_tokens").asLong(0),
+                usage.path("input_tokens_details").path("cached_tokens").asLong(0),
+                usage.path("output_tokens").asLong(0)
+        );
+    }
+
+    public TokenUsage plus(TokenUsage other) {
+        return new TokenUsage(
+                inputTokens + other.inputTokens,
+                cachedInputTokens + other.cachedInputTokens,
+                outputTokens + other.outputTokens
+        );
+    }
+
+    public long total() {
+        return inputTokens + outputTokens;
+    }
+}
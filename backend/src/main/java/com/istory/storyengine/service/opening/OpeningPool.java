@@ -0,0 +1,343 @@
+package com.istory.storyengine.service.opening;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.istory.storyengine.dto.StartStoryRequest;
+import com.istory.storyengine.model.Choice;
+import com.istory.storyengine.model.StorySegment;
+import com.istory.storyengine.model.StorySession;
+import com.istory.storyengine.model.Utterance;
+import com.istory.storyengine.service.GeneratedSegment;
+import com.istory.storyengine.service.OpeningGenerator;
+import com.istory.storyengine.service.openai.OpenAiProperties;
+import com.istory.storyengine.service.streaming.SegmentStreamListener;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool d'ouvertures pré-générées (titre + variété de session + 1er segment validé),
+ * rangées par bucket (tranche d'âge x thème x nombre de chapitres) et remplies en arrière-plan.
+ * Les ouvertures sont générées avec un prénom générique, remplacé au moment du take().
+ */
+@Service
+@RequiredArgsConstructor
+public class OpeningPool {
+
+    private static final Logger log = LoggerFactory.getLogger(OpeningPool.class);
+
+    // Prénom générique des ouvertures pré-générées (remplacé par le vrai prénom au take)
+    static final String PLAYER_PLACEHOLDER = "{PRENOM}";
+
+    private static final int TITLE_MAX_LENGTH = 46;
+
+    private final OpeningGenerator openingGenerator;
+    private final OpeningPoolProperties props;
+    private final OpenAiProperties openAiProps;
+    private final MeterRegistry meterRegistry;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    // thème normalisé -> thème tel qu'envoyé au prompt
+    private final Map<String, String> themes = new HashMap<>();
+
+    private final ConcurrentMap<Bucket, Deque<Entry>> pools = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Bucket, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService sweeper;
+    private ExecutorService refillExecutor;
+
+    record Bucket(AgeBand ageBand, String theme, int chapterCount) {}
+
+    private record Entry(
+            String storySeed,
+            String openingStyle,
+            String variationPack,
+            String avoidListCsv,
+            OpeningGenerator.Opening opening,
+            Instant createdAt
+    ) {}
+
+    /**
+     * Tranches d'âge : une ouverture est générée pour l'âge représentatif de sa tranche.
+     */
+    enum AgeBand {
+        TODDLER(3, 5, 4),
+        YOUNG(6, 8, 7),
+        MIDDLE(9, 11, 10),
+        TEEN(12, 16, 13);
+
+        private final int minAge;
+        private final int maxAge;
+        private final int representativeAge;
+
+        AgeBand(int minAge, int maxAge, int representativeAge) {
+            this.minAge = minAge;
+            this.maxAge = maxAge;
+            this.representativeAge = representativeAge;
+        }
+
+        static Optional<AgeBand> of(int age) {
+            for (AgeBand band : values()) {
+                if (age >= band.minAge && age <= band.maxAge) return Optional.of(band);
+            }
+            return Optional.empty();
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        meterRegistry.gauge("story.opening.pool.size", Tags.empty(), this, OpeningPool::size);
+        if (!props.isEnabled()) return;
+
+        for (String theme : props.getThemes()) {
+            themes.put(normalizeTheme(theme), theme);
+        }
+        for (AgeBand band : AgeBand.values()) {
+            for (String theme : themes.keySet()) {
+                for (int chapterCount : props.getChapterCounts()) {
+                    Bucket bucket = new Bucket(band, theme, chapterCount);
+                    pools.put(bucket, new ConcurrentLinkedDeque<>());
+                    inFlight.put(bucket, new AtomicInteger());
+                }
+            }
+        }
+
+        // ⚠️ sans clé, chaque remplissage échouerait à chaque balayage : buckets vides, un seul message
+        if (openAiProps.getApiKey() == null || openAiProps.getApiKey().isBlank()) {
+            log.warn("Opening pool not refilled: openai.api-key is blank (openings are generated live)");
+            return;
+        }
+
+        AtomicInteger counter = new AtomicInteger();
+        refillExecutor = Executors.newFixedThreadPool(Math.max(1, props.getRefillConcurrency()), r -> {
+            Thread t = new Thread(r, "opening-pool-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "opening-pool-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+
+        long periodMs = Math.max(1_000, props.getRefillInterval().toMillis());
+        sweeper.scheduleWithFixedDelay(this::sweep, 0, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (sweeper != null) sweeper.shutdownNow();
+        if (refillExecutor != null) refillExecutor.shutdownNow();
+    }
+
+    /**
+     * Sert une ouverture prête pour cette demande (O(1)), ou rien si la demande est personnalisée,
+     * hors buckets ou si le bucket est vide. En cas de succès, la variété de la session
+     * (seed, style d'ouverture, variationPack, avoidList) est alignée sur celle de l'ouverture.
+     */
+    public Optional<OpeningGenerator.Opening> take(StartStoryRequest req, StorySession session) {
+        Optional<Bucket> bucket = bucketFor(req);
+        if (bucket.isEmpty()) {
+            meterRegistry.counter("story.opening.pool.requests", "result", "ineligible").increment();
+            return Optional.empty();
+        }
+
+        Deque<Entry> pool = pools.get(bucket.get());
+        Entry entry;
+        Instant now = Instant.now();
+        while ((entry = pool.pollFirst()) != null && isExpired(entry, now)) {
+            meterRegistry.counter("story.opening.pool.expired").increment();
+        }
+
+        // ⚡ on recomplète le bucket en arrière-plan, hit ou miss
+        refill(bucket.get());
+
+        if (entry == null) {
+            meterRegistry.counter("story.opening.pool.requests", "result", "miss").increment();
+            return Optional.empty();
+        }
+
+        try {
+            OpeningGenerator.Opening opening = personalize(entry.opening(), session.getPlayerName());
+
+            session.setStorySeed(entry.storySeed());
+            session.setOpeningStyle(entry.openingStyle());
+            session.setVariationPack(entry.variationPack());
+            session.setAvoidListCsv(entry.avoidListCsv());
+
+            meterRegistry.counter("story.opening.pool.requests", "result", "hit").increment();
+            return Optional.of(opening);
+
+        } catch (Exception e) {
+            log.warn("Failed to personalize pooled opening, falling back to live generation", e);
+            meterRegistry.counter("story.opening.pool.requests", "result", "miss").increment();
+            return Optional.empty();
+        }
+    }
+
+    int size() {
+        int total = 0;
+        for (Deque<Entry> pool : pools.values()) total += pool.size();
+        return total;
+    }
+
+    Optional<Bucket> bucketFor(StartStoryRequest req) {
+        if (!props.isEnabled()) return Optional.empty();
+
+        // character / environment / mission / tone personnalisés : génération live
+        if (!isBlank(req.character()) || !isBlank(req.environment())
+                || !isBlank(req.mission()) || !isBlank(req.tone())) {
+            return Optional.empty();
+        }
+        if (req.theme() == null) return Optional.empty();
+
+        return AgeBand.of(req.targetAge())
+                .map(band -> new Bucket(band, normalizeTheme(req.theme()), req.chapterCount()))
+                .filter(pools::containsKey);
+    }
+
+    private void sweep() {
+        try {
+            Instant now = Instant.now();
+            for (Map.Entry<Bucket, Deque<Entry>> e : pools.entrySet()) {
+                if (e.getValue().removeIf(entry -> isExpired(entry, now))) {
+                    meterRegistry.counter("story.opening.pool.expired").increment();
+                }
+                refill(e.getKey());
+            }
+        } catch (Exception e) {
+            // ne jamais tuer la tâche planifiée
+            log.warn("Opening pool sweep failed", e);
+        }
+    }
+
+    /**
+     * Lance autant de générations que nécessaire pour que (prêtes + en cours) atteigne la taille cible.
+     */
+    private void refill(Bucket bucket) {
+        Deque<Entry> pool = pools.get(bucket);
+        AtomicInteger pending = inFlight.get(bucket);
+
+        while (true) {
+            int current = pending.get();
+            if (pool.size() + current >= props.getSizePerBucket()) return;
+            if (!pending.compareAndSet(current, current + 1)) continue;
+
+            try {
+                refillExecutor.execute(() -> fill(bucket));
+            } catch (RejectedExecutionException e) {
+                pending.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    private void fill(Bucket bucket) {
+        try {
+            StartStoryRequest req = new StartStoryRequest(
+                    bucket.ageBand().representativeAge,
+                    PLAYER_PLACEHOLDER,
+                    themes.get(bucket.theme()),
+                    bucket.chapterCount(),
+                    null, null, null, null
+            );
+            StorySession session = openingGenerator.newSession(req);
+            OpeningGenerator.Opening opening = openingGenerator.generate(session, SegmentStreamListener.NONE);
+
+            // le modèle a réécrit le prénom générique : inutilisable pour un autre enfant
+            if (hasStrayPlaceholder(opening.title()) || hasStrayPlaceholder(opening.firstSegment().segmentJson())) {
+                meterRegistry.counter("story.opening.pool.refills", "outcome", "rejected").increment();
+                return;
+            }
+
+            pools.get(bucket).addLast(new Entry(
+                    session.getStorySeed(),
+                    session.getOpeningStyle(),
+                    session.getVariationPack(),
+                    session.getAvoidListCsv(),
+                    opening,
+                    Instant.now()
+            ));
+            meterRegistry.counter("story.opening.pool.refills", "outcome", "success").increment();
+
+        } catch (Exception e) {
+            meterRegistry.counter("story.opening.pool.refills", "outcome", "failure").increment();
+            log.warn("Opening pool refill failed for {}", bucket, e);
+        } finally {
+            inFlight.get(bucket).decrementAndGet();
+        }
+    }
+
+    private boolean isExpired(Entry entry, Instant now) {
+        return entry.createdAt().plus(props.getTtl()).isBefore(now);
+    }
+
+    /**
+     * Remplace le prénom générique par le vrai prénom (titre, narration, choix, dialogues, explication).
+     * Chaque entrée n'est servie qu'une fois : le segment est modifié sur place.
+     */
+    OpeningGenerator.Opening personalize(OpeningGenerator.Opening opening, String playerName) throws Exception {
+        StorySegment segment = opening.firstSegment().segment();
+
+        segment.setNarration(withName(segment.getNarration(), playerName));
+        segment.setExplanation(withName(segment.getExplanation(), playerName));
+        if (segment.getChoices() != null) {
+            for (Choice c : segment.getChoices()) c.setText(withName(c.getText(), playerName));
+        }
+        if (segment.getUtterances() != null) {
+            for (Utterance u : segment.getUtterances()) {
+                u.setText(withName(u.getText(), playerName));
+                u.setSpeaker(speakerWithName(u.getSpeaker(), playerName));
+            }
+        }
+
+        String title = withName(opening.title(), playerName);
+        if (title.length() > TITLE_MAX_LENGTH) title = title.substring(0, TITLE_MAX_LENGTH).trim();
+
+        GeneratedSegment first = opening.firstSegment();
+        return new OpeningGenerator.Opening(
+                title,
+                new GeneratedSegment(segment, mapper.writeValueAsString(segment), first.usage())
+        );
+    }
+
+    private static String withName(String text, String playerName) {
+        return text == null ? null : text.replace(PLAYER_PLACEHOLDER, playerName);
+    }
+
+    /**
+     * Le héros nommé par le prénom générique devient "HERO" : reconnu comme tel par la voix (enfant, stable)
+     * quel que soit le vrai prénom.
+     */
+    private static String speakerWithName(String speaker, String playerName) {
+        if (speaker == null) return null;
+        if (speaker.trim().equalsIgnoreCase(PLAYER_PLACEHOLDER)) return "HERO";
+        return withName(speaker, playerName);
+    }
+
+    static boolean hasStrayPlaceholder(String text) {
+        if (text == null) return false;
+        // "Prénom", "PRENOM", "prenom"... : normalizeTheme retire les accents et passe en minuscules
+        return normalizeTheme(text.replace(PLAYER_PLACEHOLDER, "")).contains("prenom");
+    }
+
+    static String normalizeTheme(String theme) {
+        String stripped = Normalizer.normalize(theme.trim(), Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return stripped.toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.isBlank();
+    }
+}
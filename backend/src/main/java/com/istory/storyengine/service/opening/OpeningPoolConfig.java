@@ -0,0 +1,9 @@
+package com.istory.storyengine.service.opening;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(OpeningPoolProperties.class)
+public class OpeningPoolConfig {
+}
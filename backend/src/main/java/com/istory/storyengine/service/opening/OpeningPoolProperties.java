@@ -0,0 +1,36 @@
+package com.istory.storyengine.service.opening;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@ConfigurationProperties(prefix = "story.opening-pool")
+public class OpeningPoolProperties {
+
+    // Ouvertures (titre + 1er segment) pré-générées pour un start() instantané.
+    // ⚠️ Coût au démarrage : buckets x sizePerBucket ouvertures (~2 appels modèle chacune), d'où false par défaut
+    private boolean enabled = false;
+
+    // Thèmes proposés par l'app (les thèmes libres passent en génération live)
+    private List<String> themes = new ArrayList<>(List.of(
+            "Aventure", "Mystère", "Fantastique", "Espace", "Pirates", "Animaux", "Chevaliers", "Magie"));
+
+    // Nombres de chapitres pré-générés (8 = valeur par défaut du front)
+    private List<Integer> chapterCounts = new ArrayList<>(List.of(8));
+
+    // Ouvertures prêtes par bucket (tranche d'âge x thème x chapitres)
+    private int sizePerBucket = 2;
+
+    // Une ouverture plus vieille est jetée (variété + évolution des prompts)
+    private Duration ttl = Duration.ofHours(6);
+
+    // Générations de remplissage simultanées (tous buckets confondus)
+    private int refillConcurrency = 2;
+
+    // Période du balayage (purge des expirées + remplissage des buckets incomplets)
+    private Duration refillInterval = Duration.ofMinutes(1);
+}
@@ -0,0 +1,95 @@
+package com.istory.storyengine.service.prompt;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Schémas JSON stricts (structured outputs) envoyés dans "text.format" de /responses.
+ * Deux schémas de segment : on sait avant l'appel si l'histoire doit se terminer (failureImminent),
+ * ce qui permet d'imposer soit exactement 4 choix, soit aucun.
+ */
+public final class OutputSchemas {
+
+    private OutputSchemas() {}
+
+    private static final String UTTERANCE = """
+            {
+              "type": "object",
+              "additionalProperties": false,
+              "required": ["speaker", "ageGroup", "gender", "text"],
+              "properties": {
+                "speaker": { "type": "string" },
+                "ageGroup": { "type": "string", "enum": ["CHILD", "ADULT"] },
+                "gender": { "type": "string", "enum": ["MALE", "FEMALE", "NEUTRAL"] },
+                "text": { "type": "string" }
+              }
+            }""";
+
+    private static final String CHOICE = """
+            {
+              "type": "object",
+              "additionalProperties": false,
+              "required": ["id", "text"],
+              "properties": {
+                "id": { "type": "string", "enum": ["A", "B", "C", "D"] },
+                "text": { "type": "string" }
+              }
+            }""";
+
+    private static final String SEGMENT = """
+            {
+              "type": "object",
+              "additionalProperties": false,
+              "required": ["narration", "utterances", "choices", "moralChoiceIds", "ended", "explanation"],
+              "properties": {
+                "narration": { "type": "string" },
+                "utterances": { "type": "array", "items": %s },
+                "choices": { "type": "array", "minItems": %d, "maxItems": %d, "items": %s },
+                "moralChoiceIds": {
+                  "type": "array", "minItems": %d, "maxItems": %d,
+                  "items": { "type": "string", "enum": ["A", "B", "C", "D"] }
+                },
+                "ended": { "type": "boolean", "enum": [%s] },
+                "explanation": { "type": "string" }
+              }
+            }""";
+
+    private static final String TITLE = """
+            {
+              "type": "object",
+              "additionalProperties": false,
+              "required": ["title"],
+              "properties": {
+                "title": { "type": "string" }
+              }
+            }""";
+
+    /** Segment à 4 choix (2 moraux) */
+    public static final Map<String, Object> SEGMENT_CONTINUE =
+            format("story_segment", SEGMENT.formatted(UTTERANCE, 4, 4, CHOICE, 2, 2, "false"));
+
+    /** Segment de fin : aucun choix, explanation attendue */
+    public static final Map<String, Object> SEGMENT_ENDING =
+            format("story_segment_ending", SEGMENT.formatted(UTTERANCE, 0, 0, CHOICE, 0, 0, "true"));
+
+    public static final Map<String, Object> STORY_TITLE = format("story_title", TITLE);
+
+    private static Map<String, Object> format(String name, String schemaJson) {
+        try {
+            Map<String, Object> schema = new ObjectMapper().readValue(schemaJson, new TypeReference<>() {});
+
+            Map<String, Object> format = new LinkedHashMap<>();
+            format.put("type", "json_schema");
+            format.put("name", name);
+            format.put("strict", true);
+            format.put("schema", schema);
+
+            return Map.of("format", format);
+        } catch (Exception e) {
+            throw new IllegalStateException("Invalid output schema " + name, e);
+        }
+    }
+}
@@ -15,38 +15,61 @@ public class PromptBuilder {
 
     public String build(PromptUser data) {
         try {
-            Map<String, Object> storyContext = new LinkedHashMap<>();
-            storyContext.put("targetAge", data.targetAge());
-            storyContext.put("playerName", data.playerName());
-            storyContext.put("theme", data.theme());
-            storyContext.put("plannedSegments", data.plannedSegments());
-
-            storyContext.put("character", data.character());
-            storyContext.put("environment", data.environment());
-            storyContext.put("mission", data.mission());
-            storyContext.put("tone", data.tone());
-            storyContext.put("title", data.title());
-
-            // 🔥 Variété
-            storyContext.put("storySeed", data.storySeed());
-            storyContext.put("openingStyle", data.openingStyle());
-            storyContext.put("variationPack", data.variationPack());
-            storyContext.put("avoidList", data.avoidList() == null ? List.of() : data.avoidList());
-
-            Map<String, Object> storyState = new LinkedHashMap<>();
-            storyState.put("segmentIndex", data.segmentIndex());
-            storyState.put("immoralChoicesCount", data.immoralChoicesCount());
-            storyState.put("lastChoiceSummary", data.lastChoiceSummary());
-            storyState.put("isFailureImminent", data.isFailureImminent());
-
-            Map<String, Object> root = Map.of(
-                    "storyContext", storyContext,
-                    "storyState", storyState
-            );
+            Map<String, Object> root = new LinkedHashMap<>();
+            root.put("storyContext", storyContext(data));
+            root.put("storyState", storyState(data));
 
             return mapper.writeValueAsString(root);
         } catch (JsonProcessingException e) {
             throw new RuntimeException("Prompt serialization failed", e);
         }
     }
+
+    /**
+     * Même contenu que build(), mais séparé en préfixe stable (contexte de session)
+     * et partie variable (état du tour) pour profiter du cache de prompt.
+     */
+    public SegmentPrompt buildSegmentPrompt(PromptUser data) {
+        try {
+            String context = mapper.writeValueAsString(Map.of("storyContext", storyContext(data)));
+            String state = mapper.writeValueAsString(Map.of("storyState", storyState(data)));
+
+            return new SegmentPrompt(context, state, "story-" + data.storySeed());
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Prompt serialization failed", e);
+        }
+    }
+
+    // ⚠️ Ne mettre ici que des champs qui ne changent JAMAIS pendant une session (ordre stable) :
+    // le moindre octet différent invalide le cache de préfixe.
+    private Map<String, Object> storyContext(PromptUser data) {
+        Map<String, Object> storyContext = new LinkedHashMap<>();
+        storyContext.put("targetAge", data.targetAge());
+        storyContext.put("playerName", data.playerName());
+        storyContext.put("theme", data.theme());
+        storyContext.put("plannedSegments", data.plannedSegments());
+
+        storyContext.put("character", data.character());
+        storyContext.put("environment", data.environment());
+        storyContext.put("mission", data.mission());
+        storyContext.put("tone", data.tone());
+
+        // 🔥 Variété
+        storyContext.put("storySeed", data.storySeed());
+        storyContext.put("openingStyle", data.openingStyle());
+        storyContext.put("variationPack", data.variationPack());
+        storyContext.put("avoidList", data.avoidList() == null ? List.of() : data.avoidList());
+        return storyContext;
+    }
+
+    private Map<String, Object> storyState(PromptUser data) {
+        Map<String, Object> storyState = new LinkedHashMap<>();
+        // le titre est généré en parallèle du 1er segment : absent au tour 0, donc hors du préfixe stable
+        storyState.put("title", data.title());
+        storyState.put("segmentIndex", data.segmentIndex());
+        storyState.put("immoralChoicesCount", data.immoralChoicesCount());
+        storyState.put("lastChoiceSummary", data.lastChoiceSummary());
+        storyState.put("isFailureImminent", data.isFailureImminent());
+        return storyState;
+    }
 }
@@ -85,6 +85,26 @@ RÈGLES SUR LES CHOIX:
   - explanation explique brièvement pourquoi c'était un mauvais choix et ce qu'on apprend.
 """;
 
+    /**
+     * Réparation ciblée d'un segment invalide : on renvoie le JSON + la liste exacte des violations,
+     * le modèle ne corrige que ça (beaucoup moins cher qu'une régénération complète).
+     */
+    public static final String REPAIR_PROMPT = """
+Tu corriges un segment JSON d'histoire interactive pour enfants qui ne respecte pas le format.
+Entrée: { "segment": { ... }, "violations": [ "...", ... ] }
+
+Corrige UNIQUEMENT les violations listées, en changeant le moins de choses possible.
+Ne réécris pas l'histoire. Garde la même valeur de "ended".
+
+Rappels du format:
+- ended=false: exactement 4 choices aux ids uniques, exactement 2 moralChoiceIds présents dans choices.
+- ended=true: choices=[], moralChoiceIds=[], explanation non vide (1-3 phrases).
+- Chaque dialogue entre guillemets "..." de la narration a exactement une utterance, dans le même ordre,
+  avec utterance.text = le texte entre guillemets. Chaque utterance a speaker, ageGroup (CHILD/ADULT) et text.
+
+IMPORTANT: Retourne STRICTEMENT le segment JSON corrigé (même format que l'entrée "segment"), et rien d'autre.
+""";
+
     /**
      * Titre court (smartphone), max ~50-60 caractères.
      */
@@ -0,0 +1,31 @@
+package com.istory.storyengine.service.prompt;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prompt d'un segment découpé pour le cache de préfixe du provider :
+ * - contextJson : contexte de session, octet pour octet identique à chaque tour (préfixe cachable)
+ * - stateJson   : état du tour (segmentIndex, dernier choix...), toujours en dernier
+ * - cacheKey    : prompt_cache_key, stable par session pour router vers le même cache
+ */
+public record SegmentPrompt(
+        String contextJson,
+        String stateJson,
+        String cacheKey
+) {
+    public SegmentPrompt withStateSuffix(String suffix) {
+        if (suffix == null || suffix.isEmpty()) return this;
+        return new SegmentPrompt(contextJson, stateJson + suffix, cacheKey);
+    }
+
+    /**
+     * "input" de /responses : contexte stable d'abord, état du tour ensuite.
+     */
+    public List<Map<String, String>> toInput() {
+        return List.of(
+                Map.of("role", "user", "content", contextJson),
+                Map.of("role", "user", "content", stateJson)
+        );
+    }
+}
@@ -0,0 +1,45 @@
+package com.istory.storyengine.service.session;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "story.lifecycle")
+public class LifecycleProperties {
+
+    // Expiration + archivage + plafond des sessions en base (H2 en mémoire : la base, c'est le heap)
+    private boolean enabled = true;
+
+    // Session RUNNING sans activité depuis idleTtl : abandonnée
+    private Duration idleTtl = Duration.ofHours(2);
+
+    // Session FAILED / COMPLETED sans activité depuis finishedTtl (laisse le temps d'un rewind)
+    private Duration finishedTtl = Duration.ofMinutes(30);
+
+    private Duration sweepInterval = Duration.ofMinutes(1);
+
+    // Plafonds durs : au-delà, les sessions les moins récemment actives sortent (LRU)
+    private long maxSessions = 50_000;
+    private long maxNodes = 1_000_000;
+
+    // Plafond en octets des noeuds stockés : un segment va jusqu'à 256 Ko, le nombre de lignes ne borne pas le heap.
+    // null = 1/4 du heap max (-Xmx)
+    private DataSize maxStoredBytes;
+
+    // Sessions traitées par requête de sélection
+    private int batchSize = 500;
+
+    private Archive archive = new Archive();
+
+    @Data
+    public static class Archive {
+        // false = les sessions expirées sont simplement supprimées
+        private boolean enabled = true;
+
+        // un fichier JSON Lines gzip par jour
+        private String dir = "./data/archive";
+    }
+}
@@ -0,0 +1,29 @@
+package com.istory.storyengine.service.session;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "story.persistence")
+public class PersistenceProperties {
+
+    public enum Durability {
+        // session + segment écrits dans la transaction de la requête
+        SYNC,
+        // écrits en lot par un flusher (write-behind), la requête ne les attend pas
+        ASYNC
+    }
+
+    private Durability durability = Durability.SYNC;
+
+    // ASYNC : délai max avant écriture d'une interaction
+    private Duration flushInterval = Duration.ofMillis(200);
+
+    // ASYNC : au-delà, flush immédiat sans attendre l'intervalle
+    private int maxBatch = 100;
+
+    // ASYNC : échecs de suite d'un même lot avant d'isoler (bisection) et d'abandonner les lignes refusées
+    private int maxFlushAttempts = 3;
+}
@@ -0,0 +1,74 @@
+package com.istory.storyengine.service.session;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import com.istory.storyengine.model.StoryNode;
+import com.istory.storyengine.model.StorySession;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Archive disque compacte des sessions expirées : une ligne JSON par session (session + noeuds),
+ * dans sessions-AAAA-MM-JJ.jsonl.gz. Chaque ajout est un membre gzip complet :
+ * le fichier reste lisible par zcat / GZIPInputStream même après un arrêt brutal.
+ */
+@Component
+@RequiredArgsConstructor
+public class SessionArchive {
+
+    private final LifecycleProperties props;
+
+    // Instant en ISO-8601 sans dépendre du module jsr310
+    private final ObjectMapper mapper = new ObjectMapper()
+            .registerModule(new SimpleModule().addSerializer(Instant.class, ToStringSerializer.instance));
+
+    /**
+     * @return octets écrits sur disque (compressés)
+     */
+    public synchronized long append(StorySession session, List<StoryNode> nodes) throws IOException {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("archivedAt", Instant.now());
+        record.put("session", session);
+        record.put("nodes", nodes.stream().map(SessionArchive::node).toList());
+
+        byte[] line = mapper.writeValueAsBytes(record);
+
+        Path dir = Path.of(props.getArchive().getDir());
+        Files.createDirectories(dir);
+        Path file = dir.resolve("sessions-" + LocalDate.now(ZoneOffset.UTC) + ".jsonl.gz");
+
+        long before = Files.exists(file) ? Files.size(file) : 0;
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+            out.write(line);
+            out.write('\n');
+        }
+        return Files.size(file) - before;
+    }
+
+    private static Map<String, Object> node(StoryNode n) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("id", n.getId());
+        m.put("parentNodeId", n.getParentNodeId());
+        m.put("choiceId", n.getChoiceId());
+        m.put("segmentIndex", n.getSegmentIndex());
+        m.put("createdAt", n.getCreatedAt());
+        m.put("moralSegment", n.isMoralSegment());
+        m.put("segmentJson", n.getSegmentJson());
+        return m;
+    }
+}
@@ -0,0 +1,9 @@
+package com.istory.storyengine.service.session;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties({SessionCacheProperties.class, PersistenceProperties.class, LifecycleProperties.class})
+public class SessionCacheConfig {
+}
@@ -0,0 +1,17 @@
+package com.istory.storyengine.service.session;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "story.session-cache")
+public class SessionCacheProperties {
+
+    // Sessions chaudes (et leur segment courant déjà parsé) gardées en mémoire
+    private int maxEntries = 10_000;
+
+    // Session sans écriture depuis ttl : relue depuis la base au prochain accès
+    private Duration ttl = Duration.ofMinutes(30);
+}
@@ -0,0 +1,200 @@
+package com.istory.storyengine.service.session;
+
+import com.istory.storyengine.model.StoryNode;
+import com.istory.storyengine.model.StorySession;
+import com.istory.storyengine.model.StoryStatus;
+import com.istory.storyengine.repository.StoryNodeRepository;
+import com.istory.storyengine.repository.StorySessionRepository;
+import com.istory.storyengine.service.SessionGate;
+import com.istory.storyengine.service.speculation.SpeculativeSegmentEngine;
+import com.istory.storyengine.service.tts.AudioPrefetcher;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Cycle de vie des sessions en base (H2 en mémoire : chaque ligne est du heap) :
+ * - FAILED / COMPLETED inactives depuis finishedTtl, RUNNING inactives depuis idleTtl : archivées puis supprimées ;
+ * - au-delà de maxSessions / maxNodes / maxStoredBytes : les moins récemment actives sortent (LRU), archivées
+ *   de la même façon. Le plafond en octets est celui qui borne vraiment le heap (segments jusqu'à 256 Ko).
+ * Chaque session est traitée sous le verrou de SessionGate : jamais au milieu d'un choose / rewind.
+ */
+@Service
+@RequiredArgsConstructor
+public class SessionLifecycleManager {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionLifecycleManager.class);
+
+    private static final Set<StoryStatus> FINISHED = EnumSet.of(StoryStatus.FAILED, StoryStatus.COMPLETED);
+    private static final Set<StoryStatus> ACTIVE = EnumSet.of(StoryStatus.RUNNING);
+
+    // garde-fou : un balayage ne traite pas plus de batchSize x MAX_PAGES sessions par catégorie
+    private static final int MAX_PAGES = 20;
+
+    // ligne hors segment (uuids, index, choix, index secondaires)
+    private static final long NODE_OVERHEAD_BYTES = 128;
+
+    private final StorySessionRepository sessionRepository;
+    private final StoryNodeRepository nodeRepository;
+    private final SessionStore sessionStore;
+    private final SessionArchive archive;
+    private final SessionGate sessionGate;
+    private final SpeculativeSegmentEngine speculativeEngine;
+    private final AudioPrefetcher audioPrefetcher;
+    private final LifecycleProperties props;
+    private final MeterRegistry meterRegistry;
+
+    // comptés à chaque balayage (pas de COUNT(*) à chaque scrape)
+    private final AtomicLong liveSessions = new AtomicLong();
+    private final AtomicLong liveNodes = new AtomicLong();
+    private final AtomicLong storedBytes = new AtomicLong();
+
+    private ScheduledExecutorService sweeper;
+
+    @PostConstruct
+    void start() {
+        meterRegistry.gauge("story.sessions.live", Tags.empty(), liveSessions);
+        meterRegistry.gauge("story.nodes.live", Tags.empty(), liveNodes);
+        meterRegistry.gauge("story.nodes.stored.bytes", Tags.empty(), storedBytes);
+        if (!props.isEnabled()) return;
+
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-lifecycle");
+            t.setDaemon(true);
+            return t;
+        });
+        long periodMs = Math.max(1_000, props.getSweepInterval().toMillis());
+        sweeper.scheduleWithFixedDelay(this::sweepQuietly, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (sweeper != null) sweeper.shutdownNow();
+    }
+
+    private void sweepQuietly() {
+        try {
+            sweep();
+        } catch (Exception e) {
+            // ne jamais tuer la tâche planifiée
+            log.warn("Session lifecycle sweep failed", e);
+        }
+    }
+
+    void sweep() {
+        // ⚡ un seul flush du write-behind par balayage : comptes à jour, archivage sans flush par session
+        sessionStore.flushPending();
+
+        Instant now = Instant.now();
+
+        Instant finishedCutoff = now.minus(props.getFinishedTtl());
+        expireInactive("finished", FINISHED, finishedCutoff);
+
+        Instant idleCutoff = now.minus(props.getIdleTtl());
+        expireInactive("idle", ACTIVE, idleCutoff);
+
+        enforceCeiling();
+    }
+
+    private void expireInactive(String reason, Set<StoryStatus> statuses, Instant cutoff) {
+        int batch = Math.max(1, props.getBatchSize());
+        for (int page = 0; page < MAX_PAGES; page++) {
+            List<UUID> ids = sessionRepository.findIdsInactiveSince(statuses, cutoff, PageRequest.of(0, batch));
+            int done = 0;
+            for (UUID id : ids) {
+                // l'enfant a pu rejouer entre la sélection et le verrou
+                if (expire(id, reason, s -> statuses.contains(s.getStatus()) && s.getLastActivityAt().isBefore(cutoff))) {
+                    done++;
+                }
+            }
+            if (ids.size() < batch || done == 0) return;
+        }
+    }
+
+    private void enforceCeiling() {
+        int batch = Math.max(1, props.getBatchSize());
+        for (int page = 0; page < MAX_PAGES; page++) {
+            refreshCounts();
+            if (liveSessions.get() <= props.getMaxSessions()
+                    && liveNodes.get() <= props.getMaxNodes()
+                    && storedBytes.get() <= maxStoredBytes()) return;
+
+            List<UUID> ids = sessionRepository.findLeastRecentlyActiveIds(PageRequest.of(0, batch));
+            if (ids.isEmpty()) return;
+            for (UUID id : ids) expire(id, "ceiling", s -> true);
+        }
+        refreshCounts();
+    }
+
+    private void refreshCounts() {
+        liveSessions.set(sessionRepository.count());
+        liveNodes.set(nodeRepository.count());
+        storedBytes.set(nodeRepository.sumStoredSegmentBytes() + NODE_OVERHEAD_BYTES * liveNodes.get());
+    }
+
+    long maxStoredBytes() {
+        return props.getMaxStoredBytes() != null
+                ? props.getMaxStoredBytes().toBytes()
+                : Runtime.getRuntime().maxMemory() / 4;
+    }
+
+    /**
+     * @return true si la session a été archivée (si activée) puis supprimée
+     */
+    private boolean expire(UUID sessionId, String reason, Predicate<StorySession> stillEligible) {
+        try {
+            return sessionGate.execute(sessionId, "expire", "", () -> {
+                Optional<StorySession> session = sessionStore.find(sessionId);
+                if (session.isEmpty() || !stillEligible.test(session.get())) return false;
+
+                List<StoryNode> nodes = sessionStore.nodes(sessionId);
+                // lu avant suppression : taille de la colonne stockée, sans recompresser les segments
+                long storedBytes = nodeRepository.sumStoredSegmentBytes(sessionId);
+
+                if (props.getArchive().isEnabled()) {
+                    try {
+                        long written = archive.append(session.get(), nodes);
+                        meterRegistry.counter("story.sessions.archived").increment();
+                        meterRegistry.counter("story.sessions.archive.bytes").increment(written);
+                    } catch (IOException e) {
+                        // ⚠️ on ne supprime pas ce qu'on n'a pas pu archiver
+                        throw new IllegalStateException("Failed to archive session " + sessionId, e);
+                    }
+                }
+
+                sessionStore.delete(sessionId);
+                speculativeEngine.forget(sessionId);
+                audioPrefetcher.forget(sessionId);
+
+                meterRegistry.counter("story.sessions.expired", "reason", reason).increment();
+                meterRegistry.counter("story.sessions.reclaimed.bytes")
+                        .increment(SessionStore.estimateBytes(session.get()) + NODE_OVERHEAD_BYTES * nodes.size() + storedBytes);
+                return true;
+            }).value();
+
+        } catch (RuntimeException e) {
+            meterRegistry.counter("story.sessions.expire.failures", "reason", reason).increment();
+            log.warn("Failed to expire session {} ({})", sessionId, reason, e);
+            return false;
+        }
+    }
+}
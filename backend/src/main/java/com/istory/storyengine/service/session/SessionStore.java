@@ -0,0 +1,249 @@
+package com.istory.storyengine.service.session;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.istory.storyengine.cache.LruCache;
+import com.istory.storyengine.model.Choice;
+import com.istory.storyengine.model.StoryNode;
+import com.istory.storyengine.model.StorySegment;
+import com.istory.storyengine.model.StorySession;
+import com.istory.storyengine.model.Utterance;
+import com.istory.storyengine.repository.StoryNodeRepository;
+import com.istory.storyengine.repository.StorySessionRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Accès aux sessions, à l'arbre de leurs segments et au segment courant, avec cache mémoire
+ * write-through devant JPA : choose() et la TTS lisent la session sans aller-retour base,
+ * et le segment courant n'est parsé (segmentJson -> StorySegment) qu'une fois.
+ * Toute écriture passe par ici (SessionWriter d'abord, puis cache) ; en cas d'échec l'entrée est invalidée.
+ */
+@Service
+public class SessionStore {
+
+    private final StorySessionRepository sessionRepository;
+    private final StoryNodeRepository nodeRepository;
+    private final SessionWriter writer;
+
+    private final LruCache<UUID, StorySession> sessions;
+    private final LruCache<UUID, CurrentSegment> segments;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Dernier segment servi d'une session (noeud courant), déjà parsé.
+     */
+    private record CurrentSegment(UUID nodeId, StorySegment segment) {}
+
+    public SessionStore(
+            StorySessionRepository sessionRepository,
+            StoryNodeRepository nodeRepository,
+            SessionWriter writer,
+            SessionCacheProperties props,
+            MeterRegistry meterRegistry
+    ) {
+        this.sessionRepository = sessionRepository;
+        this.nodeRepository = nodeRepository;
+        this.writer = writer;
+        this.sessions = new LruCache<>("story.sessions", props.getMaxEntries(), props.getTtl(),
+                SessionStore::estimateBytes, meterRegistry);
+        this.segments = new LruCache<>("story.segments", props.getMaxEntries(), props.getTtl(),
+                c -> estimateBytes(c.segment()), meterRegistry);
+    }
+
+    public Optional<StorySession> find(UUID sessionId) {
+        StorySession cached = sessions.get(sessionId);
+        if (cached != null) return Optional.of(cached);
+
+        // write-behind : l'état en attente est plus récent que la base
+        Optional<StorySession> loaded = writer.pendingSession(sessionId).or(() -> sessionRepository.findById(sessionId));
+        loaded.ifPresent(s -> sessions.put(sessionId, s));
+        return loaded;
+    }
+
+    /**
+     * Écrit la session (base ou write-behind) puis dans le cache (l'instance passée, que l'appelant continue d'utiliser).
+     */
+    public StorySession save(StorySession session) {
+        return commit(session, null, null);
+    }
+
+    /**
+     * Unit of work d'une interaction : état de session + nouveau noeud (optionnel) en une écriture.
+     *
+     * @param segment segment du noeud courant de la session (session.currentNodeId), mis en cache ; null si inchangé
+     */
+    public StorySession commit(StorySession session, StoryNode node, StorySegment segment) {
+        session.setLastActivityAt(Instant.now());
+
+        StorySession saved;
+        try {
+            saved = writer.write(session, node);
+        } catch (RuntimeException e) {
+            if (session.getId() != null) evict(session.getId());
+            throw e;
+        }
+        // persist() renseigne l'id sur l'instance ; merge() renvoie une copie : on garde l'instance de l'appelant
+        sessions.put(saved.getId(), session);
+        if (segment != null && session.getCurrentNodeId() != null) {
+            segments.put(saved.getId(), new CurrentSegment(session.getCurrentNodeId(), segment));
+        }
+        return saved;
+    }
+
+    /**
+     * Oublie l'état en mémoire d'une session modifiée mais pas écrite (ex: génération en échec).
+     */
+    public void evict(UUID sessionId) {
+        sessions.invalidate(sessionId);
+        segments.invalidate(sessionId);
+    }
+
+    /**
+     * Segment d'un noeud : depuis le cache si c'est le segment courant, sinon relu et parsé.
+     */
+    public StorySegment segment(UUID sessionId, UUID nodeId) {
+        return segment(sessionId, nodeId, () -> node(nodeId));
+    }
+
+    /**
+     * Segment d'un noeud déjà chargé (ex: enfant réutilisé).
+     */
+    public StorySegment segment(UUID sessionId, StoryNode node) {
+        return segment(sessionId, node.getId(), () -> node);
+    }
+
+    private StorySegment segment(UUID sessionId, UUID nodeId, Supplier<StoryNode> node) {
+        CurrentSegment cached = segments.get(sessionId);
+        if (cached != null && cached.nodeId().equals(nodeId)) {
+            return cached.segment();
+        }
+
+        StorySegment segment = parse(node.get());
+        segments.put(sessionId, new CurrentSegment(nodeId, segment));
+        return segment;
+    }
+
+    /**
+     * Noeud par id, en attente d'écriture compris.
+     */
+    public StoryNode node(UUID nodeId) {
+        return writer.pendingNode(nodeId)
+                .or(() -> nodeRepository.findById(nodeId))
+                .orElseThrow(() -> new IllegalStateException("No story node found: " + nodeId));
+    }
+
+    /**
+     * Noeud déjà généré pour (parent, choix), en attente d'écriture compris.
+     */
+    public Optional<StoryNode> child(UUID parentNodeId, String choiceId) {
+        return writer.pendingChild(parentNodeId, choiceId)
+                .or(() -> nodeRepository.findFirstByParentNodeIdAndChoiceId(parentNodeId, choiceId));
+    }
+
+    /**
+     * Choix du noeud qui ont déjà une suite générée (inutile de les pré-générer).
+     */
+    public Set<String> choicesWithChild(UUID parentNodeId) {
+        Set<String> ids = new HashSet<>(nodeRepository.findChildChoiceIds(parentNodeId));
+        for (StoryNode n : writer.pendingChildren(parentNodeId)) ids.add(n.getChoiceId());
+        return ids;
+    }
+
+    /**
+     * Ancêtre de nodeId (lui-même compris) situé à segmentIndex : cible d'un rewind sur la branche courante.
+     */
+    public StoryNode ancestorAt(UUID nodeId, int segmentIndex) {
+        StoryNode node = node(nodeId);
+        while (node.getSegmentIndex() > segmentIndex && node.getParentNodeId() != null) {
+            node = node(node.getParentNodeId());
+        }
+        if (node.getSegmentIndex() != segmentIndex) {
+            throw new IllegalStateException("No segment found at index=" + segmentIndex);
+        }
+        return node;
+    }
+
+    private StorySegment parse(StoryNode node) {
+        try {
+            return mapper.readValue(node.getSegmentJson(), StorySegment.class);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to parse segment json at index=" + node.getSegmentIndex(), e);
+        }
+    }
+
+    /**
+     * Tous les noeuds d'une session (archivage), en attente d'écriture compris.
+     * ⚡ Sans flush global : les noeuds en attente de cette session sont fusionnés à ceux de la base.
+     */
+    public List<StoryNode> nodes(UUID sessionId) {
+        Map<UUID, StoryNode> nodes = new LinkedHashMap<>();
+        for (StoryNode n : nodeRepository.findBySessionIdOrderBySegmentIndexAsc(sessionId)) nodes.put(n.getId(), n);
+        // un noeud du lot en cours d'écriture peut déjà être en base : dédoublonné par id
+        for (StoryNode n : writer.pendingNodesOf(sessionId)) nodes.putIfAbsent(n.getId(), n);
+
+        List<StoryNode> ordered = new ArrayList<>(nodes.values());
+        ordered.sort(Comparator.comparingInt(StoryNode::getSegmentIndex));
+        return ordered;
+    }
+
+    /**
+     * Écrit tout ce qui est en attente (write-behind) : une fois par balayage, pas par session.
+     */
+    public void flushPending() {
+        writer.flush();
+    }
+
+    /**
+     * Supprime définitivement la session et ses noeuds (base, write-behind, cache).
+     */
+    public void delete(UUID sessionId) {
+        writer.delete(sessionId);
+        evict(sessionId);
+    }
+
+    // -------------------------
+    // Empreinte mémoire estimée (2 octets / caractère + en-têtes d'objets)
+    // -------------------------
+
+    static long estimateBytes(StorySession s) {
+        return 256 + 2L * (len(s.getTitle()) + len(s.getCharacter()) + len(s.getEnvironment())
+                + len(s.getMission()) + len(s.getTone()) + len(s.getPlayerName()) + len(s.getTheme())
+                + len(s.getStorySeed()) + len(s.getOpeningStyle()) + len(s.getVariationPack())
+                + len(s.getAvoidListCsv()) + len(s.getLastFailedChoiceId()));
+    }
+
+    static long estimateBytes(StorySegment s) {
+        long chars = len(s.getNarration()) + len(s.getExplanation());
+        long objects = 1;
+        if (s.getChoices() != null) {
+            for (Choice c : s.getChoices()) {
+                chars += len(c.getId()) + len(c.getText());
+                objects++;
+            }
+        }
+        if (s.getUtterances() != null) {
+            for (Utterance u : s.getUtterances()) {
+                chars += len(u.getSpeaker()) + len(u.getAgeGroup()) + len(u.getGender()) + len(u.getText());
+                objects++;
+            }
+        }
+        return 64 * objects + 2 * chars;
+    }
+
+    private static int len(String s) {
+        return s == null ? 0 : s.length();
+    }
+}
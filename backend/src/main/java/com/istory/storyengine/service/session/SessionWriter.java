@@ -0,0 +1,358 @@
+package com.istory.storyengine.service.session;
+
+import com.istory.storyengine.model.StoryNode;
+import com.istory.storyengine.model.StorySession;
+import com.istory.storyengine.repository.StoryNodeRepository;
+import com.istory.storyengine.repository.StorySessionRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+/**
+ * Unit of work des interactions : l'état de session et le nouveau noeud d'une interaction
+ * partent dans une seule transaction (un seul flush, inserts/updates batchés JDBC).
+ * <p>
+ * - SYNC  : écrit tout de suite, dans le thread de la requête ;
+ * - ASYNC : write-behind — instantané mis en attente, écrit en lot (toutes sessions confondues)
+ *   toutes les flushInterval ou dès maxBatch interactions. Une session modifiée plusieurs fois
+ *   entre deux flushs n'est écrite qu'une fois (dernier état).
+ * <p>
+ * ⚠️ Un lot en échec est remis en attente ; après maxFlushAttempts échecs de suite, il est coupé en deux
+ * jusqu'à isoler les lignes refusées (contrainte, donnée invalide), qui sont journalisées puis abandonnées
+ * (story.persistence.dropped{type}) : une seule ligne empoisonnée ne bloque plus tout le write-behind.
+ */
+@Service
+public class SessionWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionWriter.class);
+
+    private final StorySessionRepository sessionRepository;
+    private final StoryNodeRepository nodeRepository;
+    private final TransactionTemplate tx;
+    private final PersistenceProperties props;
+    private final MeterRegistry meterRegistry;
+
+    // ASYNC : dernier instantané par session + noeuds dans l'ordre d'arrivée
+    private final ConcurrentMap<UUID, StorySession> dirtySessions = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<StoryNode> pendingNodes = new ConcurrentLinkedQueue<>();
+
+    // lot en cours d'écriture : toujours visible en lecture tant que la transaction n'est pas validée
+    private volatile Batch flushing = Batch.EMPTY;
+
+    private final Object flushLock = new Object();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    // échecs de suite du lot complet (sous flushLock)
+    private int failedFlushes;
+
+    private ScheduledExecutorService flusher;
+
+    private record Batch(Map<UUID, StorySession> sessions, List<StoryNode> nodes) {
+        static final Batch EMPTY = new Batch(Map.of(), List.of());
+
+        int size() {
+            return sessions.size() + nodes.size();
+        }
+
+        /**
+         * Deux moitiés, dans l'ordre d'écriture : sessions avant noeuds, noeuds dans l'ordre d'arrivée.
+         */
+        List<Batch> split() {
+            if (!sessions.isEmpty() && !nodes.isEmpty()) {
+                return List.of(new Batch(sessions, List.of()), new Batch(Map.of(), nodes));
+            }
+            if (!sessions.isEmpty()) {
+                List<Map.Entry<UUID, StorySession>> entries = new ArrayList<>(sessions.entrySet());
+                int mid = entries.size() / 2;
+                return List.of(new Batch(toMap(entries.subList(0, mid)), List.of()),
+                        new Batch(toMap(entries.subList(mid, entries.size())), List.of()));
+            }
+            int mid = nodes.size() / 2;
+            return List.of(new Batch(Map.of(), nodes.subList(0, mid)), new Batch(Map.of(), nodes.subList(mid, nodes.size())));
+        }
+
+        private static Map<UUID, StorySession> toMap(List<Map.Entry<UUID, StorySession>> entries) {
+            Map<UUID, StorySession> map = new LinkedHashMap<>();
+            entries.forEach(e -> map.put(e.getKey(), e.getValue()));
+            return map;
+        }
+    }
+
+    public SessionWriter(
+            StorySessionRepository sessionRepository,
+            StoryNodeRepository nodeRepository,
+            PlatformTransactionManager transactionManager,
+            PersistenceProperties props,
+            MeterRegistry meterRegistry
+    ) {
+        this.sessionRepository = sessionRepository;
+        this.nodeRepository = nodeRepository;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.props = props;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void start() {
+        meterRegistry.gauge("story.persistence.pending", Tags.empty(), this, w -> w.dirtySessions.size() + w.pendingNodes.size());
+        if (props.getDurability() != PersistenceProperties.Durability.ASYNC) return;
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-write-behind");
+            t.setDaemon(true);
+            return t;
+        });
+        long periodMs = Math.max(10, props.getFlushInterval().toMillis());
+        flusher.scheduleWithFixedDelay(this::flushQuietly, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (flusher != null) flusher.shutdownNow();
+        // ⚠️ ne rien perdre à l'arrêt
+        flushQuietly();
+    }
+
+    /**
+     * Écrit (SYNC) ou met en attente (ASYNC) l'état de la session et, s'il y en a un, le nouveau noeud.
+     * Une session jamais insérée est toujours écrite tout de suite : son id vient de l'insert.
+     */
+    public StorySession write(StorySession session, StoryNode node) {
+        if (props.getDurability() == PersistenceProperties.Durability.SYNC || session.getId() == null) {
+            return writeNow(session, node);
+        }
+
+        // instantané : l'appelant continue de modifier son instance
+        dirtySessions.put(session.getId(), copyOf(session));
+        if (node != null) pendingNodes.add(node);
+        meterRegistry.counter("story.persistence.writes", "mode", "async").increment();
+
+        if (dirtySessions.size() + pendingNodes.size() >= props.getMaxBatch()
+                && flushScheduled.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                flushScheduled.set(false);
+                flushQuietly();
+            });
+        }
+        return session;
+    }
+
+    /**
+     * ASYNC : état pas encore écrit en base (copie, modifiable par l'appelant).
+     */
+    public Optional<StorySession> pendingSession(UUID sessionId) {
+        StorySession pending = dirtySessions.get(sessionId);
+        if (pending == null) pending = flushing.sessions().get(sessionId);
+        return Optional.ofNullable(pending).map(SessionWriter::copyOf);
+    }
+
+    public Optional<StoryNode> pendingNode(UUID nodeId) {
+        return findPending(n -> n.getId().equals(nodeId));
+    }
+
+    /**
+     * ASYNC : enfant (parent, choix) pas encore écrit en base.
+     */
+    public Optional<StoryNode> pendingChild(UUID parentNodeId, String choiceId) {
+        return findPending(n -> parentNodeId.equals(n.getParentNodeId()) && choiceId.equalsIgnoreCase(n.getChoiceId()));
+    }
+
+    public List<StoryNode> pendingChildren(UUID parentNodeId) {
+        List<StoryNode> children = new ArrayList<>();
+        for (StoryNode n : pendingNodes) {
+            if (parentNodeId.equals(n.getParentNodeId())) children.add(n);
+        }
+        for (StoryNode n : flushing.nodes()) {
+            if (parentNodeId.equals(n.getParentNodeId())) children.add(n);
+        }
+        return children;
+    }
+
+    /**
+     * ASYNC : noeuds d'une session pas encore écrits en base (ou en cours d'écriture).
+     */
+    public List<StoryNode> pendingNodesOf(UUID sessionId) {
+        List<StoryNode> nodes = new ArrayList<>();
+        for (StoryNode n : flushing.nodes()) {
+            if (sessionId.equals(n.getSessionId())) nodes.add(n);
+        }
+        for (StoryNode n : pendingNodes) {
+            if (sessionId.equals(n.getSessionId())) nodes.add(n);
+        }
+        return nodes;
+    }
+
+    private Optional<StoryNode> findPending(Predicate<StoryNode> match) {
+        for (StoryNode n : pendingNodes) {
+            if (match.test(n)) return Optional.of(n);
+        }
+        for (StoryNode n : flushing.nodes()) {
+            if (match.test(n)) return Optional.of(n);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Écrit tout ce qui est en attente (ex: avant une suppression de noeuds en base).
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            Batch batch = drain();
+            if (batch.size() == 0) return;
+
+            try {
+                Timer.Sample sample = Timer.start(meterRegistry);
+                writeBatch(batch);
+                sample.stop(meterRegistry.timer("story.persistence.flush", "mode", "async"));
+                meterRegistry.counter("story.persistence.flushes", "mode", "async").increment();
+                meterRegistry.summary("story.persistence.flush.batch").record(batch.size());
+                failedFlushes = 0;
+            } catch (RuntimeException e) {
+                meterRegistry.counter("story.persistence.flush.failures").increment();
+                if (unavailable(e) || ++failedFlushes < props.getMaxFlushAttempts()) {
+                    requeue(batch);
+                    throw e;
+                }
+                // même lot refusé maxFlushAttempts fois : on cherche la ou les lignes en cause
+                log.warn("Write-behind batch of {} failed {} times, isolating rejected rows", batch.size(), failedFlushes, e);
+                failedFlushes = 0;
+                isolate(batch, e);
+            } finally {
+                flushing = Batch.EMPTY;
+            }
+        }
+    }
+
+    private void writeBatch(Batch batch) {
+        tx.executeWithoutResult(status -> {
+            sessionRepository.saveAll(batch.sessions().values());
+            nodeRepository.saveAll(batch.nodes());
+        });
+    }
+
+    /**
+     * Bisection d'un lot refusé : chaque moitié est écrite dans sa propre transaction ; une ligne refusée seule
+     * est abandonnée. Base injoignable en cours de route : la moitié est remise en attente telle quelle.
+     */
+    private void isolate(Batch rejected, RuntimeException failure) {
+        if (rejected.size() == 1) {
+            drop(rejected, failure);
+            return;
+        }
+        for (Batch half : rejected.split()) {
+            try {
+                writeBatch(half);
+            } catch (RuntimeException e) {
+                if (unavailable(e)) requeue(half);
+                else isolate(half, e);
+            }
+        }
+    }
+
+    // on remet en attente sans écraser un état plus récent arrivé entre-temps
+    private void requeue(Batch batch) {
+        batch.sessions().forEach(dirtySessions::putIfAbsent);
+        pendingNodes.addAll(batch.nodes());
+    }
+
+    // ❌ dead-letter : la ligne est journalisée (assez pour la rejouer à la main) puis abandonnée
+    private void drop(Batch batch, RuntimeException e) {
+        batch.sessions().values().forEach(s -> {
+            log.error("Write-behind dropped session {} (segment {}): {}", s.getId(), s.getCurrentSegmentIndex(), e.toString());
+            meterRegistry.counter("story.persistence.dropped", "type", "session").increment();
+        });
+        batch.nodes().forEach(n -> {
+            log.error("Write-behind dropped node {} of session {} (parent {}, choice {}, segment {}): {}",
+                    n.getId(), n.getSessionId(), n.getParentNodeId(), n.getChoiceId(), n.getSegmentIndex(), e.toString());
+            meterRegistry.counter("story.persistence.dropped", "type", "node").increment();
+        });
+    }
+
+    /**
+     * Échec qui ne dit rien des lignes (base ou pool indisponible) : jamais de bisection ni d'abandon.
+     */
+    private static boolean unavailable(RuntimeException e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof CannotCreateTransactionException;
+    }
+
+    /**
+     * Supprime une session et ses noeuds (en attente compris) en une transaction.
+     */
+    public void delete(UUID sessionId) {
+        synchronized (flushLock) {
+            dirtySessions.remove(sessionId);
+            pendingNodes.removeIf(n -> n.getSessionId().equals(sessionId));
+            tx.executeWithoutResult(status -> {
+                nodeRepository.deleteAllOfSession(sessionId);
+                sessionRepository.deleteById(sessionId);
+            });
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            // ne jamais tuer la tâche planifiée : le lot est retenté au prochain passage
+            log.warn("Write-behind flush failed, will retry", e);
+        }
+    }
+
+    private StorySession writeNow(StorySession session, StoryNode node) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        StorySession saved = tx.execute(status -> {
+            StorySession s = sessionRepository.save(session);
+            if (node != null) {
+                // 1er noeud d'une nouvelle session : son id vient de l'insert ci-dessus
+                if (node.getSessionId() == null) node.setSessionId(s.getId());
+                nodeRepository.save(node);
+            }
+            return s;
+        });
+        sample.stop(meterRegistry.timer("story.persistence.flush", "mode", "sync"));
+        meterRegistry.counter("story.persistence.flushes", "mode", "sync").increment();
+        meterRegistry.counter("story.persistence.writes", "mode", "sync").increment();
+        return saved;
+    }
+
+    /**
+     * Publie le lot dans "flushing" avant de le retirer des files : jamais invisible en lecture.
+     * Seul le flush (sous flushLock) retire des files, les producteurs ne font qu'ajouter.
+     */
+    private Batch drain() {
+        Map<UUID, StorySession> sessions = new LinkedHashMap<>(dirtySessions);
+        List<StoryNode> nodes = new ArrayList<>(pendingNodes);
+        if (sessions.isEmpty() && nodes.isEmpty()) return Batch.EMPTY;
+
+        Batch batch = new Batch(sessions, nodes);
+        flushing = batch;
+
+        sessions.forEach(dirtySessions::remove);
+        for (int i = 0; i < nodes.size(); i++) pendingNodes.poll();
+        return batch;
+    }
+
+    static StorySession copyOf(StorySession session) {
+        StorySession copy = new StorySession();
+        BeanUtils.copyProperties(session, copy);
+        return copy;
+    }
+}
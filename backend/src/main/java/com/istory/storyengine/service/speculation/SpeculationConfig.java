@@ -0,0 +1,39 @@
+package com.istory.storyengine.service.speculation;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+@EnableConfigurationProperties(SpeculationProperties.class)
+@RequiredArgsConstructor
+public class SpeculationConfig {
+
+    private final SpeculationProperties props;
+
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService speculationExecutor() {
+        int threads = Math.max(1, props.getMaxConcurrent());
+        AtomicInteger counter = new AtomicInteger();
+
+        // ✅ file bornée + AbortPolicy : sous charge on renonce à spéculer plutôt que d'empiler
+        return new ThreadPoolExecutor(
+                threads, threads,
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, props.getQueueCapacity())),
+                r -> {
+                    Thread t = new Thread(r, "speculation-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+}
@@ -0,0 +1,32 @@
+package com.istory.storyengine.service.speculation;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "story.speculation")
+public class SpeculationProperties {
+
+    // Pré-génère les 4 suites possibles dès qu'un segment à choix est servi
+    private boolean enabled = true;
+
+    // Générations spéculatives simultanées (tous sessions confondues)
+    private int maxConcurrent = 8;
+
+    // Au-delà, les nouvelles spéculations sont ignorées (pas de file infinie)
+    private int queueCapacity = 64;
+
+    // Budget de tokens dépensables en spéculation par minute glissante
+    private long tokenBudgetPerMinute = 200_000;
+
+    // Estimation a priori d'une génération (réservée avant de lancer le lot)
+    private long estimatedTokensPerSegment = 2_500;
+
+    // Attente max d'une suite en cours de génération au choose() (verrou de session tenu) ; au-delà, génération live
+    private Duration maxTakeWait = Duration.ofSeconds(15);
+
+    // Lot non consommé (session abandonnée) au-delà duquel on le jette
+    private Duration batchTtl = Duration.ofMinutes(30);
+}
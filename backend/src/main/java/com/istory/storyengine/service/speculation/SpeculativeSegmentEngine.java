@@ -0,0 +1,283 @@
+package com.istory.storyengine.service.speculation;
+
+import com.istory.storyengine.model.Choice;
+import com.istory.storyengine.model.StorySegment;
+import com.istory.storyengine.model.StorySession;
+import com.istory.storyengine.service.GeneratedSegment;
+import com.istory.storyengine.service.SegmentGenerator;
+import com.istory.storyengine.service.prompt.PromptUser;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Génération spéculative : dès qu'un segment à 4 choix est servi, on pré-génère en arrière-plan
+ * la suite de chaque choix (y compris le segment de fin pour les 2 choix amoraux).
+ * Au choose(), on sert la suite correspondante et on abandonne les autres.
+ */
+@Service
+@RequiredArgsConstructor
+public class SpeculativeSegmentEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(SpeculativeSegmentEngine.class);
+
+    private final SegmentGenerator generator;
+    private final SpeculationProperties props;
+    private final ExecutorService speculationExecutor;
+    private final MeterRegistry meterRegistry;
+
+    // sessionId -> lot de spéculations pour le segment courant
+    private final ConcurrentMap<UUID, Batch> batches = new ConcurrentHashMap<>();
+
+    private final TokenWindow tokenWindow = new TokenWindow();
+
+    @PostConstruct
+    void registerGauges() {
+        meterRegistry.gaugeMapSize("story.speculation.pending.sessions", Tags.empty(), batches);
+    }
+
+    /**
+     * Lance la pré-génération des suites du segment courant de la session.
+     *
+     * @param excludedChoiceIds choix qui ne peuvent pas être joués (ex: grisé après rewind)
+     */
+    public void speculate(StorySession session, StorySegment segment, Collection<String> excludedChoiceIds) {
+        if (!props.isEnabled() || segment.isEnded()) return;
+        if (segment.getChoices() == null || segment.getChoices().isEmpty()) return;
+
+        evictStale();
+
+        Set<String> excluded = new HashSet<>();
+        for (String id : excludedChoiceIds) excluded.add(key(id));
+
+        List<Choice> candidates = segment.getChoices().stream()
+                .filter(c -> c.getId() != null && !c.getId().isBlank())
+                .filter(c -> !excluded.contains(key(c.getId())))
+                .toList();
+        if (candidates.isEmpty()) return;
+
+        // ✅ réservé dès l'admission : une rafale de lots ne peut pas dépasser le budget avant que les
+        // premières générations aient rendu leur usage réel
+        List<TokenWindow.Reservation> reservations = tokenWindow.tryReserve(
+                candidates.size(), props.getEstimatedTokensPerSegment(), props.getTokenBudgetPerMinute());
+        if (reservations.isEmpty()) {
+            meterRegistry.counter("story.speculation.skipped", "reason", "budget").increment();
+            discard(batches.remove(session.getId()), null);
+            return;
+        }
+
+        int segmentIndex = session.getCurrentSegmentIndex();
+        Map<String, Speculation> speculations = new LinkedHashMap<>();
+
+        for (int i = 0; i < candidates.size(); i++) {
+            Choice c = candidates.get(i);
+            TokenWindow.Reservation reservation = reservations.get(i);
+            boolean moral = isMoral(segment, c.getId());
+
+            // ✅ même projection d'état que choose() : index+1, compteur amoral, failureImminent si amoral
+            PromptUser promptUser = generator.promptFor(
+                    session,
+                    segmentIndex + 1,
+                    session.getImmoralChoicesCount() + (moral ? 0 : 1),
+                    SegmentGenerator.choiceSummary(moral, c),
+                    !moral
+            );
+
+            AtomicBoolean started = new AtomicBoolean();
+            try {
+                Future<GeneratedSegment> future = speculationExecutor.submit(() -> {
+                    started.set(true);
+                    try {
+                        GeneratedSegment generated = generator.generate(promptUser);
+                        // réservation remplacée par l'usage réel
+                        reservation.settle(generated.tokensUsed());
+                        meterRegistry.counter("story.speculation.tokens", "usage", "generated").increment(generated.tokensUsed());
+                        return generated;
+                    } finally {
+                        // échec ou interruption : rien de facturable connu, réservation rendue
+                        reservation.settle(0);
+                    }
+                });
+                speculations.put(key(c.getId()), new Speculation(future, started, reservation));
+            } catch (RejectedExecutionException e) {
+                reservation.settle(0);
+                meterRegistry.counter("story.speculation.skipped", "reason", "saturated").increment();
+            }
+        }
+
+        Batch previous = batches.put(session.getId(), new Batch(segmentIndex, speculations, Instant.now()));
+        discard(previous, null);
+    }
+
+    /**
+     * Récupère la suite pré-générée pour (session, segment, choix) et abandonne toutes les autres.
+     * ⚠️ Appelé sous le verrou de session :
+     * - encore en file (pas démarrée) : annulée, la génération live n'aurait aucun retard sur elle ;
+     * - en cours : attendue au plus maxTakeWait (elle a de l'avance sur un appel neuf), puis abandonnée.
+     */
+    public Optional<GeneratedSegment> take(UUID sessionId, int segmentIndex, String choiceId) {
+        Batch batch = batches.remove(sessionId);
+
+        Speculation match = null;
+        if (batch != null && batch.segmentIndex() == segmentIndex && choiceId != null) {
+            match = batch.speculations().get(key(choiceId));
+        }
+        discard(batch, match);
+
+        if (match == null) {
+            meterRegistry.counter("story.speculation.requests", "result", "miss").increment();
+            return Optional.empty();
+        }
+
+        if (!match.started().get() && cancel(match)) {
+            meterRegistry.counter("story.speculation.requests", "result", "queued").increment();
+            return Optional.empty();
+        }
+
+        long start = System.nanoTime();
+        try {
+            GeneratedSegment generated = match.future().get(props.getMaxTakeWait().toMillis(), TimeUnit.MILLISECONDS);
+            meterRegistry.counter("story.speculation.requests", "result", "hit").increment();
+            meterRegistry.counter("story.speculation.tokens", "usage", "served").increment(generated.tokensUsed());
+            meterRegistry.timer("story.speculation.wait").record(Duration.ofNanos(System.nanoTime() - start));
+            return Optional.of(generated);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException e) {
+            cancel(match);
+            meterRegistry.counter("story.speculation.requests", "result", "timeout").increment();
+            return Optional.empty();
+        } catch (ExecutionException | CancellationException e) {
+            log.warn("Speculative generation failed for session={} index={} choice={}: {}",
+                    sessionId, segmentIndex, choiceId, e.toString());
+        }
+
+        meterRegistry.counter("story.speculation.requests", "result", "miss").increment();
+        return Optional.empty();
+    }
+
+    /**
+     * Abandonne toute spéculation en cours pour la session (ex: rewind).
+     */
+    public void forget(UUID sessionId) {
+        discard(batches.remove(sessionId), null);
+    }
+
+    private void discard(Batch batch, Speculation keep) {
+        if (batch == null) return;
+
+        for (Speculation s : batch.speculations().values()) {
+            if (s == keep) continue;
+
+            Future<GeneratedSegment> f = s.future();
+            if (f.isDone() && !f.isCancelled()) {
+                try {
+                    meterRegistry.counter("story.speculation.tokens", "usage", "wasted").increment(f.get().tokensUsed());
+                } catch (Exception ignored) {
+                    // génération en échec : rien à comptabiliser
+                }
+            } else {
+                cancel(s);
+            }
+        }
+    }
+
+    private boolean cancel(Speculation s) {
+        if (!s.future().cancel(true)) return false;
+        // jamais démarrée : la tâche ne rendra pas sa réservation elle-même
+        s.reservation().settle(0);
+        meterRegistry.counter("story.speculation.cancelled").increment();
+        return true;
+    }
+
+    private void evictStale() {
+        Instant limit = Instant.now().minus(props.getBatchTtl());
+        batches.entrySet().removeIf(e -> {
+            if (e.getValue().createdAt().isAfter(limit)) return false;
+            discard(e.getValue(), null);
+            return true;
+        });
+    }
+
+    private boolean isMoral(StorySegment segment, String choiceId) {
+        return segment.getMoralChoiceIds() != null
+                && segment.getMoralChoiceIds().stream().anyMatch(id -> id.equalsIgnoreCase(choiceId));
+    }
+
+    private static String key(String choiceId) {
+        return choiceId == null ? "" : choiceId.trim().toUpperCase();
+    }
+
+    private record Batch(int segmentIndex, Map<String, Speculation> speculations, Instant createdAt) {}
+
+    private record Speculation(Future<GeneratedSegment> future, AtomicBoolean started, TokenWindow.Reservation reservation) {}
+
+    /**
+     * Fenêtre d'une minute des tokens engagés en spéculation : réservés à l'admission (estimation),
+     * puis remplacés par l'usage réel, ou rendus en cas d'échec / annulation.
+     */
+    private static final class TokenWindow {
+        private long windowStartMillis = System.currentTimeMillis();
+        // incrémenté à chaque nouvelle fenêtre : une réservation d'une fenêtre passée n'y est plus comptée
+        private long epoch;
+        private long tokens;
+
+        /**
+         * @return une réservation par génération, ou vide si le lot dépasserait le budget
+         */
+        synchronized List<Reservation> tryReserve(int count, long perSegment, long budget) {
+            roll();
+            if (tokens + count * perSegment > budget) return List.of();
+            tokens += count * perSegment;
+
+            List<Reservation> reservations = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) reservations.add(new Reservation(perSegment, epoch));
+            return reservations;
+        }
+
+        private synchronized void reconcile(long reservedEpoch, long estimate, long actual) {
+            roll();
+            if (reservedEpoch == epoch) {
+                tokens = Math.max(0, tokens - estimate + actual);
+            }
+        }
+
+        private void roll() {
+            long now = System.currentTimeMillis();
+            if (now - windowStartMillis >= 60_000) {
+                windowStartMillis = now;
+                epoch++;
+                tokens = 0;
+            }
+        }
+
+        /**
+         * Part d'une génération dans la réservation du lot ; réglée une seule fois.
+         */
+        final class Reservation {
+            private final long estimate;
+            private final long reservedEpoch;
+            private final AtomicBoolean settled = new AtomicBoolean();
+
+            private Reservation(long estimate, long reservedEpoch) {
+                this.estimate = estimate;
+                this.reservedEpoch = reservedEpoch;
+            }
+
+            void settle(long actual) {
+                if (settled.compareAndSet(false, true)) reconcile(reservedEpoch, estimate, actual);
+            }
+        }
+    }
+}
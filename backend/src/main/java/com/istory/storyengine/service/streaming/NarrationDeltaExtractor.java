@@ -0,0 +1,72 @@
+package com.istory.storyengine.service.streaming;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extrait incrémentalement la valeur du champ "narration" d'un JSON reçu par morceaux.
+ * <p>
+ * Chaque appel à feed() renvoie le texte de narration nouvellement décodé (échappements JSON résolus),
+ * éventuellement vide. Une séquence d'échappement coupée entre deux morceaux est conservée jusqu'au suivant.
+ */
+public class NarrationDeltaExtractor {
+
+    private static final Pattern NARRATION_START = Pattern.compile("\"narration\"\\s*:\\s*\"");
+
+    private final StringBuilder buffer = new StringBuilder();
+    private int pos = -1;          // position de lecture dans la valeur, -1 tant que la clé n'est pas trouvée
+    private boolean done = false;  // guillemet fermant atteint
+
+    public String feed(String chunk) {
+        if (done || chunk == null || chunk.isEmpty()) return "";
+        buffer.append(chunk);
+
+        if (pos < 0) {
+            Matcher m = NARRATION_START.matcher(buffer);
+            if (!m.find()) return "";
+            pos = m.end();
+        }
+
+        StringBuilder out = new StringBuilder();
+        while (pos < buffer.length()) {
+            char c = buffer.charAt(pos);
+
+            if (c == '"') {
+                done = true;
+                break;
+            }
+
+            if (c != '\\') {
+                out.append(c);
+                pos++;
+                continue;
+            }
+
+            // échappement : attend la suite si elle n'est pas encore arrivée
+            if (pos + 1 >= buffer.length()) break;
+            char e = buffer.charAt(pos + 1);
+
+            if (e == 'u') {
+                if (pos + 6 > buffer.length()) break;
+                out.append((char) Integer.parseInt(buffer.substring(pos + 2, pos + 6), 16));
+                pos += 6;
+                continue;
+            }
+
+            out.append(switch (e) {
+                case 'n' -> '\n';
+                case 't' -> '\t';
+                case 'r' -> '\r';
+                case 'b' -> '\b';
+                case 'f' -> '\f';
+                default -> e; // \" \\ \/
+            });
+            pos += 2;
+        }
+        return out.toString();
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+}
@@ -0,0 +1,23 @@
+package com.istory.storyengine.service.streaming;
+
+/**
+ * Reçoit la narration au fil de la génération (mode SSE).
+ */
+public interface SegmentStreamListener {
+
+    /**
+     * Aucun streaming : la génération reste en appel bloquant classique.
+     */
+    SegmentStreamListener NONE = delta -> {};
+
+    /**
+     * Nouveau morceau de narration (texte déjà décodé, sans échappements JSON).
+     */
+    void onNarrationDelta(String delta);
+
+    /**
+     * La tentative en cours est abandonnée (ex: l'IA n'a pas terminé l'histoire alors qu'elle le devait) :
+     * la narration déjà reçue doit être effacée, une nouvelle arrive.
+     */
+    default void onRestart() {}
+}
@@ -0,0 +1,80 @@
+package com.istory.storyengine.service.tts;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Clip audio synthétisé, adressé par contenu (key = empreinte de la requête TTS).
+ * data : tableau du heap (tier chaud) ou fichier projeté en mémoire (tier disque), en lecture seule.
+ */
+public record AudioClip(String key, ByteBuffer data) implements AudioStream {
+
+    public static final AudioClip EMPTY = new AudioClip("", ByteBuffer.allocate(0).asReadOnlyBuffer());
+
+    public static AudioClip of(String key, byte[] bytes) {
+        return new AudioClip(key, ByteBuffer.wrap(bytes).asReadOnlyBuffer());
+    }
+
+    public int size() {
+        return data.remaining();
+    }
+
+    @Override
+    public long contentLength() {
+        return size();
+    }
+
+    /**
+     * Écrit le clip dans la réponse sans en faire de copie intermédiaire sur le heap
+     * (chaque appel travaille sur sa propre vue du buffer : plusieurs réponses en parallèle).
+     */
+    @Override
+    public String mode() {
+        return "cached";
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        ByteBuffer view = data.duplicate();
+        WritableByteChannel channel = Channels.newChannel(out);
+        while (view.hasRemaining()) channel.write(view);
+        out.flush();
+    }
+
+    /**
+     * Vue sur une plage d'octets (requête Range), sans copie.
+     */
+    public AudioClip slice(long start, long length) {
+        return new AudioClip(key, data.slice(data.position() + (int) start, (int) length));
+    }
+
+    /**
+     * ETag fort : empreinte des octets eux-mêmes (un clip resynthétisé après éviction peut différer
+     * de l'ancien pour une même clé ; l'ETag, lui, change alors).
+     * ⚠️ Lit tout le clip : calculé une fois à l'écriture, puis servi par TtsAudioCache.etag(key).
+     */
+    public String etag() {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update(data.duplicate());
+            return "\"" + HexFormat.of().formatHex(sha.digest(), 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Copie complète (tests, consommateurs qui ont besoin d'un byte[]).
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[size()];
+        data.duplicate().get(bytes);
+        return bytes;
+    }
+}
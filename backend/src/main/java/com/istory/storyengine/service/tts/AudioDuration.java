@@ -0,0 +1,129 @@
+package com.istory.storyengine.service.tts;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.OptionalDouble;
+
+/**
+ * Durée de parole d'un clip lue dans ses en-têtes, sans décoder l'audio :
+ * - mp3 : somme des trames MPEG Layer III (après un éventuel tag ID3v2) ;
+ * - aac : somme des trames ADTS (1024 échantillons par bloc) ;
+ * - opus : granule position de la dernière page Ogg, moins le pre-skip de l'en-tête OpusHead (48 kHz).
+ * Sert aux métriques (octets par seconde de parole) : en cas de doute, pas de valeur plutôt qu'une fausse.
+ */
+public final class AudioDuration {
+
+    private static final int[] MPEG1_L3_KBPS = {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320};
+    private static final int[] MPEG2_L3_KBPS = {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160};
+    private static final int[] MPEG1_RATES = {44100, 48000, 32000};
+
+    private static final int[] ADTS_RATES = {96000, 88200, 64000, 48000, 44100, 32000, 24000, 22050, 16000, 12000, 11025, 8000, 7350};
+
+    private static final int OPUS_RATE = 48000;
+
+    private AudioDuration() {
+    }
+
+    /**
+     * @return durée en secondes, vide si le clip n'est pas reconnu
+     */
+    public static OptionalDouble seconds(AudioFormat format, ByteBuffer clip) {
+        ByteBuffer data = clip.duplicate();
+        double seconds = switch (format) {
+            case MP3 -> mp3(data);
+            case AAC -> adts(data);
+            case OPUS -> oggOpus(data);
+        };
+        return seconds > 0 ? OptionalDouble.of(seconds) : OptionalDouble.empty();
+    }
+
+    private static double mp3(ByteBuffer b) {
+        int pos = b.position();
+        int end = b.limit();
+
+        // ID3v2 : taille "syncsafe" (7 bits par octet)
+        if (end - pos >= 10 && b.get(pos) == 'I' && b.get(pos + 1) == 'D' && b.get(pos + 2) == '3') {
+            int size = (b.get(pos + 6) & 0x7f) << 21 | (b.get(pos + 7) & 0x7f) << 14
+                    | (b.get(pos + 8) & 0x7f) << 7 | (b.get(pos + 9) & 0x7f);
+            boolean footer = (b.get(pos + 5) & 0x10) != 0;
+            pos += 10 + size + (footer ? 10 : 0);
+        }
+
+        double seconds = 0;
+        while (pos + 4 <= end) {
+            int h = b.getInt(pos);
+            if ((h >>> 21) != 0x7ff) break;
+
+            int version = (h >>> 19) & 0x3;      // 0 = 2.5, 2 = 2, 3 = 1
+            int layer = (h >>> 17) & 0x3;        // 1 = Layer III
+            int bitrateIdx = (h >>> 12) & 0xf;
+            int rateIdx = (h >>> 10) & 0x3;
+            int padding = (h >>> 9) & 0x1;
+            if (version == 1 || layer != 1 || bitrateIdx == 0 || bitrateIdx == 15 || rateIdx == 3) break;
+
+            boolean mpeg1 = version == 3;
+            int sampleRate = MPEG1_RATES[rateIdx] >> (mpeg1 ? 0 : version == 2 ? 1 : 2);
+            int kbps = (mpeg1 ? MPEG1_L3_KBPS : MPEG2_L3_KBPS)[bitrateIdx];
+            int samples = mpeg1 ? 1152 : 576;
+
+            int frameLength = samples / 8 * kbps * 1000 / sampleRate + padding;
+            if (frameLength <= 4) break;
+
+            seconds += (double) samples / sampleRate;
+            pos += frameLength;
+        }
+        return seconds;
+    }
+
+    private static double adts(ByteBuffer b) {
+        int pos = b.position();
+        int end = b.limit();
+
+        double seconds = 0;
+        while (pos + 7 <= end) {
+            if ((b.get(pos) & 0xff) != 0xff || (b.get(pos + 1) & 0xf0) != 0xf0) break;
+
+            int rateIdx = (b.get(pos + 2) >>> 2) & 0xf;
+            if (rateIdx >= ADTS_RATES.length) break;
+
+            int frameLength = (b.get(pos + 3) & 0x3) << 11 | (b.get(pos + 4) & 0xff) << 3 | (b.get(pos + 5) & 0xe0) >>> 5;
+            int blocks = (b.get(pos + 6) & 0x3) + 1;
+            if (frameLength < 7) break;
+
+            seconds += blocks * 1024.0 / ADTS_RATES[rateIdx];
+            pos += frameLength;
+        }
+        return seconds;
+    }
+
+    private static double oggOpus(ByteBuffer b) {
+        ByteBuffer le = b.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int pos = le.position();
+        int end = le.limit();
+
+        long preSkip = -1;
+        long granule = -1;
+        while (pos + 27 <= end) {
+            if (le.getInt(pos) != 0x5367674f) break; // "OggS"
+
+            int segments = le.get(pos + 26) & 0xff;
+            int header = 27 + segments;
+            if (pos + header > end) break;
+
+            int payload = 0;
+            for (int i = 0; i < segments; i++) payload += le.get(pos + 27 + i) & 0xff;
+
+            if (preSkip < 0) {
+                // 1re page : OpusHead, pre-skip à l'octet 10 (16 bits LE)
+                int head = pos + header;
+                if (payload < 19 || head + 12 > end || le.getLong(head) != 0x646165487375704fL) return 0; // "OpusHead"
+                preSkip = le.getShort(head + 10) & 0xffff;
+            }
+
+            long g = le.getLong(pos + 6);
+            if (g != -1) granule = g;
+            pos += header + payload;
+        }
+        return granule > preSkip && preSkip >= 0 ? (double) (granule - preSkip) / OPUS_RATE : 0;
+    }
+}
@@ -0,0 +1,92 @@
+package com.istory.storyengine.service.tts;
+
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Formats demandés à /audio/speech (response_format). Opus et AAC sont bien plus compacts que le mp3
+ * à qualité de voix égale : c'est la taille du clip qui fait la latence sur un téléphone en données mobiles.
+ */
+public enum AudioFormat {
+
+    MP3("mp3", MediaType.valueOf("audio/mpeg")),
+    // Opus dans un conteneur Ogg (ce que renvoie le fournisseur)
+    OPUS("opus", MediaType.valueOf("audio/ogg")),
+    // AAC en trames ADTS
+    AAC("aac", MediaType.valueOf("audio/aac"));
+
+    private final String responseFormat;
+    private final MediaType mediaType;
+
+    AudioFormat(String responseFormat, MediaType mediaType) {
+        this.responseFormat = responseFormat;
+        this.mediaType = mediaType;
+    }
+
+    public String responseFormat() {
+        return responseFormat;
+    }
+
+    public MediaType mediaType() {
+        return mediaType;
+    }
+
+    public static AudioFormat fromResponseFormat(String value) {
+        for (AudioFormat f : values()) {
+            if (f.responseFormat.equalsIgnoreCase(value)) return f;
+        }
+        throw new IllegalStateException("Unsupported audio format: " + value);
+    }
+
+    /**
+     * Format reconnu aux premiers octets du clip (GET d'un clip dont la requête n'est plus connue).
+     */
+    public static Optional<AudioFormat> sniff(ByteBuffer clip) {
+        if (clip.remaining() < 4) return Optional.empty();
+        int p = clip.position();
+        int b0 = clip.get(p) & 0xff;
+        int b1 = clip.get(p + 1) & 0xff;
+
+        if (b0 == 'O' && b1 == 'g' && clip.get(p + 2) == 'g' && clip.get(p + 3) == 'S') return Optional.of(OPUS);
+        if (b0 == 'I' && b1 == 'D' && clip.get(p + 2) == '3') return Optional.of(MP3);
+        if (b0 == 0xff && (b1 & 0xf0) == 0xf0) {
+            // même mot de synchro : ADTS a une couche 00, mp3 Layer III 01
+            return Optional.of((b1 & 0x06) == 0 ? AAC : MP3);
+        }
+        if (b0 == 0xff && (b1 & 0xe0) == 0xe0) return Optional.of(MP3); // MPEG 2.5
+        return Optional.empty();
+    }
+
+    /**
+     * Paramètre explicite (?format=opus) prioritaire, sinon l'en-tête Accept (par qualité décroissante),
+     * sinon mp3 (compris partout). Un Accept qui n'admet aucun format audio retombe aussi sur mp3.
+     */
+    public static AudioFormat negotiate(String format, String accept) {
+        if (format != null && !format.isBlank()) return fromResponseFormat(format.trim().toLowerCase(Locale.ROOT));
+        if (accept == null || accept.isBlank()) return MP3;
+
+        List<MediaType> accepted;
+        try {
+            accepted = new ArrayList<>(MediaType.parseMediaTypes(accept));
+        } catch (InvalidMediaTypeException e) {
+            return MP3;
+        }
+        accepted.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+
+        for (MediaType type : accepted) {
+            if (type.getQualityValue() == 0) continue;
+            // mp3 d'abord : */* et audio/* ne changent rien pour les clients existants
+            for (AudioFormat f : values()) {
+                if (type.includes(f.mediaType)) return f;
+            }
+        }
+        return MP3;
+    }
+}
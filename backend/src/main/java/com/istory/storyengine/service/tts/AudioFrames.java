@@ -0,0 +1,68 @@
+package com.istory.storyengine.service.tts;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Flux de clips audio en trames, dans l'ordre de lecture (application/vnd.istory.audio-frames) :
+ * <pre>
+ *   [int32 index][int32 longueur][longueur octets mp3]   ... une trame par ligne
+ * </pre>
+ * Entiers big-endian. Longueur -1 = clip en échec (pas d'octets) : le client passe à la suite.
+ * Une narration découpée donne plusieurs trames consécutives de même index, à lire bout à bout ;
+ * une ligne sans rien à dire n'a pas de trame.
+ * Chaque trame est envoyée dès que son clip est prêt (flush) : la lecture commence avant la fin du segment.
+ */
+public final class AudioFrames {
+
+    public static final String MEDIA_TYPE = "application/vnd.istory.audio-frames";
+
+    public static final int FAILED = -1;
+
+    private AudioFrames() {
+    }
+
+    /**
+     * Attend chaque clip dans l'ordre et l'écrit. Si le client est parti (IOException),
+     * les synthèses restantes sont annulées avant de propager l'erreur.
+     */
+    public static void write(List<AudioPart> parts, OutputStream out) throws IOException {
+        DataOutputStream frames = new DataOutputStream(out);
+        int index = 0;
+        try {
+            for (; index < parts.size(); index++) {
+                AudioClip clip = await(parts.get(index).clip());
+
+                frames.writeInt(parts.get(index).line());
+                frames.writeInt(clip == null ? FAILED : clip.size());
+                if (clip != null) clip.writeTo(frames);
+                frames.flush();
+            }
+        } catch (IOException e) {
+            cancelFrom(parts, index);
+            throw e;
+        }
+    }
+
+    private static AudioClip await(Future<AudioClip> clip) throws IOException {
+        try {
+            return clip.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for audio", e);
+        } catch (ExecutionException e) {
+            // ⚠️ une ligne ratée ne coupe pas le segment
+            return null;
+        }
+    }
+
+    private static void cancelFrom(List<AudioPart> parts, int from) {
+        for (int i = from; i < parts.size(); i++) {
+            parts.get(i).clip().cancel(true);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.istory.storyengine.service.tts;
+
+import java.util.concurrent.Future;
+
+/**
+ * Clip à venir pour une ligne d'un segment ; une narration découpée donne plusieurs parts de même ligne,
+ * à lire bout à bout.
+ *
+ * @param line index de la ligne dans l'ordre de lecture
+ */
+public record AudioPart(int line, Future<AudioClip> clip) {}
@@ -0,0 +1,110 @@
+package com.istory.storyengine.service.tts;
+
+import com.istory.storyengine.dto.TtsUtteranceRequest;
+import com.istory.storyengine.model.StorySegment;
+import com.istory.storyengine.model.StorySession;
+import com.istory.storyengine.service.openai.OpenAiTtsService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+
+/**
+ * Préchargement audio : dès qu'un segment est persisté, tout ce qu'il faut pour le lire est connu
+ * (narration, utterances normalisées, options). On synthétise ces clips en arrière-plan pendant que
+ * le client reçoit le texte ; ses appels /api/tts tombent alors dans TtsAudioCache (ou rejoignent
+ * la synthèse en cours) au lieu de partir chez le fournisseur.
+ * <p>
+ * - même résolution de voix qu'OpenAiTtsService (mêmes corps de requête, donc mêmes clés de cache) ;
+ * - budget par noeud (maxConcurrencyPerNode) ;
+ * - sous pression (trop de clips en attente, heap chargé), on renonce : le client synthétisera à la demande ;
+ * - un nouveau segment pour la session annule le préchargement du précédent.
+ */
+@Service
+@RequiredArgsConstructor
+public class AudioPrefetcher {
+
+    private final OpenAiTtsService tts;
+    private final TtsPrefetchProperties props;
+    private final TtsCacheProperties cacheProps;
+    private final MeterRegistry meterRegistry;
+
+    // sessionId -> clips du dernier segment préchargé
+    private final ConcurrentMap<UUID, List<Future<AudioClip>>> batches = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void registerGauges() {
+        meterRegistry.gauge("tts.prefetch.pending", Tags.empty(), this, AudioPrefetcher::pendingClips);
+    }
+
+    /**
+     * À appeler sous le verrou de session, une fois le noeud persisté. Ne bloque pas.
+     */
+    public void prefetch(StorySession session, StorySegment segment) {
+        // sans cache, un clip préchargé ne servirait à personne
+        if (!props.isEnabled() || !cacheProps.isEnabled()) return;
+
+        batches.values().removeIf(AudioPrefetcher::allDone);
+        cancel(batches.remove(session.getId()));
+
+        String pressure = pressure();
+        if (pressure != null) {
+            meterRegistry.counter("tts.prefetch.skipped", "reason", pressure).increment();
+            return;
+        }
+
+        List<TtsUtteranceRequest> lines = PlaybackScript.of(segment, props.getSpeed());
+        if (lines.isEmpty()) return;
+
+        List<Future<AudioClip>> clips = tts.synthesizeSegment(session, lines, props.getFormat(), props.getMaxConcurrencyPerNode()).stream()
+                .map(AudioPart::clip)
+                .toList();
+        batches.put(session.getId(), clips);
+        meterRegistry.counter("tts.prefetch.clips").increment(clips.size());
+    }
+
+    /**
+     * Abandonne le préchargement en cours pour la session (ex: rewind, expiration).
+     */
+    public void forget(UUID sessionId) {
+        cancel(batches.remove(sessionId));
+    }
+
+    private String pressure() {
+        if (pendingClips() >= props.getMaxPendingClips()) return "saturated";
+
+        Runtime rt = Runtime.getRuntime();
+        double used = (double) (rt.totalMemory() - rt.freeMemory()) / rt.maxMemory();
+        if (used > props.getMaxHeapUsage()) return "memory";
+
+        return null;
+    }
+
+    int pendingClips() {
+        int pending = 0;
+        for (List<Future<AudioClip>> clips : batches.values()) {
+            for (Future<AudioClip> f : clips) {
+                if (!f.isDone()) pending++;
+            }
+        }
+        return pending;
+    }
+
+    private void cancel(List<Future<AudioClip>> clips) {
+        if (clips == null) return;
+        for (Future<AudioClip> f : clips) {
+            if (f.cancel(true)) meterRegistry.counter("tts.prefetch.cancelled").increment();
+        }
+    }
+
+    private static boolean allDone(List<Future<AudioClip>> clips) {
+        return clips.stream().allMatch(Future::isDone);
+    }
+}
@@ -0,0 +1,22 @@
+package com.istory.storyengine.service.tts;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Audio à écrire dans une réponse : clip complet (cache) ou relais en direct du fournisseur.
+ */
+public interface AudioStream {
+
+    /**
+     * @return taille en octets, -1 si inconnue (relais : réponse en chunked)
+     */
+    long contentLength();
+
+    void writeTo(OutputStream out) throws IOException;
+
+    /**
+     * @return cached | relay | chunked (tag des métriques de latence)
+     */
+    String mode();
+}
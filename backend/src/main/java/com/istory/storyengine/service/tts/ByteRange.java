@@ -0,0 +1,55 @@
+package com.istory.storyengine.service.tts;
+
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Plage d'octets demandée par un en-tête Range (bornes incluses). Une seule plage est servie :
+ * un en-tête multi-plages ou illisible est ignoré (réponse complète, ce que permet la RFC 9110).
+ */
+public record ByteRange(long start, long end) {
+
+    public static final ByteRange UNSATISFIABLE = new ByteRange(-1, -1);
+
+    private static final Pattern SINGLE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
+    /**
+     * @return vide = servir tout le clip ; UNSATISFIABLE = 416
+     */
+    public static Optional<ByteRange> parse(String header, long length) {
+        if (header == null) return Optional.empty();
+        Matcher m = SINGLE.matcher(header.trim());
+        if (!m.matches()) return Optional.empty();
+
+        String first = m.group(1);
+        String last = m.group(2);
+        try {
+            if (first.isEmpty()) {
+                // bytes=-n : les n derniers octets
+                if (last.isEmpty()) return Optional.empty();
+                long suffix = Long.parseLong(last);
+                if (suffix == 0 || length == 0) return Optional.of(UNSATISFIABLE);
+                return Optional.of(new ByteRange(Math.max(0, length - suffix), length - 1));
+            }
+
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+            if (start >= length) return Optional.of(UNSATISFIABLE);
+            if (end < start) return Optional.empty();
+            return Optional.of(new ByteRange(start, end));
+
+        } catch (NumberFormatException e) {
+            // dépasse un long : on sert tout
+            return Optional.empty();
+        }
+    }
+
+    public long length() {
+        return end - start + 1;
+    }
+
+    public String contentRange(long total) {
+        return "bytes " + start + "-" + end + "/" + total;
+    }
+}
@@ -0,0 +1,57 @@
+package com.istory.storyengine.service.tts;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Narration découpée (NarrationSplitter) servie comme un seul mp3 : les morceaux se synthétisent en parallèle
+ * et sont écrits strictement dans l'ordre, chacun dès qu'il est prêt. Des trames mp3 de même voix et même
+ * format se concatènent sans raccord audible côté lecteur.
+ */
+public final class ChunkedAudio implements AudioStream {
+
+    private final List<Future<AudioClip>> chunks;
+
+    public ChunkedAudio(List<Future<AudioClip>> chunks) {
+        this.chunks = chunks;
+    }
+
+    @Override
+    public long contentLength() {
+        return -1;
+    }
+
+    @Override
+    public String mode() {
+        return "chunked";
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        int index = 0;
+        try {
+            for (; index < chunks.size(); index++) {
+                await(chunks.get(index)).writeTo(out);
+            }
+        } catch (IOException e) {
+            // client parti ou morceau en échec : les synthèses restantes ne serviront à personne
+            for (int i = index; i < chunks.size(); i++) chunks.get(i).cancel(true);
+            throw e;
+        }
+    }
+
+    private static AudioClip await(Future<AudioClip> chunk) throws IOException {
+        try {
+            return chunk.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for audio", e);
+        } catch (ExecutionException e) {
+            // ⚠️ réponse déjà engagée : on ne peut que la couper
+            throw new IOException("Narration chunk synthesis failed", e.getCause());
+        }
+    }
+}
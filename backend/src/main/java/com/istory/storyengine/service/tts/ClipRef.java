@@ -0,0 +1,8 @@
+package com.istory.storyengine.service.tts;
+
+/**
+ * Adresse d'un clip d'un segment (GET /api/tts/clips/{key}).
+ *
+ * @param line index de la ligne dans l'ordre de lecture (plusieurs clips par ligne si la narration est découpée)
+ */
+public record ClipRef(int line, String key, AudioFormat format) {}
@@ -0,0 +1,28 @@
+package com.istory.storyengine.service.tts;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Destination des octets d'un clip relayé (tier du cache). Rien n'est visible avant commit() ;
+ * close() sans commit() abandonne (client parti, fournisseur en erreur).
+ */
+interface ClipSink extends AutoCloseable {
+
+    ClipSink NONE = new ClipSink() {
+        @Override
+        public void write(ByteBuffer chunk) {
+        }
+
+        @Override
+        public void commit() {
+        }
+    };
+
+    void write(ByteBuffer chunk);
+
+    void commit();
+
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,39 @@
+package com.istory.storyengine.service.tts;
+
+import java.util.Arrays;
+import java.util.OptionalLong;
+
+/**
+ * Dernières latences d'un moteur (fenêtre glissante) : suit les dégradations en quelques minutes,
+ * là où un histogramme cumulé depuis le démarrage les diluerait.
+ */
+final class LatencyWindow {
+
+    private final long[] samples;
+    private int next;
+    private int count;
+
+    LatencyWindow(int size) {
+        this.samples = new long[Math.max(1, size)];
+    }
+
+    synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) count++;
+    }
+
+    /**
+     * @return le percentile demandé (en ns), ou vide tant qu'il y a moins de minSamples mesures
+     */
+    OptionalLong percentile(double p, int minSamples) {
+        long[] sorted;
+        synchronized (this) {
+            if (count == 0 || count < minSamples) return OptionalLong.empty();
+            sorted = Arrays.copyOf(samples, count);
+        }
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(Math.min(1.0, Math.max(0.0, p)) * sorted.length) - 1;
+        return OptionalLong.of(sorted[Math.max(0, rank)]);
+    }
+}
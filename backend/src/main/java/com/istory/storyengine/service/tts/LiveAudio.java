@@ -0,0 +1,94 @@
+package com.istory.storyengine.service.tts;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Relais en direct d'une réponse /audio/speech : chaque chunk reçu est écrit (et flushé) vers le client
+ * puis libéré ; le clip n'existe jamais en entier sur le heap. Le même chunk est recopié dans le cache (ClipSink).
+ * Usage unique : writeTo() ne peut être appelé qu'une fois.
+ */
+final class LiveAudio implements AudioStream {
+
+    // quelques chunks d'avance au plus (contre-pression vers Netty)
+    private static final int PREFETCH = 4;
+
+    private final Stream<DataBuffer> chunks;
+    private final Iterator<DataBuffer> remaining;
+    private final DataBuffer first;
+    private final ClipSink sink;
+
+    private LiveAudio(Stream<DataBuffer> chunks, Iterator<DataBuffer> remaining, DataBuffer first, ClipSink sink) {
+        this.chunks = chunks;
+        this.remaining = remaining;
+        this.first = first;
+        this.sink = sink;
+    }
+
+    /**
+     * S'abonne et attend le premier chunk : une erreur du fournisseur (4xx/5xx, timeout) remonte ici,
+     * avant que la réponse HTTP soit engagée.
+     */
+    static LiveAudio open(Flux<DataBuffer> upstream, ClipSink sink) {
+        // fermer le Stream annule l'abonnement ; les chunks en file sont alors libérés
+        Stream<DataBuffer> chunks = upstream
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                .toStream(PREFETCH);
+        try {
+            Iterator<DataBuffer> it = chunks.iterator();
+            if (!it.hasNext()) {
+                throw new IllegalStateException("TTS provider returned no audio");
+            }
+            return new LiveAudio(chunks, it, it.next(), sink);
+
+        } catch (RuntimeException e) {
+            chunks.close();
+            sink.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public long contentLength() {
+        return -1;
+    }
+
+    @Override
+    public String mode() {
+        return "relay";
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        WritableByteChannel channel = Channels.newChannel(out);
+
+        try (chunks; sink) {
+            DataBuffer chunk = first;
+            while (chunk != null) {
+                try (DataBuffer.ByteBufferIterator buffers = chunk.readableByteBuffers()) {
+                    while (buffers.hasNext()) {
+                        ByteBuffer buffer = buffers.next();
+                        sink.write(buffer.duplicate());
+                        while (buffer.hasRemaining()) channel.write(buffer);
+                    }
+                } finally {
+                    DataBufferUtils.release(chunk);
+                }
+                out.flush();
+
+                chunk = remaining.hasNext() ? remaining.next() : null;
+            }
+            // ✅ clip complet : visible dans le cache
+            sink.commit();
+        }
+    }
+}
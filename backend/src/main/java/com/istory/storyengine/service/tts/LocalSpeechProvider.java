@@ -0,0 +1,94 @@
+package com.istory.storyengine.service.tts;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moteur hors ligne lancé en sous-processus (ex: piper ou espeak-ng suivi d'un encodeur) : voix moins riche,
+ * mais toujours disponible. Ne sert qu'en secours ; ses clips ne sont jamais mis en cache.
+ * ⚠️ La sortie est vérifiée contre response_format : un moteur mal configuré échoue (le hedge garde le
+ * principal) au lieu de servir des octets sous le mauvais Content-Type.
+ */
+@Component
+@RequiredArgsConstructor
+public class LocalSpeechProvider implements TtsProvider {
+
+    public static final String NAME = "local";
+
+    private final TtsProviderProperties props;
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean available() {
+        return !props.getLocal().getCommand().isEmpty();
+    }
+
+    @Override
+    public byte[] synthesize(Map<String, Object> request) {
+        String text = String.valueOf(request.get("input"));
+        String format = String.valueOf(request.getOrDefault("response_format", "mp3"));
+        AudioFormat expected = AudioFormat.fromResponseFormat(format);
+        Object speed = request.getOrDefault("speed", 1.0);
+
+        List<String> command = props.getLocal().getCommand().stream()
+                .map(arg -> arg.replace("{format}", format).replace("{speed}", String.format(Locale.ROOT, "%s", speed)))
+                .toList();
+
+        Process process;
+        try {
+            process = new ProcessBuilder(command)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to start local TTS engine", e);
+        }
+
+        // ⚠️ un moteur bloqué ne doit pas retenir le thread : tué au-delà du délai (stdout se ferme)
+        long timeoutMs = props.getLocal().getTimeout().toMillis();
+        Future<?> killer = CompletableFuture.runAsync(process::destroyForcibly,
+                CompletableFuture.delayedExecutor(timeoutMs, TimeUnit.MILLISECONDS));
+
+        try {
+            try (OutputStream stdin = process.getOutputStream()) {
+                stdin.write(text.getBytes(StandardCharsets.UTF_8));
+            }
+            byte[] audio = process.getInputStream().readAllBytes();
+
+            if (!process.waitFor(timeoutMs, TimeUnit.MILLISECONDS) || process.exitValue() != 0 || audio.length == 0) {
+                throw new IllegalStateException("Local TTS engine failed (exit=" + (process.isAlive() ? "timeout" : process.exitValue()) + ")");
+            }
+            AudioFormat actual = AudioFormat.sniff(ByteBuffer.wrap(audio)).orElse(null);
+            if (actual != expected) {
+                throw new IllegalStateException("Local TTS engine returned " + (actual == null ? "unknown audio" : actual.responseFormat())
+                        + " instead of " + expected.responseFormat());
+            }
+            return audio;
+
+        } catch (IOException e) {
+            throw new UncheckedIOException("Local TTS engine failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for local TTS engine", e);
+        } finally {
+            // ✅ sinon la tâche (et le Process qu'elle retient) reste planifiée jusqu'au délai
+            killer.cancel(false);
+            process.destroyForcibly();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.istory.storyengine.service.tts;
+
+import com.istory.storyengine.validation.StorySegmentValidator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Découpe une narration longue en morceaux synthétisables séparément, lus bout à bout :
+ * - coupe uniquement entre deux phrases ou autour d'un dialogue (jamais dans un dialogue entre guillemets,
+ *   détecté comme StorySegmentValidator) ;
+ * - premier morceau court (firstMaxChars) : il revient vite et la lecture démarre ;
+ * - morceaux suivants regroupés jusqu'à maxChars (moins d'appels, intonation plus naturelle).
+ * Un texte déjà court est rendu tel quel (même clé de cache qu'avant découpage).
+ */
+public final class NarrationSplitter {
+
+    private static final Pattern SENTENCE_END = Pattern.compile("(?<=[.!?…])\\s+");
+
+    private NarrationSplitter() {
+    }
+
+    public static List<String> split(String text, int firstMaxChars, int maxChars) {
+        if (text == null || text.isBlank()) return List.of();
+        if (text.length() <= firstMaxChars) return List.of(text);
+
+        List<String> chunks = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        int limit = firstMaxChars;
+
+        for (String unit : units(text)) {
+            if (!current.isEmpty() && current.length() + 1 + unit.length() > limit) {
+                chunks.add(current.toString());
+                current.setLength(0);
+                limit = maxChars;
+            }
+            if (!current.isEmpty()) current.append(' ');
+            current.append(unit);
+        }
+        if (!current.isEmpty()) chunks.add(current.toString());
+        return chunks;
+    }
+
+    /**
+     * Phrases et dialogues, dans l'ordre ; un dialogue reste d'un seul tenant.
+     */
+    static List<String> units(String text) {
+        List<String> units = new ArrayList<>();
+        Matcher quote = StorySegmentValidator.QUOTED_DIALOGUE.matcher(text);
+
+        int idx = 0;
+        while (quote.find()) {
+            sentences(text.substring(idx, quote.start()), units);
+            units.add(quote.group().trim());
+            idx = quote.end();
+        }
+        sentences(text.substring(idx), units);
+        return units;
+    }
+
+    private static void sentences(String text, List<String> units) {
+        for (String sentence : SENTENCE_END.split(text)) {
+            String s = sentence.trim();
+            if (!s.isEmpty()) units.add(s);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.istory.storyengine.service.tts;
+
+import com.istory.storyengine.dto.TtsUtteranceRequest;
+import com.istory.storyengine.model.Choice;
+import com.istory.storyengine.model.StorySegment;
+import com.istory.storyengine.model.Utterance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Lignes TTS qu'un client lit pour un segment, dans l'ordre de lecture.
+ * ⚠️ Miroir de story_screen.dart (_splitNarrationWithQuotes, _pickUtteranceForQuote, options) :
+ * le cache audio est adressé par contenu, une ligne qui diffère d'un caractère n'est jamais servie.
+ */
+public final class PlaybackScript {
+
+    // "..." ou « ... »
+    private static final Pattern QUOTES = Pattern.compile("(\"([^\"]+)\")|(«([^»]+)»)", Pattern.MULTILINE);
+
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+    private static final Pattern QUOTE_MARKS = Pattern.compile("[\\s«»\"“”]+");
+    private static final Pattern NOT_WORD = Pattern.compile("[^\\p{L}\\p{N}\\s]+");
+
+    private static final String[] CHOICE_COLORS = {"bleue", "verte", "orange", "violette", "turquoise", "rouge"};
+
+    private PlaybackScript() {
+    }
+
+    /**
+     * @param speed vitesse envoyée par le client (ne change le son que pour la narration)
+     */
+    public static List<TtsUtteranceRequest> of(StorySegment segment, double speed) {
+        List<TtsUtteranceRequest> lines = new ArrayList<>();
+
+        List<Utterance> queue = segment.getUtterances() == null
+                ? new ArrayList<>()
+                : new ArrayList<>(segment.getUtterances().stream().filter(u -> u != null).toList());
+
+        for (Part part : split(segment.getNarration())) {
+            if (part.quote()) {
+                Utterance u = pickUtterance(part.text(), queue);
+                lines.add(new TtsUtteranceRequest(
+                        safeSpeaker(u == null ? null : u.getSpeaker()),
+                        safeAgeGroup(u == null ? null : u.getAgeGroup()),
+                        u == null || u.getGender() == null ? "NEUTRAL" : u.getGender(),
+                        part.text(),
+                        speed));
+            } else {
+                lines.add(new TtsUtteranceRequest("NARRATOR", "ADULT", "NEUTRAL", part.text(), speed));
+            }
+        }
+
+        List<Choice> choices = segment.getChoices() == null ? List.of() : segment.getChoices();
+        for (int i = 0; i < choices.size(); i++) {
+            String text = choices.get(i).getText() == null ? "" : choices.get(i).getText().trim();
+            if (text.isEmpty()) continue;
+
+            String prefix = "L'option " + CHOICE_COLORS[i % CHOICE_COLORS.length] + ".";
+            lines.add(new TtsUtteranceRequest("CHOICE_NARRATOR", "ADULT", "NEUTRAL", prefix + " " + text, speed));
+        }
+        return lines;
+    }
+
+    record Part(boolean quote, String text) {}
+
+    static List<Part> split(String narration) {
+        String s = narration == null ? "" : narration;
+        List<Part> parts = new ArrayList<>();
+
+        int idx = 0;
+        Matcher m = QUOTES.matcher(s);
+        while (m.find()) {
+            if (m.start() > idx) parts.add(new Part(false, s.substring(idx, m.start())));
+            String quoted = m.group(2) != null ? m.group(2) : m.group(4);
+            parts.add(new Part(true, quoted.trim()));
+            idx = m.end();
+        }
+        if (idx < s.length()) parts.add(new Part(false, s.substring(idx)));
+
+        return parts.stream()
+                .map(p -> new Part(p.quote(), SPACES.matcher(p.text()).replaceAll(" ").trim()))
+                .filter(p -> !p.text().isEmpty())
+                .toList();
+    }
+
+    // exact normalisé, puis inclusion, puis FIFO
+    private static Utterance pickUtterance(String quote, List<Utterance> queue) {
+        if (queue.isEmpty()) return null;
+        String qn = normalize(quote);
+
+        for (int i = 0; i < queue.size(); i++) {
+            if (normalize(queue.get(i).getText()).equals(qn)) return queue.remove(i);
+        }
+        for (int i = 0; i < queue.size(); i++) {
+            String un = normalize(queue.get(i).getText());
+            if (un.contains(qn) || qn.contains(un)) return queue.remove(i);
+        }
+        return queue.remove(0);
+    }
+
+    private static String normalize(String s) {
+        String v = (s == null ? "" : s).toLowerCase(Locale.ROOT);
+        v = QUOTE_MARKS.matcher(v).replaceAll(" ");
+        return NOT_WORD.matcher(v).replaceAll("").trim();
+    }
+
+    private static String safeSpeaker(String s) {
+        String v = s == null ? "" : s.trim();
+        return v.isEmpty() ? "HERO" : v;
+    }
+
+    private static String safeAgeGroup(String s) {
+        String v = s == null ? "" : s.trim().toUpperCase();
+        return v.equals("ADULT") || v.equals("CHILD") ? v : "CHILD";
+    }
+}
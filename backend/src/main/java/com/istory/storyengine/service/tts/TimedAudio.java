@@ -0,0 +1,60 @@
+package com.istory.storyengine.service.tts;
+
+import io.micrometer.core.instrument.Timer;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mesure le temps jusqu'au premier octet audio écrit dans la réponse (time-to-first-audio),
+ * depuis la réception de la requête.
+ */
+public final class TimedAudio implements AudioStream {
+
+    private final AudioStream audio;
+    private final long startNanos;
+    private final Timer firstAudio;
+
+    public TimedAudio(AudioStream audio, long startNanos, Timer firstAudio) {
+        this.audio = audio;
+        this.startNanos = startNanos;
+        this.firstAudio = firstAudio;
+    }
+
+    @Override
+    public long contentLength() {
+        return audio.contentLength();
+    }
+
+    @Override
+    public String mode() {
+        return audio.mode();
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        audio.writeTo(new FilterOutputStream(out) {
+            private boolean started;
+
+            @Override
+            public void write(int b) throws IOException {
+                recordFirst();
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (len > 0) recordFirst();
+                out.write(b, off, len);
+            }
+
+            private void recordFirst() {
+                if (started) return;
+                started = true;
+                firstAudio.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            }
+        });
+    }
+}
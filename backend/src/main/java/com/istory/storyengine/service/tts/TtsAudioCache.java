@@ -0,0 +1,286 @@
+package com.istory.storyengine.service.tts;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.istory.storyengine.cache.DiskLruCache;
+import com.istory.storyengine.cache.LruCache;
+import com.istory.storyengine.concurrent.SingleFlight;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * Cache des clips TTS adressé par contenu : la sortie de /audio/speech ne dépend que de
+ * (modèle, voix, instructions, texte, vitesse, format) ; même requête = même clip, sans rappel.
+ * - tier chaud : LruCache sur le heap (peu d'entrées) ;
+ * - tier disque : DiskLruCache (budget en octets, LRU), servi par mmap sans copie sur le heap.
+ * Les synthèses identiques concurrentes (double tap, préchargement) ne partent qu'une fois.
+ * Les réponses HTTP passent par open() : relais en flux du fournisseur, sans clip complet sur le heap.
+ * <p>
+ * Métriques : tts.cache.requests{result=heap|disk|coalesced|miss}, tts.cache.bytes.served{tier},
+ * tts.upstream.calls, tts.upstream.saved, tts.upstream.first.chunk,
+ * tts.audio.bytes.per.second{format}, tts.audio.speech.seconds{format} (+ cache.* des deux tiers).
+ */
+@Component
+public class TtsAudioCache {
+
+    // à incrémenter si le format des clips ou de l'empreinte change
+    private static final String FORMAT = "v1";
+
+    private static final ObjectMapper CANONICAL = JsonMapper.builder()
+            .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+            .build();
+
+    private final TtsCacheProperties props;
+    private final MeterRegistry meterRegistry;
+
+    private final LruCache<String, AudioClip> heap;
+    private final DiskLruCache disk;
+
+    // clé -> corps /audio/speech qui l'a produite
+    private final LruCache<String, Map<String, Object>> recipes;
+
+    // clé -> ETag des octets produits (empreinte calculée une fois, à l'écriture) : un 304 n'a besoin ni
+    // du clip ni d'une resynthèse
+    private final LruCache<String, String> etags;
+
+    private final SingleFlight<String, AudioClip> inFlight = new SingleFlight<>();
+
+    public TtsAudioCache(TtsCacheProperties props, MeterRegistry meterRegistry) {
+        this.props = props;
+        this.meterRegistry = meterRegistry;
+        this.heap = new LruCache<>("tts.clips", props.getHeapMaxEntries(), props.getHeapTtl(),
+                clip -> 64 + clip.size(), meterRegistry);
+        this.disk = props.isEnabled() && props.getDisk().isEnabled()
+                ? new DiskLruCache("tts.clips.disk", Path.of(props.getDisk().getDir()),
+                        props.getDisk().getMaxSize().toBytes(), meterRegistry)
+                : null;
+        this.recipes = new LruCache<>("tts.recipes", props.getRecipeMaxEntries(), props.getRecipeTtl(),
+                request -> 512, meterRegistry);
+        this.etags = new LruCache<>("tts.etags", props.getRecipeMaxEntries(), props.getRecipeTtl(),
+                etag -> 96, meterRegistry);
+    }
+
+    /**
+     * Clé (adresse) du clip que produira cette requête ; la requête est retenue pour pouvoir le
+     * resynthétiser s'il est évincé avant d'être demandé (manifeste de clips).
+     */
+    public String register(Map<String, Object> request) {
+        String key = fingerprint(request);
+        recipes.put(key, Map.copyOf(request));
+        return key;
+    }
+
+    public Optional<Map<String, Object>> recipe(String key) {
+        return Optional.ofNullable(recipes.get(key));
+    }
+
+    /**
+     * ETag de la dernière version produite pour cette clé, sans lire ni resynthétiser le clip.
+     */
+    public Optional<String> etag(String key) {
+        return Optional.ofNullable(etags.get(key));
+    }
+
+    /**
+     * Clip déjà synthétisé (heap, disque) ou en cours de synthèse, sans jamais appeler le fournisseur.
+     */
+    public Optional<AudioClip> find(String key) {
+        if (!props.isEnabled()) return Optional.empty();
+
+        Optional<AudioClip> cached = lookup(key);
+        if (cached.isPresent()) return cached;
+
+        return inFlight.join(key).map(clip -> served(clip, "coalesced"));
+    }
+
+    /**
+     * @param request   corps /audio/speech (tout ce qui détermine le son produit)
+     * @param synthesize appel au provider, exécuté seulement si le clip n'est dans aucun tier
+     */
+    public AudioClip get(Map<String, Object> request, Supplier<byte[]> synthesize) {
+        String key = register(request);
+        String format = String.valueOf(request.get("response_format"));
+        if (!props.isEnabled()) return synthesize(key, format, synthesize);
+
+        Optional<AudioClip> cached = lookup(key);
+        if (cached.isPresent()) return cached.get();
+
+        // un appel concurrent vient peut-être de l'écrire : on relit sous single-flight
+        SingleFlight.Outcome<AudioClip> outcome = inFlight.execute(key, () -> lookup(key).orElseGet(() -> {
+            AudioClip clip = synthesize(key, format, synthesize);
+            heap.put(key, clip);
+            if (disk != null) disk.put(key, clip.data());
+            return clip;
+        }));
+
+        // synthèse identique déjà en cours : servie sans second appel
+        return outcome.shared() ? served(outcome.value(), "coalesced") : outcome.value();
+    }
+
+    /**
+     * Variante en flux pour les réponses HTTP : clip en cache servi tel quel ; sinon l'audio du fournisseur est
+     * relayé au fil de l'eau et recopié dans le cache au passage (disque si activé), sans agrégation sur le heap.
+     * Une synthèse identique déjà en cours (préchargement) est rejointe plutôt que relancée.
+     *
+     * @param upstream appel au provider en flux, exécuté seulement si le clip n'est dans aucun tier
+     */
+    public AudioStream open(Map<String, Object> request, Supplier<Flux<DataBuffer>> upstream) {
+        String key = register(request);
+        if (!props.isEnabled()) return relay(upstream, ClipSink.NONE);
+        String format = String.valueOf(request.get("response_format"));
+
+        Optional<AudioClip> cached = lookup(key);
+        if (cached.isPresent()) return cached.get();
+
+        Optional<AudioClip> joined = inFlight.join(key);
+        if (joined.isPresent()) return served(joined.get(), "coalesced");
+
+        return relay(upstream, sinkFor(key, format));
+    }
+
+    private AudioStream relay(Supplier<Flux<DataBuffer>> upstream, ClipSink sink) {
+        meterRegistry.counter("tts.cache.requests", "result", "miss").increment();
+        meterRegistry.counter("tts.upstream.calls").increment();
+
+        long start = System.nanoTime();
+        LiveAudio live = LiveAudio.open(upstream.get(), sink);
+        meterRegistry.timer("tts.upstream.first.chunk").record(Duration.ofNanos(System.nanoTime() - start));
+        return live;
+    }
+
+    /**
+     * Disque si activé (le clip remontera dans le heap à sa prochaine lecture, par mmap) ; sinon heap,
+     * seul cas où le clip relayé est aussi accumulé en mémoire.
+     */
+    private ClipSink sinkFor(String key, String format) {
+        if (disk != null) {
+            DiskLruCache.Writer writer = disk.writer(key);
+            return new ClipSink() {
+                @Override
+                public void write(ByteBuffer chunk) {
+                    writer.write(chunk);
+                }
+
+                @Override
+                public void commit() {
+                    writer.commit();
+                    disk.peek(key).ifPresent(clip -> {
+                        measure(format, clip);
+                        etags.put(key, new AudioClip(key, clip).etag());
+                    });
+                }
+
+                @Override
+                public void close() {
+                    writer.close();
+                }
+            };
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        return new ClipSink() {
+            @Override
+            public void write(ByteBuffer chunk) {
+                byte[] copy = new byte[chunk.remaining()];
+                chunk.get(copy);
+                bytes.writeBytes(copy);
+            }
+
+            @Override
+            public void commit() {
+                AudioClip clip = AudioClip.of(key, bytes.toByteArray());
+                measure(format, clip.data());
+                etags.put(key, clip.etag());
+                heap.put(key, clip);
+            }
+        };
+    }
+
+    private AudioClip synthesize(String key, String format, Supplier<byte[]> synthesize) {
+        meterRegistry.counter("tts.cache.requests", "result", "miss").increment();
+        meterRegistry.counter("tts.upstream.calls").increment();
+
+        byte[] audio = synthesize.get();
+        if (audio == null || audio.length == 0) {
+            throw new IllegalStateException("TTS provider returned no audio");
+        }
+        AudioClip clip = AudioClip.of(key, audio);
+        measure(format, clip.data());
+        etags.put(key, clip.etag());
+        return clip;
+    }
+
+    /**
+     * Octets par seconde de parole, par format : choisir le format par défaut selon le type d'appareil.
+     * Mesuré sur chaque clip produit par le fournisseur (jamais sur les clips servis du cache).
+     */
+    private void measure(String format, ByteBuffer clip) {
+        AudioFormat f;
+        try {
+            f = AudioFormat.fromResponseFormat(format);
+        } catch (IllegalStateException e) {
+            return;
+        }
+        AudioDuration.seconds(f, clip).ifPresent(seconds -> {
+            meterRegistry.summary("tts.audio.bytes.per.second", "format", f.responseFormat()).record(clip.remaining() / seconds);
+            meterRegistry.counter("tts.audio.speech.seconds", "format", f.responseFormat()).increment(seconds);
+        });
+    }
+
+    /**
+     * Chaque requête est comptée une fois : heap | disk | coalesced (servie par une synthèse concurrente) | miss.
+     */
+    private Optional<AudioClip> lookup(String key) {
+        AudioClip hot = heap.get(key);
+        if (hot != null) return Optional.of(served(hot, "heap"));
+
+        if (disk != null) {
+            Optional<AudioClip> mapped = disk.map(key).map(buf -> new AudioClip(key, buf));
+            if (mapped.isPresent()) {
+                // remonte dans le tier chaud : c'est un clip rejoué
+                heap.put(key, mapped.get());
+                // clip écrit avant un redémarrage : empreinte calculée une seule fois
+                if (etags.get(key) == null) etags.put(key, mapped.get().etag());
+                return Optional.of(served(mapped.get(), "disk"));
+            }
+        }
+        return Optional.empty();
+    }
+
+    private AudioClip served(AudioClip clip, String tier) {
+        meterRegistry.counter("tts.cache.requests", "result", tier).increment();
+        meterRegistry.counter("tts.cache.bytes.served", "tier", tier).increment(clip.size());
+        meterRegistry.counter("tts.upstream.saved").increment();
+        return clip;
+    }
+
+    /**
+     * SHA-256 (hex) du corps de requête, clés triées.
+     */
+    static String fingerprint(Map<String, Object> request) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update(FORMAT.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(sha.digest(CANONICAL.writeValueAsBytes(new TreeMap<>(request))));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Failed to fingerprint TTS request", e);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.istory.storyengine.service.tts;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "story.tts-batch")
+public class TtsBatchProperties {
+
+    // appels /audio/speech en vol pour un même segment (limite de débit côté fournisseur)
+    private int maxConcurrency = 4;
+
+    // garde-fou : lignes (narration + dialogues + options) acceptées par requête
+    private int maxItems = 64;
+}
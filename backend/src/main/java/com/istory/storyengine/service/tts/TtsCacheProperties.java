@@ -0,0 +1,37 @@
+package com.istory.storyengine.service.tts;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "story.tts-cache")
+public class TtsCacheProperties {
+
+    // Clips TTS adressés par contenu (modèle, voix, instructions, texte, vitesse, format)
+    private boolean enabled = true;
+
+    // Tier chaud sur le heap : petit, les clips du moment (segment en cours, options)
+    private int heapMaxEntries = 256;
+    private Duration heapTtl = Duration.ofMinutes(30);
+
+    // Corps de requête (et ETag) retenus par clé (GET /api/tts/clips/{key}) : un clip évincé peut être
+    // resynthétisé, un GET conditionnel reçoit 304 sans relire le clip
+    private int recipeMaxEntries = 4096;
+    private Duration recipeTtl = Duration.ofHours(24);
+
+    private Disk disk = new Disk();
+
+    @Data
+    public static class Disk {
+        // false = tier heap seul
+        private boolean enabled = true;
+
+        private String dir = "./data/tts";
+
+        // budget disque : au-delà, les clips les moins récemment servis sont supprimés (LRU)
+        private DataSize maxSize = DataSize.ofGigabytes(1);
+    }
+}
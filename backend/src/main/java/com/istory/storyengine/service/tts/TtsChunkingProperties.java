@@ -0,0 +1,21 @@
+package com.istory.storyengine.service.tts;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "story.tts-chunking")
+public class TtsChunkingProperties {
+
+    // Narration longue découpée en morceaux synthétisés en parallèle, lus dans l'ordre
+    private boolean enabled = true;
+
+    // 1er morceau : court pour que la lecture démarre vite (une phrase au moins)
+    private int firstChunkMaxChars = 120;
+
+    // morceaux suivants (phrases regroupées)
+    private int maxChunkChars = 400;
+
+    // morceaux en cours de synthèse pour une même narration (/utterance)
+    private int window = 3;
+}
@@ -0,0 +1,15 @@
+package com.istory.storyengine.service.tts;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties({
+        TtsCacheProperties.class,
+        TtsBatchProperties.class,
+        TtsPrefetchProperties.class,
+        TtsChunkingProperties.class,
+        TtsProviderProperties.class
+})
+public class TtsConfig {
+}
@@ -0,0 +1,27 @@
+package com.istory.storyengine.service.tts;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "story.tts-prefetch")
+public class TtsPrefetchProperties {
+
+    // Synthétise l'audio d'un segment dès qu'il est persisté (nécessite story.tts-cache.enabled)
+    private boolean enabled = true;
+
+    // ⚠️ doit rester égale à _speechSpeed du client : la vitesse fait partie de la clé du clip (narration)
+    private double speed = 1.15;
+
+    // format demandé par le client (le format fait partie de la clé du clip)
+    private AudioFormat format = AudioFormat.MP3;
+
+    // appels /audio/speech en vol pour un même noeud
+    private int maxConcurrencyPerNode = 2;
+
+    // pression : au-delà de ce nombre de clips préchargés en attente (toutes sessions), on ne précharge plus
+    private int maxPendingClips = 64;
+
+    // pression : heap occupé au-delà duquel on ne précharge plus (0..1)
+    private double maxHeapUsage = 0.85;
+}
@@ -0,0 +1,44 @@
+package com.istory.storyengine.service.tts;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Map;
+
+/**
+ * Moteur de synthèse vocale. La requête est le corps /audio/speech construit par OpenAiTtsService
+ * (input, voice, speed, instructions, response_format…) : chaque moteur en retient ce qu'il sait traiter.
+ */
+public interface TtsProvider {
+
+    /**
+     * Nom de configuration (story.tts-providers.primary / fallback) et tag des métriques.
+     */
+    String name();
+
+    /**
+     * false = non configuré : jamais sollicité.
+     */
+    default boolean available() {
+        return true;
+    }
+
+    /**
+     * Clip complet, au format response_format.
+     */
+    byte[] synthesize(Map<String, Object> request);
+
+    /**
+     * Clip en flux ; par défaut, le clip complet en un seul chunk.
+     */
+    default Flux<DataBuffer> stream(Map<String, Object> request) {
+        return Mono.fromCallable(() -> synthesize(request))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(DefaultDataBufferFactory.sharedInstance::wrap)
+                .flux()
+                .cast(DataBuffer.class);
+    }
+}
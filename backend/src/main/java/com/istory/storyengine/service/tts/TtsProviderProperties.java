@@ -0,0 +1,49 @@
+package com.istory.storyengine.service.tts;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@ConfigurationProperties(prefix = "story.tts-providers")
+public class TtsProviderProperties {
+
+    // Moteur principal (seul mis en cache)
+    private String primary = "openai";
+
+    // Moteur de secours, course lancée si le principal tarde ou échoue ; vide = aucun
+    private String fallback = "local";
+
+    private Hedging hedging = new Hedging();
+
+    private Local local = new Local();
+
+    @Data
+    public static class Hedging {
+        private boolean enabled = true;
+
+        // délai avant de lancer le secours = p95 de la latence du principal, borné par [minDelay, maxDelay]
+        private double percentile = 0.95;
+        private Duration minDelay = Duration.ofMillis(800);
+        private Duration maxDelay = Duration.ofSeconds(4);
+
+        // en dessous, pas de percentile fiable : maxDelay
+        private int minSamples = 20;
+
+        // latences retenues par moteur (fenêtre glissante)
+        private int window = 256;
+    }
+
+    @Data
+    public static class Local {
+        // commande du moteur hors ligne : texte sur stdin, audio sur stdout ; {format} et {speed} remplacés.
+        // vide = pas de moteur local
+        private List<String> command = new ArrayList<>();
+
+        // un moteur bloqué est tué au-delà
+        private Duration timeout = Duration.ofSeconds(10);
+    }
+}
@@ -0,0 +1,208 @@
+package com.istory.storyengine.service.tts;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Moteurs de synthèse : principal (distant) et secours (local), latences suivies par moteur.
+ * <p>
+ * Couverture (hedging) : si le principal n'a rien rendu au bout du p95 de ses latences récentes
+ * (ou s'il échoue avant), le secours est lancé en concurrence et le premier qui aboutit est servi.
+ * Le principal n'est pas annulé : il finit de remplir le cache, la prochaine lecture retrouve la bonne voix.
+ * <p>
+ * Métriques : tts.provider.latency{provider, phase} (percentiles publiés), tts.provider.failures{provider},
+ * tts.hedges{reason, winner}.
+ */
+@Component
+public class TtsProviders {
+
+    private static final Logger log = LoggerFactory.getLogger(TtsProviders.class);
+
+    // latence jusqu'au premier chunk (relais) / jusqu'au clip complet
+    public static final String FIRST_CHUNK = "first-chunk";
+    public static final String COMPLETE = "complete";
+
+    private final TtsProvider primary;
+    private final TtsProvider fallback;
+    private final TtsProviderProperties props;
+    private final MeterRegistry meterRegistry;
+
+    // provider|phase -> dernières latences
+    private final Map<String, LatencyWindow> windows = new ConcurrentHashMap<>();
+
+    // course : un virtual thread par moteur sollicité
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public TtsProviders(List<TtsProvider> providers, TtsProviderProperties props, MeterRegistry meterRegistry) {
+        this.props = props;
+        this.meterRegistry = meterRegistry;
+
+        Map<String, TtsProvider> byName = providers.stream()
+                .collect(Collectors.toMap(TtsProvider::name, Function.identity()));
+
+        // ❌ un moteur principal inconnu est une erreur de configuration : échec au démarrage
+        this.primary = Optional.ofNullable(byName.get(props.getPrimary()))
+                .orElseThrow(() -> new IllegalStateException("Unknown TTS provider: " + props.getPrimary()));
+
+        String fallbackName = props.getFallback();
+        TtsProvider candidate = (fallbackName == null || fallbackName.isBlank()) ? null : byName.get(fallbackName);
+        if (candidate != null && (!candidate.available() || candidate == primary)) candidate = null;
+        this.fallback = candidate;
+
+        log.info("TTS providers: primary={}, fallback={}", primary.name(), fallback == null ? "none" : fallback.name());
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    public TtsProvider primary() {
+        return primary;
+    }
+
+    public Optional<TtsProvider> fallback() {
+        return Optional.ofNullable(fallback);
+    }
+
+    /**
+     * Clip complet, chronométré.
+     */
+    public byte[] synthesize(TtsProvider provider, Map<String, Object> request) {
+        long start = System.nanoTime();
+        try {
+            byte[] audio = provider.synthesize(request);
+            record(provider, COMPLETE, System.nanoTime() - start);
+            return audio;
+        } catch (RuntimeException e) {
+            meterRegistry.counter("tts.provider.failures", "provider", provider.name()).increment();
+            throw e;
+        }
+    }
+
+    /**
+     * Flux chronométré jusqu'au premier chunk.
+     */
+    public Flux<DataBuffer> stream(TtsProvider provider, Map<String, Object> request) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            AtomicBoolean first = new AtomicBoolean();
+            return provider.stream(request)
+                    .doOnNext(chunk -> {
+                        if (first.compareAndSet(false, true)) record(provider, FIRST_CHUNK, System.nanoTime() - start);
+                    })
+                    .doOnError(e -> meterRegistry.counter("tts.provider.failures", "provider", provider.name()).increment());
+        });
+    }
+
+    /**
+     * Délai accordé au principal avant de lancer le secours : p95 récent, borné ; maxDelay tant que
+     * les mesures manquent.
+     */
+    public Duration hedgeDelay(String phase) {
+        TtsProviderProperties.Hedging h = props.getHedging();
+        long min = h.getMinDelay().toNanos();
+        long max = h.getMaxDelay().toNanos();
+        long p = window(primary, phase).percentile(h.getPercentile(), h.getMinSamples()).orElse(max);
+        return Duration.ofNanos(Math.min(max, Math.max(min, p)));
+    }
+
+    /**
+     * Course principal / secours.
+     *
+     * @param phase       latence de référence pour le délai (FIRST_CHUNK ou COMPLETE)
+     * @param primaryCall appel du principal (cache compris : un clip déjà connu revient avant le délai)
+     * @param fallbackCall appel du secours, qui ne doit pas écrire dans le cache (voix différente)
+     * @param primaryLost reçoit le résultat du principal arrivé après le secours (ex: flux à vider dans le cache)
+     */
+    public <T> T hedge(String phase, Supplier<T> primaryCall, Function<TtsProvider, T> fallbackCall, Consumer<T> primaryLost) {
+        if (fallback == null || !props.getHedging().isEnabled()) return primaryCall.get();
+
+        CompletableFuture<T> remote = CompletableFuture.supplyAsync(primaryCall, executor);
+
+        String reason;
+        try {
+            return remote.get(hedgeDelay(phase).toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            reason = "slow";
+        } catch (ExecutionException e) {
+            reason = "error";
+            log.debug("TTS provider {} failed, falling back to {}", primary.name(), fallback.name(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for TTS", e);
+        }
+
+        CompletableFuture<T> local = CompletableFuture.supplyAsync(() -> fallbackCall.apply(fallback), executor);
+
+        // premier succès ; échec seulement si les deux échouent
+        record Won<T>(T value, boolean primary) {}
+        CompletableFuture<Won<T>> winner = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        remote.whenComplete((value, error) -> settle(winner, failures, new Won<>(value, true), error));
+        local.whenComplete((value, error) -> settle(winner, failures, new Won<>(value, false), error));
+
+        try {
+            Won<T> won = winner.join();
+            meterRegistry.counter("tts.hedges", "reason", reason, "winner", won.primary() ? "primary" : "fallback").increment();
+            if (!won.primary()) remote.thenAccept(primaryLost);
+            return won.value();
+
+        } catch (CompletionException e) {
+            meterRegistry.counter("tts.hedges", "reason", reason, "winner", "none").increment();
+            // l'erreur du principal est la plus parlante
+            Throwable cause = remote.handle((v, error) -> error).join();
+            if (cause instanceof CompletionException && cause.getCause() != null) cause = cause.getCause();
+            if (cause instanceof RuntimeException re) throw re;
+            throw new IllegalStateException("TTS failed", cause);
+        }
+    }
+
+    private static <W> void settle(CompletableFuture<W> winner, AtomicInteger failures, W won, Throwable error) {
+        if (error == null) {
+            winner.complete(won);
+        } else if (failures.incrementAndGet() == 2) {
+            winner.completeExceptionally(error);
+        }
+    }
+
+    private void record(TtsProvider provider, String phase, long nanos) {
+        window(provider, phase).record(nanos);
+        Timer.builder("tts.provider.latency")
+                .tag("provider", provider.name())
+                .tag("phase", phase)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private LatencyWindow window(TtsProvider provider, String phase) {
+        return windows.computeIfAbsent(provider.name() + "|" + phase,
+                k -> new LatencyWindow(props.getHedging().getWindow()));
+    }
+}
@@ -0,0 +1,133 @@
+package com.istory.storyengine.validation;
+
+import com.istory.storyengine.model.Choice;
+import com.istory.storyengine.model.StorySegment;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Corrections déterministes d'un segment invalide, sans appel au modèle :
+ * - segment de fin : choices / moralChoiceIds vidés, explanation par défaut si absente
+ * - ids de choix : espaces retirés ; doublons / ids manquants renumérotés A-D
+ *   (seulement si les moralChoiceIds restent attribuables sans ambiguïté)
+ * - moralChoiceIds : casse / espaces alignés sur l'id réel du choix, doublons retirés
+ */
+@Service
+public class SegmentRepairer {
+
+    static final String DEFAULT_EXPLANATION =
+            "Ce choix était tentant sur le moment, mais il ne respectait pas les autres. " +
+                    "Un bon choix demande parfois un effort, et c'est ce qui le rend précieux.";
+
+    /**
+     * Applique les corrections possibles sur place.
+     *
+     * @return la liste des corrections effectuées (vide si rien n'a été touché)
+     */
+    public List<String> repairLocally(StorySegment segment) {
+        List<String> fixes = new ArrayList<>();
+
+        if (segment.isEnded()) {
+            if (segment.getChoices() == null || !segment.getChoices().isEmpty()) {
+                segment.setChoices(new ArrayList<>());
+                fixes.add("cleared choices of ended segment");
+            }
+            if (segment.getMoralChoiceIds() == null || !segment.getMoralChoiceIds().isEmpty()) {
+                segment.setMoralChoiceIds(new HashSet<>());
+                fixes.add("cleared moralChoiceIds of ended segment");
+            }
+            if (segment.getExplanation() == null || segment.getExplanation().isBlank()) {
+                segment.setExplanation(DEFAULT_EXPLANATION);
+                fixes.add("default explanation");
+            }
+            return fixes;
+        }
+
+        if (segment.getExplanation() == null) {
+            segment.setExplanation("");
+        }
+
+        List<Choice> choices = segment.getChoices();
+        if (choices == null || choices.isEmpty()) return fixes;
+        if (segment.getMoralChoiceIds() == null) segment.setMoralChoiceIds(new HashSet<>());
+
+        for (Choice c : choices) {
+            if (c.getId() != null && !c.getId().equals(c.getId().trim())) {
+                c.setId(c.getId().trim());
+                fixes.add("trimmed choice id " + c.getId());
+            }
+        }
+
+        if (idsBroken(choices) && !renumber(segment, choices, fixes)) {
+            return fixes; // ambigu : on laisse le modèle corriger
+        }
+
+        canonicalizeMoralIds(segment, choices, fixes);
+        return fixes;
+    }
+
+    private boolean idsBroken(List<Choice> choices) {
+        Set<String> keys = new HashSet<>();
+        for (Choice c : choices) {
+            if (c.getId() == null || c.getId().isBlank()) return true;
+            if (!keys.add(key(c.getId()))) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Renumérote A, B, C, D... en conservant quels choix sont moraux.
+     */
+    private boolean renumber(StorySegment segment, List<Choice> choices, List<String> fixes) {
+        List<Integer> moralIndexes = new ArrayList<>();
+        for (String moralId : segment.getMoralChoiceIds()) {
+            if (moralId == null || moralId.isBlank()) continue;
+            List<Integer> matches = new ArrayList<>();
+            for (int i = 0; i < choices.size(); i++) {
+                if (choices.get(i).getId() != null && key(choices.get(i).getId()).equals(key(moralId))) {
+                    matches.add(i);
+                }
+            }
+            if (matches.size() != 1) return false;
+            moralIndexes.add(matches.get(0));
+        }
+
+        for (int i = 0; i < choices.size(); i++) {
+            choices.get(i).setId(String.valueOf((char) ('A' + i)));
+        }
+
+        Set<String> moral = new HashSet<>();
+        for (int idx : moralIndexes) moral.add(choices.get(idx).getId());
+        segment.setMoralChoiceIds(moral);
+
+        fixes.add("renumbered duplicate or missing choice ids");
+        return true;
+    }
+
+    private void canonicalizeMoralIds(StorySegment segment, List<Choice> choices, List<String> fixes) {
+        Map<String, String> canonicalByKey = new HashMap<>();
+        for (Choice c : choices) canonicalByKey.put(key(c.getId()), c.getId());
+
+        Set<String> canonical = new LinkedHashSet<>();
+        boolean changed = false;
+        for (String moralId : segment.getMoralChoiceIds()) {
+            if (moralId == null || moralId.isBlank()) {
+                changed = true;
+                continue;
+            }
+            String id = canonicalByKey.getOrDefault(key(moralId), moralId);
+            if (!id.equals(moralId)) changed = true;
+            canonical.add(id);
+        }
+
+        if (changed || canonical.size() != segment.getMoralChoiceIds().size()) {
+            segment.setMoralChoiceIds(new HashSet<>(canonical));
+            fixes.add("canonicalized moralChoiceIds " + canonical);
+        }
+    }
+
+    private static String key(String id) {
+        return id.trim().toUpperCase();
+    }
+}
@@ -13,13 +13,25 @@ import java.util.stream.Collectors;
 @Service
 public class StorySegmentValidator {
 
-    // Match "...." (guillemets doubles)
-    private static final Pattern QUOTED_DIALOGUE = Pattern.compile("\"(.*?)\"", Pattern.DOTALL);
+    // Match "...." (guillemets doubles) ; partagé avec le découpage de la narration TTS
+    public static final Pattern QUOTED_DIALOGUE = Pattern.compile("\"(.*?)\"", Pattern.DOTALL);
 
     public void validate(StorySegment segment) {
+        List<String> violations = violations(segment);
+        if (!violations.isEmpty()) {
+            throw new IllegalStateException(violations.get(0));
+        }
+    }
+
+    /**
+     * Liste TOUTES les violations (au lieu de s'arrêter à la première) :
+     * sert à la réparation ciblée du segment.
+     */
+    public List<String> violations(StorySegment segment) {
+        List<String> violations = new ArrayList<>();
 
         if (segment.getNarration() == null || segment.getNarration().isBlank()) {
-            throw new IllegalStateException(
+            violations.add(
                     segment.isEnded()
                             ? "Ended segment must include a final narration"
                             : "Narration is empty"
@@ -32,7 +44,7 @@ public class StorySegmentValidator {
         }
 
         // ✅ Validation quotes ↔ utterances (pour voix différentes)
-        validateUtterancesMatchQuotes(segment);
+        validateUtterancesMatchQuotes(segment, violations);
 
         // -------------------------
         // SEGMENT DE FIN
@@ -40,59 +52,67 @@ public class StorySegmentValidator {
         if (segment.isEnded()) {
 
             if (segment.getChoices() == null || !segment.getChoices().isEmpty()) {
-                throw new IllegalStateException("Ended segment must have empty choices");
+                violations.add("Ended segment must have empty choices");
             }
 
             if (segment.getMoralChoiceIds() == null || !segment.getMoralChoiceIds().isEmpty()) {
-                throw new IllegalStateException("Ended segment must have empty moralChoiceIds");
+                violations.add("Ended segment must have empty moralChoiceIds");
             }
 
             if (segment.getExplanation() == null || segment.getExplanation().isBlank()) {
-                throw new IllegalStateException("Ended segment must include explanation");
+                violations.add("Ended segment must include explanation");
             }
 
-            return; // ✅ fin
+            return violations; // ✅ fin
         }
 
         // -------------------------
         // SEGMENT NORMAL
         // -------------------------
         if (segment.getChoices() == null || segment.getChoices().size() != 4) {
-            throw new IllegalStateException("Segment must have exactly 4 choices");
+            violations.add("Segment must have exactly 4 choices");
         }
 
         if (segment.getMoralChoiceIds() == null || segment.getMoralChoiceIds().size() != 2) {
-            throw new IllegalStateException("Segment must have exactly 2 moral choices");
+            violations.add("Segment must have exactly 2 moral choices");
         }
 
+        List<Choice> choices = segment.getChoices() == null ? List.of() : segment.getChoices();
+
         // Vérifie textes des choix + ids
-        for (Choice c : segment.getChoices()) {
+        boolean idsPresent = true;
+        for (Choice c : choices) {
             if (c.getId() == null || c.getId().isBlank()) {
-                throw new IllegalStateException("Choice id missing");
+                violations.add("Choice id missing");
+                idsPresent = false;
+                continue;
             }
             if (c.getText() == null || c.getText().isBlank()) {
-                throw new IllegalStateException("Choice text missing for id=" + c.getId());
+                violations.add("Choice text missing for id=" + c.getId());
             }
         }
 
-        // IDs uniques
-        Set<String> choiceIds = segment.getChoices().stream()
-                .map(Choice::getId)
-                .map(String::trim)
-                .map(String::toUpperCase)
-                .collect(Collectors.toSet());
+        if (idsPresent) {
+            // IDs uniques
+            Set<String> choiceIds = choices.stream()
+                    .map(Choice::getId)
+                    .map(String::trim)
+                    .map(String::toUpperCase)
+                    .collect(Collectors.toSet());
 
-        if (choiceIds.size() != 4) {
-            throw new IllegalStateException("Choice ids must be unique");
-        }
-
-        // Vérifie que les 2 moraux font partie des choix
-        for (String moralId : segment.getMoralChoiceIds()) {
-            if (moralId == null || moralId.isBlank()) {
-                throw new IllegalStateException("Moral choice id is blank");
+            if (choiceIds.size() != choices.size()) {
+                violations.add("Choice ids must be unique");
             }
-            if (!choiceIds.contains(moralId.trim().toUpperCase())) {
-                throw new IllegalStateException("Invalid moralChoiceId: " + moralId);
+
+            // Vérifie que les 2 moraux font partie des choix
+            if (segment.getMoralChoiceIds() != null) {
+                for (String moralId : segment.getMoralChoiceIds()) {
+                    if (moralId == null || moralId.isBlank()) {
+                        violations.add("Moral choice id is blank");
+                    } else if (!choiceIds.contains(moralId.trim().toUpperCase())) {
+                        violations.add("Invalid moralChoiceId: " + moralId);
+                    }
+                }
             }
         }
 
@@ -100,10 +120,12 @@ public class StorySegmentValidator {
         if (segment.getExplanation() == null) {
             segment.setExplanation("");
         }
+
+        return violations;
     }
 
-    private void validateUtterancesMatchQuotes(StorySegment segment) {
-        final String narration = segment.getNarration();
+    private void validateUtterancesMatchQuotes(StorySegment segment, List<String> violations) {
+        final String narration = segment.getNarration() == null ? "" : segment.getNarration();
         final List<Utterance> utterances = segment.getUtterances() == null ? List.of() : segment.getUtterances();
 
         final int quotedCount = countQuotedDialogues(narration);
@@ -111,12 +133,11 @@ public class StorySegmentValidator {
         // Si narration contient des dialogues "..." => utterances doit matcher exactement
         if (quotedCount > 0) {
             if (utterances.isEmpty()) {
-                throw new IllegalStateException(
+                violations.add(
                         "Narration contains " + quotedCount + " quoted dialogues but utterances is empty"
                 );
-            }
-            if (utterances.size() != quotedCount) {
-                throw new IllegalStateException(
+            } else if (utterances.size() != quotedCount) {
+                violations.add(
                         "Narration contains " + quotedCount + " quoted dialogues but utterances has " + utterances.size()
                 );
             }
@@ -126,16 +147,17 @@ public class StorySegmentValidator {
         for (int i = 0; i < utterances.size(); i++) {
             Utterance u = utterances.get(i);
             if (u == null) {
-                throw new IllegalStateException("Utterance[" + i + "] is null");
+                violations.add("Utterance[" + i + "] is null");
+                continue;
             }
             if (u.getSpeaker() == null || u.getSpeaker().isBlank()) {
-                throw new IllegalStateException("Utterance[" + i + "] speaker missing");
+                violations.add("Utterance[" + i + "] speaker missing");
             }
             if (u.getAgeGroup() == null || u.getAgeGroup().isBlank()) {
-                throw new IllegalStateException("Utterance[" + i + "] ageGroup missing (CHILD/ADULT)");
+                violations.add("Utterance[" + i + "] ageGroup missing (CHILD/ADULT)");
             }
             if (u.getText() == null || u.getText().isBlank()) {
-                throw new IllegalStateException("Utterance[" + i + "] text missing");
+                violations.add("Utterance[" + i + "] text missing");
             }
         }
     }
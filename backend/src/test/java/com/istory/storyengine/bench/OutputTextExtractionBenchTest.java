@@ -0,0 +1,21 @@
+package com.istory.storyengine.bench;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Lance OutputTextExtractionBenchmark (JMH) depuis Maven.
+ * mvn test -Dtest=OutputTextExtractionBenchTest -Dbench=true
+ */
+@EnabledIfSystemProperty(named = "bench", matches = "true")
+class OutputTextExtractionBenchTest {
+
+    @Test
+    void compareTreeAndStreamingExtraction() throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(OutputTextExtractionBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,113 @@
+package com.istory.storyengine.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.istory.storyengine.service.openai.OpenAiCompletion;
+import com.istory.storyengine.service.openai.ResponseTextExtractor;
+import com.istory.storyengine.service.openai.TokenUsage;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extraction de output_text d'une réponse /responses :
+ * - tree      : ancien chemin (corps -> String -> JsonNode complet -> parcours) ;
+ * - streaming : ResponseTextExtractor (parser non bloquant) directement sur les octets reçus.
+ * Tailles : segment typique (~4 Ko de narration), long (~16 Ko), extrême (~64 Ko).
+ * <p>
+ * Lancer avec : mvn test -Dtest=OutputTextExtractionBenchTest -Dbench=true
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputTextExtractionBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Param({"4096", "16384", "65536"})
+    public int narrationChars;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() throws Exception {
+        body = MAPPER.writeValueAsBytes(sampleResponse(narrationChars));
+    }
+
+    @Benchmark
+    public OpenAiCompletion tree() throws Exception {
+        String raw = new String(body, StandardCharsets.UTF_8);
+        JsonNode root = MAPPER.readTree(raw);
+
+        StringBuilder sb = new StringBuilder();
+        for (JsonNode item : root.path("output")) {
+            for (JsonNode c : item.path("content")) {
+                if ("output_text".equals(c.path("type").asText(""))) {
+                    String text = c.path("text").asText("");
+                    if (!text.isBlank()) {
+                        if (!sb.isEmpty()) sb.append("\n");
+                        sb.append(text);
+                    }
+                }
+            }
+        }
+        return new OpenAiCompletion(sb.toString(), TokenUsage.from(root.path("usage")));
+    }
+
+    @Benchmark
+    public OpenAiCompletion streaming() throws Exception {
+        return ResponseTextExtractor.extract(body);
+    }
+
+    /**
+     * Réponse proche de la réalité : métadonnées, bloc reasoning, message avec le segment JSON échappé, usage.
+     */
+    static Map<String, Object> sampleResponse(int narrationChars) throws Exception {
+        String sentence = "Léa avance doucement dans la forêt enchantée, le cœur battant. ";
+        StringBuilder narration = new StringBuilder();
+        while (narration.length() < narrationChars) narration.append(sentence);
+
+        Map<String, Object> segment = new LinkedHashMap<>();
+        segment.put("narration", narration.toString());
+        List<Map<String, Object>> utterances = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            utterances.add(Map.of("speaker", i % 2 == 0 ? "NARRATOR" : "HERO", "ageGroup", "ADULT",
+                    "gender", "NEUTRAL", "text", sentence.repeat(3)));
+        }
+        segment.put("utterances", utterances);
+        segment.put("choices", List.of(
+                Map.of("id", "A", "text", "Aider le renard"), Map.of("id", "B", "text", "Partager le goûter"),
+                Map.of("id", "C", "text", "Garder la clé"), Map.of("id", "D", "text", "Mentir au hibou")));
+        segment.put("ended", false);
+        segment.put("moralChoiceIds", List.of("A", "B"));
+
+        Map<String, Object> root = new LinkedHashMap<>();
+        root.put("id", "resp_0123456789");
+        root.put("object", "response");
+        root.put("created_at", 1_760_000_000);
+        root.put("status", "completed");
+        root.put("model", "gpt-4.1");
+        root.put("output", List.of(
+                Map.of("type", "reasoning", "id", "rs_1", "summary", List.of()),
+                Map.of("type", "message", "id", "msg_1", "role", "assistant", "status", "completed",
+                        "content", List.of(Map.of(
+                                "type", "output_text",
+                                "annotations", List.of(),
+                                "text", MAPPER.writeValueAsString(segment))))));
+        root.put("usage", Map.of(
+                "input_tokens", 1800,
+                "input_tokens_details", Map.of("cached_tokens", 1536),
+                "output_tokens", 900,
+                "total_tokens", 2700));
+        root.put("metadata", Map.of());
+        return root;
+    }
+}
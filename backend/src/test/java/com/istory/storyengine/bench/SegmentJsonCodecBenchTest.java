@@ -0,0 +1,44 @@
+package com.istory.storyengine.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.istory.storyengine.model.SegmentJsonCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Octets stockés par noeud (brut / deflate / deflate + dictionnaire), puis SegmentJsonCodecBenchmark (JMH).
+ * mvn test -Dtest=SegmentJsonCodecBenchTest -Dbench=true
+ */
+@EnabledIfSystemProperty(named = "bench", matches = "true")
+class SegmentJsonCodecBenchTest {
+
+    private static final int SAMPLES = 200;
+
+    @Test
+    void bytesPerNodeThenDecodeCost() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+
+        for (int narrationChars : new int[]{512, 1024, 4096}) {
+            long raw = 0;
+            long deflate = 0;
+            long dictionary = 0;
+            for (int i = 0; i < SAMPLES; i++) {
+                String json = mapper.writeValueAsString(SegmentJsonCodecBenchmark.sampleSegment(narrationChars, i));
+                byte[] utf8 = json.getBytes(StandardCharsets.UTF_8);
+                raw += utf8.length;
+                deflate += SegmentJsonCodecBenchmark.deflate(utf8).length;
+                dictionary += SegmentJsonCodec.encode(json).length;
+            }
+            System.out.printf("[%d chars] bytes/node: raw %,d | deflate %,d | deflate+dict %,d (%.0f%% of raw)%n",
+                    narrationChars, raw / SAMPLES, deflate / SAMPLES, dictionary / SAMPLES, 100.0 * dictionary / raw);
+        }
+
+        new Runner(new OptionsBuilder()
+                .include(SegmentJsonCodecBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,137 @@
+package com.istory.storyengine.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.istory.storyengine.model.Choice;
+import com.istory.storyengine.model.SegmentJsonCodec;
+import com.istory.storyengine.model.StorySegment;
+import com.istory.storyengine.model.Utterance;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Coût de lecture d'un noeud sur le chemin choose / rewind (octets stockés -> StorySegment) :
+ * - raw        : UTF-8 brut (ancien stockage) ;
+ * - deflate    : deflate seul, sans dictionnaire ;
+ * - dictionary : SegmentJsonCodec (deflate + dictionnaire v1).
+ * La taille stockée par noeud est affichée par SegmentJsonCodecBenchTest.
+ * <p>
+ * Lancer avec : mvn test -Dtest=SegmentJsonCodecBenchTest -Dbench=true
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SegmentJsonCodecBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // un peu de tout ce que le modèle écrit : narration, dialogues, décors
+    private static final String[] SENTENCES = {
+            "Léa avance doucement dans la forêt enchantée, le cœur battant.",
+            "Soudain, un petit renard sort de derrière les arbres.",
+            "« J'ai perdu ma maman, peux-tu m'aider ? » demande-t-il d'une petite voix.",
+            "Au loin, on entend le vent souffler près du vieux château.",
+            "Le hibou regarde la scène du haut de sa branche et sourit.",
+            "Une lumière étrange brille au fond de la grotte.",
+            "Léa se souvient de ce que lui disait sa grand-mère : il faut toujours être gentil.",
+            "Le chemin se sépare en deux, l'un vers la rivière, l'autre vers la colline.",
+    };
+
+    @Param({"1024", "4096"})
+    public int narrationChars;
+
+    private byte[] raw;
+    private byte[] deflated;
+    private byte[] dictionary;
+
+    @Setup
+    public void setUp() throws Exception {
+        String json = MAPPER.writeValueAsString(sampleSegment(narrationChars, 42));
+        raw = json.getBytes(StandardCharsets.UTF_8);
+        deflated = deflate(raw);
+        dictionary = SegmentJsonCodec.encode(json);
+    }
+
+    @Benchmark
+    public StorySegment raw() throws Exception {
+        return MAPPER.readValue(new String(raw, StandardCharsets.UTF_8), StorySegment.class);
+    }
+
+    @Benchmark
+    public StorySegment deflate() throws Exception {
+        return MAPPER.readValue(inflate(deflated), StorySegment.class);
+    }
+
+    @Benchmark
+    public StorySegment dictionary() throws Exception {
+        return MAPPER.readValue(SegmentJsonCodec.decode(dictionary), StorySegment.class);
+    }
+
+    /**
+     * Segment typique : les utterances reprennent la narration phrase par phrase (c'est ce que fait le modèle).
+     */
+    static StorySegment sampleSegment(int narrationChars, long seed) {
+        Random rnd = new Random(seed);
+        StringBuilder narration = new StringBuilder();
+        List<Utterance> utterances = new ArrayList<>();
+        while (narration.length() < narrationChars) {
+            String sentence = SENTENCES[rnd.nextInt(SENTENCES.length)];
+            narration.append(sentence).append(' ');
+            boolean dialogue = sentence.startsWith("«");
+            utterances.add(new Utterance(dialogue ? "RENARD" : "NARRATOR", dialogue ? "CHILD" : "ADULT",
+                    dialogue ? "MALE" : "NEUTRAL", sentence));
+        }
+
+        Choice a = new Choice();
+        a.setId("A");
+        a.setText("Aider le petit renard à retrouver sa maman");
+        Choice b = new Choice();
+        b.setId("B");
+        b.setText("Continuer seule vers le vieux château");
+
+        StorySegment segment = new StorySegment();
+        segment.setNarration(narration.toString().trim());
+        segment.setUtterances(utterances);
+        segment.setChoices(List.of(a, b));
+        segment.setMoralChoiceIds(Set.of("A"));
+        return segment;
+    }
+
+    static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+            byte[] buf = new byte[8192];
+            while (!deflater.finished()) out.write(buf, 0, deflater.deflate(buf));
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static String inflate(byte[] data) throws Exception {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            byte[] buf = new byte[8192];
+            while (!inflater.finished()) out.write(buf, 0, inflater.inflate(buf));
+            return out.toString(StandardCharsets.UTF_8);
+        } finally {
+            inflater.end();
+        }
+    }
+}
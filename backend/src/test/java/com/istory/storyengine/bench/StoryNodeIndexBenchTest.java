@@ -0,0 +1,175 @@
+package com.istory.storyengine.bench;
+
+import com.istory.storyengine.model.SegmentJsonCodec;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.sql.*;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Accès story_node quand la table grossit, requêtes de StoryNodeRepository :
+ * - suite déjà jouée d'un choix (parent_node_id, choice_id) : réutilisation au choose() ;
+ * - choix déjà explorés sous un noeud (parent_node_id) : options grisées après rewind ;
+ * - dernier noeud d'une session (session_id, segment_index desc).
+ * H2 en mémoire, même schéma que l'entité StoryNode (segment_json compressé en varbinary,
+ * index (session_id, segment_index), contrainte unique (parent_node_id, choice_id)). Aucun DELETE :
+ * un rewind ne fait que déplacer le curseur de session.
+ * La table passe de 20k à 100k sessions (x 20 noeuds = 2M lignes) ; les temps doivent rester plats.
+ * Un passage sans index à 20k sessions sert de référence.
+ * <p>
+ * Lancer avec : mvn test -Dtest=StoryNodeIndexBenchTest -Dbench=true -DargLine=-Xmx2g
+ */
+@EnabledIfSystemProperty(named = "bench", matches = "true")
+class StoryNodeIndexBenchTest {
+
+    private static final int NODES_PER_SESSION = 20;
+    private static final int[] SESSION_STEPS = {20_000, 50_000, 100_000};
+    private static final int OPS = 2_000;
+    private static final String CHOICES = "ABCD";
+    // JSON court : on mesure l'accès, pas le transfert de LOB (et 2M lignes doivent tenir en mémoire)
+    private static final byte[] SEGMENT_JSON =
+            SegmentJsonCodec.encode("{\"narration\":\"" + "x".repeat(64) + "\",\"choices\":[]}");
+
+    @Test
+    void lookupsStayFlatAsTheTableGrows() throws Exception {
+        double first = 0;
+        double last = 0;
+
+        try (Connection c = DriverManager.getConnection("jdbc:h2:mem:bench_idx;DB_CLOSE_DELAY=-1")) {
+            createTable(c, true);
+            int sessions = 0;
+
+            for (int step : SESSION_STEPS) {
+                insertSessions(c, sessions, step);
+                sessions = step;
+                double micros = measure(c, sessions, "indexed");
+                if (first == 0) first = micros;
+                last = micros;
+            }
+        }
+
+        try (Connection c = DriverManager.getConnection("jdbc:h2:mem:bench_noidx;DB_CLOSE_DELAY=-1")) {
+            createTable(c, false);
+            insertSessions(c, 0, SESSION_STEPS[0]);
+            measure(c, SESSION_STEPS[0], "no index");
+        }
+
+        // 5x plus de lignes : on tolère du bruit, pas une croissance linéaire
+        Assertions.assertTrue(last < first * 3, "indexed access should not grow with the table");
+    }
+
+    private static void createTable(Connection c, boolean indexed) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            st.execute("""
+                    create table story_node (
+                        id uuid primary key,
+                        session_id uuid not null,
+                        parent_node_id uuid,
+                        choice_id varchar(5),
+                        choice_text varchar(2000),
+                        created_at timestamp not null,
+                        segment_index int not null,
+                        segment_json varbinary(262144) not null,
+                        moral_segment boolean not null
+                    )""");
+            if (indexed) {
+                st.execute("create index idx_story_node_session_segment on story_node (session_id, segment_index)");
+                st.execute("alter table story_node add constraint uk_story_node_parent_choice unique (parent_node_id, choice_id)");
+            }
+        }
+    }
+
+    /**
+     * Une branche de NODES_PER_SESSION noeuds par session ; identifiants dérivés de (session, index)
+     * pour retrouver n'importe quel noeud sans garder 2M UUID en mémoire.
+     */
+    private static void insertSessions(Connection c, int from, int to) throws SQLException {
+        c.setAutoCommit(false);
+        try (PreparedStatement ps = c.prepareStatement(
+                "insert into story_node (id, session_id, parent_node_id, choice_id, created_at, segment_index, segment_json, moral_segment)"
+                        + " values (?, ?, ?, ?, ?, ?, ?, ?)")) {
+            Timestamp now = new Timestamp(System.currentTimeMillis());
+            for (int s = from; s < to; s++) {
+                for (int i = 0; i < NODES_PER_SESSION; i++) {
+                    ps.setObject(1, nodeId(s, i));
+                    ps.setObject(2, sessionId(s));
+                    ps.setObject(3, i == 0 ? null : nodeId(s, i - 1));
+                    ps.setString(4, i == 0 ? null : choiceId(s, i));
+                    ps.setTimestamp(5, now);
+                    ps.setInt(6, i);
+                    ps.setBytes(7, SEGMENT_JSON);
+                    ps.setBoolean(8, true);
+                    ps.addBatch();
+                }
+                if (s % 500 == 0) ps.executeBatch();
+            }
+            ps.executeBatch();
+        }
+        c.commit();
+        c.setAutoCommit(true);
+    }
+
+    /**
+     * @return µs moyens par interaction (suite d'un choix + choix explorés + dernier noeud)
+     */
+    private static double measure(Connection c, int sessions, String label) throws SQLException {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+
+        try (PreparedStatement child = c.prepareStatement(
+                "select segment_json from story_node where parent_node_id = ? and choice_id = ? limit 1");
+             PreparedStatement explored = c.prepareStatement(
+                     "select choice_id from story_node where parent_node_id = ?");
+             PreparedStatement lastNode = c.prepareStatement(
+                     "select segment_index from story_node where session_id = ? order by segment_index desc limit 1")) {
+
+            // chauffe
+            for (int i = 0; i < OPS / 4; i++) run(child, explored, lastNode, rnd.nextInt(sessions), rnd);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < OPS; i++) {
+                run(child, explored, lastNode, rnd.nextInt(sessions), rnd);
+            }
+            double micros = (System.nanoTime() - start) / 1_000.0 / OPS;
+
+            System.out.printf("[%s] %,d rows (%,d sessions): %.1f µs / interaction%n",
+                    label, (long) sessions * NODES_PER_SESSION, sessions, micros);
+            return micros;
+        }
+    }
+
+    private static void run(PreparedStatement child, PreparedStatement explored, PreparedStatement lastNode,
+                            int session, ThreadLocalRandom rnd) throws SQLException {
+        int index = 1 + rnd.nextInt(NODES_PER_SESSION - 1);
+
+        child.setObject(1, nodeId(session, index - 1));
+        child.setString(2, choiceId(session, index));
+        try (ResultSet rs = child.executeQuery()) {
+            if (rs.next()) rs.getBytes(1);
+        }
+
+        explored.setObject(1, nodeId(session, index - 1));
+        try (ResultSet rs = explored.executeQuery()) {
+            while (rs.next()) rs.getString(1);
+        }
+
+        lastNode.setObject(1, sessionId(session));
+        try (ResultSet rs = lastNode.executeQuery()) {
+            rs.next();
+        }
+    }
+
+    private static UUID sessionId(int session) {
+        return new UUID(session, -1L);
+    }
+
+    private static UUID nodeId(int session, int index) {
+        return new UUID(session, index);
+    }
+
+    private static String choiceId(int session, int index) {
+        return String.valueOf(CHOICES.charAt((session + index) % CHOICES.length()));
+    }
+}
@@ -0,0 +1,102 @@
+package com.istory.storyengine.bench;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Capacité en sessions concurrentes : pool Tomcat classique (200 threads plateforme)
+ * vs virtual threads, sur le même chemin "WebClient ... .block()" qu'OpenAiService.
+ * <p>
+ * OpenAI est simulé par un serveur local qui répond après LATENCY_MS.
+ * Lancer avec : mvn test -Dtest=ThreadModelCapacityBenchTest -Dbench=true
+ */
+@EnabledIfSystemProperty(named = "bench", matches = "true")
+class ThreadModelCapacityBenchTest {
+
+    private static final int LATENCY_MS = 2_000;
+    private static final int SESSIONS = 1_000;
+    private static final int TOMCAT_MAX_THREADS = 200;
+
+    @Test
+    void virtualThreadsServeMoreConcurrentSessions() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/responses", exchange -> {
+            try {
+                Thread.sleep(LATENCY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "{\"output\":[]}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        ConnectionProvider pool = ConnectionProvider.builder("bench")
+                .maxConnections(SESSIONS)
+                .pendingAcquireMaxCount(SESSIONS * 2)
+                .build();
+        WebClient client = WebClient.builder()
+                .baseUrl("http://127.0.0.1:" + server.getAddress().getPort())
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(pool)))
+                .build();
+
+        try {
+            Result platform = run("platform(" + TOMCAT_MAX_THREADS + ")", Executors.newFixedThreadPool(TOMCAT_MAX_THREADS), client);
+            Result virtual = run("virtual", Executors.newVirtualThreadPerTaskExecutor(), client);
+
+            System.out.println(platform);
+            System.out.println(virtual);
+
+            Assertions.assertTrue(virtual.wallMillis() < platform.wallMillis(),
+                    "virtual threads should finish " + SESSIONS + " blocking sessions faster");
+        } finally {
+            pool.dispose();
+            server.stop(0);
+        }
+    }
+
+    private Result run(String name, ExecutorService workers, WebClient client) throws Exception {
+        List<Future<Long>> latencies = new ArrayList<>();
+        long start = System.nanoTime();
+
+        try (workers) {
+            for (int i = 0; i < SESSIONS; i++) {
+                long submitted = System.nanoTime();
+                latencies.add(workers.submit(() -> {
+                    client.post().uri("/responses").retrieve().bodyToMono(String.class).block();
+                    return (System.nanoTime() - submitted) / 1_000_000;
+                }));
+            }
+        }
+
+        long wall = (System.nanoTime() - start) / 1_000_000;
+        List<Long> sorted = new ArrayList<>();
+        for (Future<Long> f : latencies) sorted.add(f.get());
+        sorted.sort(Long::compare);
+
+        return new Result(name, wall, sorted.get(sorted.size() / 2), sorted.get((int) (sorted.size() * 0.99) - 1));
+    }
+
+    private record Result(String name, long wallMillis, long p50Millis, long p99Millis) {
+        @Override
+        public String toString() {
+            return String.format("%-14s sessions=%d wall=%dms p50=%dms p99=%dms throughput=%.1f sessions/s",
+                    name, SESSIONS, wallMillis, p50Millis, p99Millis, SESSIONS * 1000.0 / wallMillis);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.istory.storyengine.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class DiskLruCacheTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void evictsLeastRecentlyUsedBeyondMaxBytes() {
+        DiskLruCache cache = new DiskLruCache("test", dir, 10, registry);
+        cache.put("aa01", new byte[4]);
+        cache.put("bb02", new byte[4]);
+        cache.get("aa01");                 // "bb02" devient le moins récent
+        cache.put("cc03", new byte[4]);
+
+        Assertions.assertTrue(cache.get("bb02").isEmpty());
+        Assertions.assertTrue(cache.get("aa01").isPresent());
+        Assertions.assertEquals(8, cache.weight());
+        Assertions.assertFalse(Files.exists(cache.fileFor("bb02")));
+        Assertions.assertEquals(1.0, registry.counter("cache.evictions", "cache", "test", "reason", "size").count());
+    }
+
+    @Test
+    void survivesRestart() {
+        new DiskLruCache("test", dir, 1024, registry).put("aa01", new byte[]{1, 2, 3});
+
+        DiskLruCache reopened = new DiskLruCache("test", dir, 1024, registry);
+
+        Assertions.assertEquals(1, reopened.size());
+        Assertions.assertArrayEquals(new byte[]{1, 2, 3}, reopened.get("aa01").orElseThrow());
+    }
+
+    @Test
+    void invalidateRemovesTheFile() {
+        DiskLruCache cache = new DiskLruCache("test", dir, 1024, registry);
+        cache.put("aa01", new byte[]{1});
+
+        cache.invalidate("aa01");
+
+        Assertions.assertTrue(cache.get("aa01").isEmpty());
+        Assertions.assertEquals(0, cache.weight());
+        Assertions.assertFalse(Files.exists(cache.fileFor("aa01")));
+    }
+}
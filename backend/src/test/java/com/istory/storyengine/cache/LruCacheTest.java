@@ -0,0 +1,49 @@
+package com.istory.storyengine.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+class LruCacheTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void evictsLeastRecentlyUsedBeyondMaxEntries() {
+        LruCache<String, String> cache = new LruCache<>("test", 2, Duration.ofMinutes(1), String::length, registry);
+        cache.put("a", "1");
+        cache.put("b", "22");
+        cache.get("a");            // "b" devient le moins récent
+        cache.put("c", "333");
+
+        Assertions.assertNull(cache.get("b"));
+        Assertions.assertEquals("1", cache.get("a"));
+        Assertions.assertEquals(4, cache.weight());
+        Assertions.assertEquals(1.0, registry.counter("cache.evictions", "cache", "test", "reason", "size").count());
+    }
+
+    @Test
+    void expiredEntriesAreMisses() throws Exception {
+        LruCache<String, String> cache = new LruCache<>("test", 10, Duration.ofMillis(1), String::length, registry);
+        cache.put("a", "1");
+        Thread.sleep(5);
+
+        Assertions.assertNull(cache.get("a"));
+        Assertions.assertEquals(0, cache.size());
+        Assertions.assertEquals(0, cache.weight());
+        Assertions.assertEquals(1.0, registry.counter("cache.gets", "cache", "test", "result", "miss").count());
+    }
+
+    @Test
+    void overwriteAdjustsWeight() {
+        LruCache<String, String> cache = new LruCache<>("test", 10, Duration.ofMinutes(1), String::length, registry);
+        cache.put("a", "1234");
+        cache.put("a", "12");
+        cache.invalidate("b");
+
+        Assertions.assertEquals(2, cache.weight());
+        Assertions.assertEquals(1, cache.size());
+    }
+}
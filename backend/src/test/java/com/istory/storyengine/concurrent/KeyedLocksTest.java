@@ -0,0 +1,70 @@
+package com.istory.storyengine.concurrent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+class KeyedLocksTest {
+
+    private final KeyedLocks<String> locks = new KeyedLocks<>();
+
+    @Test
+    void differentKeysNeverWaitForEachOther() throws Exception {
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            executor.submit(() -> {
+                try (KeyedLocks<String>.Lease lease = locks.lease("a")) {
+                    lease.lock().lock();
+                    held.countDown();
+                    release.await();
+                    lease.lock().unlock();
+                }
+                return null;
+            });
+            Assertions.assertTrue(held.await(5, TimeUnit.SECONDS));
+
+            // "a" tenu longtemps (génération) : "b" passe immédiatement
+            CompletableFuture<Boolean> other = CompletableFuture.supplyAsync(() -> {
+                try (KeyedLocks<String>.Lease lease = locks.lease("b")) {
+                    boolean acquired = lease.lock().tryLock();
+                    if (acquired) lease.lock().unlock();
+                    return acquired;
+                }
+            }, executor);
+            Assertions.assertTrue(other.get(5, TimeUnit.SECONDS));
+            release.countDown();
+        }
+    }
+
+    @Test
+    void sameKeySharesOneLockWhileLeased() {
+        try (KeyedLocks<String>.Lease first = locks.lease("a");
+             KeyedLocks<String>.Lease second = locks.lease("a")) {
+            Assertions.assertSame(first.lock(), second.lock());
+            Assertions.assertEquals(1, locks.size());
+        }
+    }
+
+    @Test
+    void entryIsRemovedOnceNoLongerLeased() {
+        KeyedLocks<String>.Lease first = locks.lease("a");
+        KeyedLocks<String>.Lease second = locks.lease("a");
+
+        first.close();
+        Assertions.assertEquals(1, locks.size());
+        second.close();
+        Assertions.assertEquals(0, locks.size());
+
+        // nouveau bail : nouveau verrou, rien ne s'accumule
+        try (KeyedLocks<String>.Lease third = locks.lease("a")) {
+            Assertions.assertNotSame(first.lock(), third.lock());
+        }
+    }
+}
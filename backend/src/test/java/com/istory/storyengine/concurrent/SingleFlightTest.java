@@ -0,0 +1,60 @@
+package com.istory.storyengine.concurrent;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class SingleFlightTest {
+
+    private final SingleFlight<String, Integer> flight = new SingleFlight<>();
+
+    @Test
+    void concurrentCallsShareOneExecution() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<SingleFlight.Outcome<Integer>> leader = executor.submit(() -> flight.execute("k", () -> {
+                started.countDown();
+                await(release);
+                return executions.incrementAndGet();
+            }));
+            Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            Future<SingleFlight.Outcome<Integer>> follower = executor.submit(() -> flight.execute("k", executions::incrementAndGet));
+            // laisse le suiveur se bloquer sur l'appel en cours
+            Thread.sleep(200);
+            Assertions.assertFalse(follower.isDone());
+            release.countDown();
+
+            Assertions.assertFalse(leader.get().shared());
+            Assertions.assertTrue(follower.get().shared());
+            Assertions.assertEquals(1, follower.get().value());
+        }
+        Assertions.assertEquals(1, executions.get());
+        Assertions.assertEquals(0, flight.inFlight());
+    }
+
+    @Test
+    void failurePropagatesAndIsNotRemembered() {
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> flight.execute("k", () -> { throw new IllegalStateException("boom"); }));
+
+        Assertions.assertEquals(42, flight.execute("k", () -> 42).value());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
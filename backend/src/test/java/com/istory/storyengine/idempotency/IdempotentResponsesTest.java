@@ -0,0 +1,115 @@
+package com.istory.storyengine.idempotency;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class IdempotentResponsesTest {
+
+    private final IdempotencyProperties props = new IdempotencyProperties();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final IdempotentResponses responses = new IdempotentResponses(props, registry);
+
+    private final UUID session = UUID.randomUUID();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void retryReplaysWithoutRunningAgain() {
+        var first = responses.execute("choose", session, "k1", "A", calls::incrementAndGet);
+        var retry = responses.execute("choose", session, "k1", "A", calls::incrementAndGet);
+
+        Assertions.assertFalse(first.shared());
+        Assertions.assertTrue(retry.shared());
+        Assertions.assertEquals(1, retry.value());
+        Assertions.assertEquals(1, calls.get());
+        Assertions.assertEquals(1.0, registry.counter("story.idempotency.requests", "endpoint", "choose", "result", "replay").count());
+    }
+
+    @Test
+    void keyIsScopedByEndpointAndSession() {
+        responses.execute("choose", session, "k1", "A", calls::incrementAndGet);
+        responses.execute("choose", UUID.randomUUID(), "k1", "A", calls::incrementAndGet);
+        responses.execute("rewind", session, "k1", "A", calls::incrementAndGet);
+
+        Assertions.assertEquals(3, calls.get());
+    }
+
+    @Test
+    void reusedKeyForAnotherRequestIsRejected() {
+        responses.execute("choose", session, "k1", "A", calls::incrementAndGet);
+
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> responses.execute("choose", session, "k1", "B", calls::incrementAndGet));
+    }
+
+    @Test
+    void failuresAreNotKept() {
+        Assertions.assertThrows(RuntimeException.class,
+                () -> responses.execute("start", null, "k1", "req", () -> { throw new RuntimeException("timeout"); }));
+
+        Assertions.assertEquals(1, responses.execute("start", null, "k1", "req", calls::incrementAndGet).value());
+    }
+
+    @Test
+    void boundedAndExpiring() throws Exception {
+        props.setMaxEntries(2);
+        responses.execute("start", null, "k1", "req", calls::incrementAndGet);
+        responses.execute("start", null, "k2", "req", calls::incrementAndGet);
+        responses.execute("start", null, "k3", "req", calls::incrementAndGet);
+        Assertions.assertEquals(2, responses.size());
+
+        props.setTtl(Duration.ofMillis(1));
+        Thread.sleep(5);
+        responses.execute("start", null, "k4", "req", calls::incrementAndGet);
+        Assertions.assertEquals(1, responses.size());
+    }
+
+    @Test
+    void inFlightKeyIsNeverEvicted() throws Exception {
+        props.setMaxEntries(1);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newCachedThreadPool();
+        try {
+            Future<Integer> slow = pool.submit(() -> responses.execute("choose", session, "k1", "A", () -> {
+                running.countDown();
+                await(release);
+                return calls.incrementAndGet();
+            }).value());
+            Assertions.assertTrue(running.await(2, TimeUnit.SECONDS));
+
+            // 2e requête pendant que k1 tourne : cache plein, mais k1 en cours n'est pas évincée
+            responses.execute("choose", session, "k2", "B", () -> 100);
+            Assertions.assertEquals(2, responses.size());
+            Assertions.assertEquals(1.0, registry.counter("story.idempotency.overflow").count());
+
+            // le retry de k1 rejoint l'exécution en cours au lieu de la relancer
+            Future<Integer> retry = pool.submit(() ->
+                    responses.execute("choose", session, "k1", "A", calls::incrementAndGet).value());
+            release.countDown();
+
+            Assertions.assertEquals(slow.get(2, TimeUnit.SECONDS), retry.get(2, TimeUnit.SECONDS));
+            Assertions.assertEquals(1, calls.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.istory.storyengine.model;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+class SegmentJsonCodecTest {
+
+    private static final String SEGMENT = """
+            {"narration":"Léa entre dans la forêt. Le vieux hibou la regarde et lui demande : « Que vas-tu faire maintenant ? »",\
+            "utterances":[{"speaker":"NARRATOR","ageGroup":"ADULT","gender":"NEUTRAL","text":"Léa entre dans la forêt."},\
+            {"speaker":"HIBOU","ageGroup":"ADULT","gender":"MALE","text":"Que vas-tu faire maintenant ?"}],\
+            "choices":[{"id":"A","text":"Aider le petit renard blessé"},{"id":"B","text":"Continuer seule vers le château"}],\
+            "ended":false,"explanation":null,"moralChoiceIds":["A"]}""";
+
+    @Test
+    void roundTripsAndShrinksTypicalSegments() {
+        byte[] stored = SegmentJsonCodec.encode(SEGMENT);
+
+        Assertions.assertEquals(SegmentJsonCodec.DEFLATE_DICT_V1, stored[0]);
+        Assertions.assertTrue(stored.length < SEGMENT.getBytes(StandardCharsets.UTF_8).length / 2,
+                "dictionary-compressed segment should be well under half its raw size: " + stored.length);
+        Assertions.assertEquals(SEGMENT, SegmentJsonCodec.decode(stored));
+    }
+
+    @Test
+    void tinyPayloadsAreStoredRaw() {
+        byte[] stored = SegmentJsonCodec.encode("{}");
+
+        Assertions.assertEquals(SegmentJsonCodec.RAW, stored[0]);
+        Assertions.assertEquals("{}", SegmentJsonCodec.decode(stored));
+    }
+
+    @Test
+    void rejectsUnknownVersionsAndCorruptedPayloads() {
+        Assertions.assertThrows(IllegalStateException.class, () -> SegmentJsonCodec.decode(new byte[]{42, 1, 2}));
+
+        byte[] stored = SegmentJsonCodec.encode(SEGMENT);
+        byte[] truncated = Arrays.copyOf(stored, stored.length / 2);
+        Assertions.assertThrows(IllegalStateException.class, () -> SegmentJsonCodec.decode(truncated));
+    }
+}
@@ -1,9 +1,13 @@
 package com.istory.storyengine.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.istory.storyengine.service.openai.OpenAiCompletion;
+import com.istory.storyengine.service.openai.ResponseTextExtractor;
 import org.junit.jupiter.api.Test;
-import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -12,30 +16,85 @@ class OpenAiServiceExtractionTest {
     @Test
     void extractsOutputTextFromSampleResponse() throws Exception {
         // On ne teste pas l'appel réseau ici, juste l'extraction.
-        com.istory.storyengine.service.openai.OpenAiProperties props = new com.istory.storyengine.service.openai.OpenAiProperties();
-        props.setModel("gpt-4.1");
-
-        OpenAiService service = new OpenAiService(WebClient.builder().baseUrl("http://localhost").build(), props);
-
         String sample = """
         {
+          "id": "resp_1",
           "output": [
+            { "type": "reasoning", "summary": [] },
             {
               "type": "message",
               "content": [
                 { "type": "output_text", "text": "{\\"narration\\":\\"OK\\",\\"choices\\":[]}" }
               ]
             }
+          ],
+          "usage": { "input_tokens": 120, "input_tokens_details": { "cached_tokens": 100 }, "output_tokens": 30 }
+        }
+        """;
+
+        OpenAiCompletion completion = ResponseTextExtractor.extract(sample.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("{\"narration\":\"OK\",\"choices\":[]}", completion.text());
+        assertEquals(120, completion.usage().inputTokens());
+        assertEquals(100, completion.usage().cachedInputTokens());
+        assertEquals(30, completion.usage().outputTokens());
+    }
+
+    @Test
+    void ignoresNonTextPartsWhateverTheFieldOrder() throws Exception {
+        String sample = """
+        {
+          "output": [
+            { "content": [ { "text": "A", "type": "output_text" }, { "type": "refusal", "refusal": "no" } ] },
+            { "content": [ { "annotations": [], "text": "B", "type": "output_text" } ] }
           ]
         }
         """;
 
-        ObjectMapper mapper = new ObjectMapper();
-        JsonNode root = mapper.readTree(sample);
+        OpenAiCompletion completion = ResponseTextExtractor.extract(sample.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("A\nB", completion.text());
+        assertEquals(0, completion.usage().total());
+    }
+
+    @Test
+    void extractsTheSameTextWhenTheBodyArrivesInSmallChunks() throws Exception {
+        // coupures au milieu des tokens et des caractères multi-octets, comme entre deux buffers réseau
+        byte[] body = ("{\"output\":[{\"content\":[{\"type\":\"output_text\",\"text\":\"Léa ouvre la porte\"}]}],"
+                + "\"usage\":{\"input_tokens\":12,\"output_tokens\":5}}").getBytes(StandardCharsets.UTF_8);
+
+        ResponseTextExtractor.Feed feed = ResponseTextExtractor.feed();
+        for (int i = 0; i < body.length; i += 3) {
+            byte[] chunk = Arrays.copyOfRange(body, i, Math.min(body.length, i + 3));
+            feed.accept(ByteBuffer.wrap(chunk));
+            // buffer libéré par l'appelant dès le retour
+            Arrays.fill(chunk, (byte) '#');
+        }
+        OpenAiCompletion completion = feed.finish();
+
+        assertEquals("Léa ouvre la porte", completion.text());
+        assertEquals(17, completion.usage().total());
+    }
+
+    @Test
+    void truncatedBodyIsAnError() {
+        byte[] body = "{\"output\":[{\"content\":[".getBytes(StandardCharsets.UTF_8);
+
+        assertThrows(IOException.class, () -> ResponseTextExtractor.extract(body));
+    }
+
+    @Test
+    void noOutputTextGivesNull() throws Exception {
+        OpenAiCompletion completion = ResponseTextExtractor.extract("{\"output\": []}".getBytes(StandardCharsets.UTF_8));
+
+        assertNull(completion.text());
+    }
+
+    @Test
+    void errorMessagesNeverCarryTheWholeBody() {
+        String body = "x".repeat(10_000);
 
-        // Appel via réflexion privée = pas idéal, donc on valide autrement dans ton code réel,
-        // ou tu peux rendre extractOutputText package-private.
-        // Ici on se contente de vérifier que le sample est conforme à ce que ton extracteur attend.
-        assertTrue(root.get("output").isArray());
+        assertTrue(OpenAiService.abbreviate(body).length() < 600);
+        assertEquals("short", OpenAiService.abbreviate("short"));
     }
 }
@@ -0,0 +1,130 @@
+package com.istory.storyengine.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.istory.storyengine.service.openai.CompletionCache;
+import com.istory.storyengine.service.openai.CompletionCacheProperties;
+import com.istory.storyengine.service.openai.OpenAiCompletion;
+import com.istory.storyengine.service.openai.OpenAiProperties;
+import com.istory.storyengine.service.prompt.SegmentPrompt;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+class OpenAiServiceStreamingTest {
+
+    // un seul thread pour tous les corps de réponse, comme l'event loop Netty partagée par le WebClient
+    private final Scheduler eventLoop = Schedulers.newSingle("event-loop");
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final OpenAiService openAiService = openAiService();
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+        eventLoop.dispose();
+    }
+
+    @Test
+    void blockedDeltaConsumerDoesNotStallOtherCalls() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        // client SSE bloqué : le listener ne rend pas la main tant que release n'est pas ouvert
+        StringBuilder streamed = new StringBuilder();
+        Future<OpenAiCompletion> stream = callers.submit(() -> openAiService.streamSegmentCompletion(
+                prompt("session-lente"), false, delta -> {
+                    streamed.append(delta);
+                    entered.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }));
+        Assertions.assertTrue(entered.await(2, TimeUnit.SECONDS));
+
+        // une autre requête passe quand même : l'event loop n'exécute pas le listener
+        OpenAiCompletion other = Assertions.assertTimeoutPreemptively(Duration.ofSeconds(2),
+                () -> openAiService.generateSegmentCompletion(prompt("session-rapide"), false));
+        Assertions.assertEquals("{\"ok\":true}", other.text());
+
+        release.countDown();
+        Assertions.assertEquals("{\"narration\":\"Il était une fois\"}", stream.get(2, TimeUnit.SECONDS).text());
+        Assertions.assertEquals("{\"narration\":\"Il était une fois\"}", streamed.toString());
+    }
+
+    private OpenAiService openAiService() {
+        CompletionCacheProperties cacheProps = new CompletionCacheProperties();
+        cacheProps.getDisk().setEnabled(false);
+        OpenAiProperties props = new OpenAiProperties();
+        props.setModel("gpt-test");
+
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(request -> {
+                    boolean stream = request.headers().getAccept().contains(MediaType.TEXT_EVENT_STREAM);
+                    return Mono.just(stream
+                            ? respond(MediaType.TEXT_EVENT_STREAM, sse(
+                                    Map.of("type", "response.output_text.delta", "delta", "{\"narration\":"),
+                                    Map.of("type", "response.output_text.delta", "delta", "\"Il était une fois\"}"),
+                                    Map.of("type", "response.completed", "response",
+                                            Map.of("usage", Map.of("input_tokens", 100, "output_tokens", 20)))))
+                            : respond(MediaType.APPLICATION_JSON, List.of(json(Map.of(
+                                    "output", List.of(Map.of("content", List.of(Map.of("type", "output_text", "text", "{\"ok\":true}")))),
+                                    "usage", Map.of("input_tokens", 10, "output_tokens", 2))))));
+                })
+                .build();
+
+        return new OpenAiService(webClient, props, registry, new CompletionCache(cacheProps, registry));
+    }
+
+    private ClientResponse respond(MediaType type, List<String> chunks) {
+        Flux<DataBuffer> body = Flux.fromIterable(chunks)
+                .map(c -> (DataBuffer) DefaultDataBufferFactory.sharedInstance.wrap(c.getBytes(StandardCharsets.UTF_8)))
+                .publishOn(eventLoop);
+        return ClientResponse.create(HttpStatus.OK)
+                .header(HttpHeaders.CONTENT_TYPE, type.toString())
+                .body(body)
+                .build();
+    }
+
+    @SafeVarargs
+    private static List<String> sse(Map<String, Object>... events) {
+        return Arrays.stream(events).map(e -> "data: " + json(e) + "\n\n").toList();
+    }
+
+    private static String json(Object value) {
+        try {
+            return new ObjectMapper().writeValueAsString(value);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static SegmentPrompt prompt(String cacheKey) {
+        return new SegmentPrompt("{\"theme\":\"forêt\"}", "{\"segmentIndex\":1,\"key\":\"" + cacheKey + "\"}", cacheKey);
+    }
+}
@@ -0,0 +1,126 @@
+package com.istory.storyengine.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.istory.storyengine.service.openai.CompletionCache;
+import com.istory.storyengine.service.openai.CompletionCacheProperties;
+import com.istory.storyengine.service.openai.OpenAiProperties;
+import com.istory.storyengine.service.prompt.PromptBuilder;
+import com.istory.storyengine.service.prompt.PromptUser;
+import com.istory.storyengine.service.prompt.SegmentPrompt;
+import com.istory.storyengine.validation.SegmentRepairer;
+import com.istory.storyengine.validation.StorySegmentValidator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SegmentGeneratorTest {
+
+    private static final String SEGMENT = "{\"narration\":\"Léa ouvre la porte.\",\"choices\":[],\"ended\":false}";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+    // réponses successives du modèle ; SEGMENT une fois la file vide
+    private final Deque<String> replies = new ArrayDeque<>();
+
+    private final PromptBuilder promptBuilder = mock(PromptBuilder.class);
+    private final StorySegmentValidator validator = mock(StorySegmentValidator.class);
+    private final SegmentRepairer repairer = mock(SegmentRepairer.class);
+
+    private final SegmentGenerator generator = generator();
+
+    @Test
+    void validSegmentIsReplayedFromCache() throws Exception {
+        when(validator.violations(any())).thenAnswer(inv -> new ArrayList<>());
+
+        generator.generate(promptUser());
+        generator.generate(promptUser());
+
+        Assertions.assertEquals(1, upstreamCalls.get());
+    }
+
+    @Test
+    void failedRepairIsNotReplayedOnRetry() {
+        // segment invalide, réparation locale sans effet, réparation modèle tout aussi invalide
+        when(validator.violations(any())).thenAnswer(inv -> new ArrayList<>(List.of("Missing choices")));
+        when(repairer.repairLocally(any())).thenReturn(List.of());
+
+        // deux essais de génération, chacun suivi d'une réparation
+        Assertions.assertThrows(IllegalStateException.class, () -> generator.generate(promptUser()));
+        Assertions.assertEquals(4, upstreamCalls.get());
+        Assertions.assertEquals(1.0, registry.counter("story.segment.retries", "mode", "json_schema", "reason", "repair").count());
+
+        // nouvel essai du même choix : segment et réparation redemandés au modèle
+        Assertions.assertThrows(IllegalStateException.class, () -> generator.generate(promptUser()));
+        Assertions.assertEquals(8, upstreamCalls.get());
+    }
+
+    @Test
+    void unreadableRepairIsCountedThenRegenerated() throws Exception {
+        // premier essai : réparation illisible ; second essai : segment valide
+        when(validator.violations(any())).thenAnswer(inv -> new ArrayList<>(List.of("Missing choices")))
+                .thenAnswer(inv -> new ArrayList<>(List.of("Missing choices")))
+                .thenAnswer(inv -> new ArrayList<>());
+        when(repairer.repairLocally(any())).thenReturn(List.of());
+        replies.add(SEGMENT);
+        replies.add("pas du json");
+
+        generator.generate(promptUser());
+
+        Assertions.assertEquals(3, upstreamCalls.get());
+        Assertions.assertEquals(1.0, registry.counter("story.segment.repairs", "mode", "model", "outcome", "parse").count());
+        Assertions.assertEquals(1.0, registry.counter("story.segment.retries", "mode", "json_schema", "reason", "repair").count());
+    }
+
+    private SegmentGenerator generator() {
+        when(promptBuilder.buildSegmentPrompt(any())).thenReturn(new SegmentPrompt("{\"theme\":\"forêt\"}", "{\"segmentIndex\":1}", "session-1"));
+
+        CompletionCacheProperties cacheProps = new CompletionCacheProperties();
+        cacheProps.getDisk().setEnabled(false);
+        OpenAiProperties props = new OpenAiProperties();
+        props.setModel("gpt-test");
+
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(request -> {
+                    upstreamCalls.incrementAndGet();
+                    return Mono.just(ClientResponse.create(HttpStatus.OK)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .body(response(replies.isEmpty() ? SEGMENT : replies.poll()))
+                            .build());
+                })
+                .build();
+
+        OpenAiService openAiService = new OpenAiService(webClient, props, registry, new CompletionCache(cacheProps, registry));
+        return new SegmentGenerator(promptBuilder, openAiService, validator, repairer, registry, props);
+    }
+
+    private static String response(String text) {
+        try {
+            return new ObjectMapper().writeValueAsString(Map.of(
+                    "output", List.of(Map.of("content", List.of(Map.of("type", "output_text", "text", text)))),
+                    "usage", Map.of("input_tokens", 100, "output_tokens", 20)));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static PromptUser promptUser() {
+        return new PromptUser(8, "Léa", "forêt", 3, 12, "renard", "forêt", "retrouver la clé", "doux", "La clé",
+                "seed", "in medias res", "pack", List.of(), 1, 0, "", false);
+    }
+}
@@ -0,0 +1,64 @@
+package com.istory.storyengine.service.openai;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+class CompletionCacheTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void fingerprintIgnoresKeyOrderStreamingAndRouting() {
+        CompletionCache cache = new CompletionCache(props(), registry);
+
+        Map<String, Object> a = new LinkedHashMap<>();
+        a.put("model", "gpt-4.1");
+        a.put("input", List.of(Map.of("role", "user", "content", "ctx")));
+        a.put("temperature", 0.7);
+        a.put("prompt_cache_key", "session-1");
+
+        Map<String, Object> b = new HashMap<>();
+        b.put("temperature", 0.7);
+        b.put("input", List.of(Map.of("content", "ctx", "role", "user")));
+        b.put("model", "gpt-4.1");
+        b.put("prompt_cache_key", "session-2");
+        b.put("stream", true);
+
+        Assertions.assertEquals(cache.fingerprint(a), cache.fingerprint(b));
+
+        b.put("model", "gpt-4.1-mini");
+        Assertions.assertNotEquals(cache.fingerprint(a), cache.fingerprint(b));
+    }
+
+    @Test
+    void servesFromDiskAfterRestartWithoutCountingTokensAgain() {
+        CompletionCache first = new CompletionCache(props(), registry);
+        String key = first.fingerprint(Map.of("model", "gpt-4.1", "input", "prompt"));
+        first.put(key, new OpenAiCompletion("{\"narration\":\"Il était une fois\"}", new TokenUsage(1000, 800, 300)));
+
+        CompletionCache restarted = new CompletionCache(props(), registry);
+        OpenAiCompletion hit = restarted.get("segment", key).orElseThrow();
+
+        Assertions.assertEquals("{\"narration\":\"Il était une fois\"}", hit.text());
+        Assertions.assertEquals(TokenUsage.ZERO, hit.usage());
+        Assertions.assertEquals(1.0, registry.counter("openai.completion.cache", "workload", "segment", "result", "disk").count());
+        Assertions.assertEquals(1300.0, registry.counter("openai.tokens.saved", "workload", "segment").count());
+    }
+
+    private CompletionCacheProperties props() {
+        CompletionCacheProperties props = new CompletionCacheProperties();
+        props.getDisk().setDir(dir.toString());
+        return props;
+    }
+}
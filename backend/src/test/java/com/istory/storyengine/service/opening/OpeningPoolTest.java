@@ -0,0 +1,137 @@
+package com.istory.storyengine.service.opening;
+
+import com.istory.storyengine.dto.StartStoryRequest;
+import com.istory.storyengine.model.Choice;
+import com.istory.storyengine.model.StorySegment;
+import com.istory.storyengine.model.StorySession;
+import com.istory.storyengine.model.Utterance;
+import com.istory.storyengine.service.GeneratedSegment;
+import com.istory.storyengine.service.OpeningGenerator;
+import com.istory.storyengine.service.openai.OpenAiProperties;
+import com.istory.storyengine.service.openai.TokenUsage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class OpeningPoolTest {
+
+    private final OpeningPoolProperties props = new OpeningPoolProperties();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final OpenAiProperties openAiProps = new OpenAiProperties();
+    private final OpeningGenerator generator = mock(OpeningGenerator.class);
+
+    private final OpeningPool pool = new OpeningPool(generator, props, openAiProps, registry);
+
+    @BeforeEach
+    void setUp() {
+        // pas de remplissage : on ne teste que le routage et la personnalisation
+        props.setEnabled(true);
+        props.setSizePerBucket(0);
+        openAiProps.setApiKey("sk-test");
+        pool.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.stop();
+    }
+
+    @Test
+    void routesPlainRequestsToTheirBucket() {
+        var bucket = pool.bucketFor(request(8, "mystere", 8, null));
+
+        Assertions.assertTrue(bucket.isPresent());
+        Assertions.assertEquals(OpeningPool.AgeBand.YOUNG, bucket.get().ageBand());
+        Assertions.assertEquals("mystere", bucket.get().theme());
+    }
+
+    @Test
+    void customOrUnpooledRequestsAreIneligible() {
+        Assertions.assertTrue(pool.bucketFor(request(8, "Aventure", 8, "Calme et drôle")).isEmpty());
+        Assertions.assertTrue(pool.bucketFor(request(8, "Dinosaures", 8, null)).isEmpty());
+        Assertions.assertTrue(pool.bucketFor(request(8, "Aventure", 12, null)).isEmpty());
+    }
+
+    @Test
+    void emptyBucketIsAMiss() {
+        var opening = pool.take(request(10, "Espace", 8, null), new StorySession());
+
+        Assertions.assertTrue(opening.isEmpty());
+        Assertions.assertEquals(1.0, registry.counter("story.opening.pool.requests", "result", "miss").count());
+    }
+
+    @Test
+    void blankApiKeyNeverRefills() {
+        OpeningPoolProperties enabled = new OpeningPoolProperties();
+        enabled.setEnabled(true);
+        OpeningGenerator idle = mock(OpeningGenerator.class);
+        OpeningPool withoutKey = new OpeningPool(idle, enabled, new OpenAiProperties(), registry);
+
+        withoutKey.start();
+        try {
+            verify(idle, after(300).never()).newSession(any());
+            Assertions.assertTrue(withoutKey.bucketFor(request(8, "Aventure", 8, null)).isPresent());
+        } finally {
+            withoutKey.stop();
+        }
+    }
+
+    @Test
+    void personalizeReplacesPlaceholderEverywhere() throws Exception {
+        StorySegment segment = new StorySegment();
+        segment.setNarration("{PRENOM} ouvre la porte.");
+        Choice c = new Choice();
+        c.setId("A");
+        c.setText("{PRENOM} entre");
+        segment.setChoices(List.of(c));
+        segment.setUtterances(List.of(new Utterance("HERO", "CHILD", "NEUTRAL", "Je suis {PRENOM} !")));
+
+        var opening = new OpeningGenerator.Opening(
+                "Le secret de {PRENOM}",
+                new GeneratedSegment(segment, "{}", TokenUsage.ZERO));
+
+        var personalized = pool.personalize(opening, "Léa");
+
+        Assertions.assertEquals("Le secret de Léa", personalized.title());
+        Assertions.assertEquals("Léa ouvre la porte.", personalized.firstSegment().segment().getNarration());
+        Assertions.assertEquals("Léa entre", personalized.firstSegment().segment().getChoices().get(0).getText());
+        Assertions.assertTrue(personalized.firstSegment().segmentJson().contains("Je suis Léa !"));
+        Assertions.assertFalse(personalized.firstSegment().segmentJson().contains("PRENOM"));
+    }
+
+    @Test
+    void heroNamedByPlaceholderSpeaksAsHero() throws Exception {
+        StorySegment segment = new StorySegment();
+        segment.setNarration("{PRENOM} sourit.");
+        segment.setUtterances(List.of(
+                new Utterance("{PRENOM}", "CHILD", "NEUTRAL", "On y va !"),
+                new Utterance("Le renard", "ADULT", "MALE", "Suis-moi, {PRENOM}.")));
+
+        var personalized = pool.personalize(new OpeningGenerator.Opening(
+                "La forêt", new GeneratedSegment(segment, "{}", TokenUsage.ZERO)), "Léa");
+
+        List<Utterance> utterances = personalized.firstSegment().segment().getUtterances();
+        Assertions.assertEquals("HERO", utterances.get(0).getSpeaker());
+        Assertions.assertEquals("Le renard", utterances.get(1).getSpeaker());
+        Assertions.assertEquals("Suis-moi, Léa.", utterances.get(1).getText());
+        Assertions.assertFalse(personalized.firstSegment().segmentJson().contains("PRENOM"));
+    }
+
+    @Test
+    void detectsRewrittenPlaceholder() {
+        Assertions.assertFalse(OpeningPool.hasStrayPlaceholder("Bonjour {PRENOM} !"));
+        Assertions.assertTrue(OpeningPool.hasStrayPlaceholder("Bonjour Prenom !"));
+    }
+
+    private static StartStoryRequest request(int age, String theme, int chapters, String tone) {
+        return new StartStoryRequest(age, "Léa", theme, chapters, null, null, null, tone);
+    }
+}
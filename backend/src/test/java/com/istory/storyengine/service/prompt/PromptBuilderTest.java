@@ -5,6 +5,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+
 class PromptBuilderTest {
 
     private final PromptBuilder builder = new PromptBuilder();
@@ -16,8 +18,17 @@ class PromptBuilderTest {
                 8,
                 "Jeune explorateur",
                 "Forêt mystérieuse",
+                8,
+                8,
+                "Un enfant héroïque",
+                "Une forêt",
                 "Aider quelqu’un en danger",
                 "Aventure bienveillante",
+                "Le secret du chêne",
+                "seed-1",
+                "conte",
+                "theme=forêt",
+                List.of("renard blessé"),
                 0,
                 0,
                 "Début de l'histoire",
@@ -37,4 +48,23 @@ class PromptBuilderTest {
         Assertions.assertEquals(8, root.path("storyContext").path("targetAge").asInt());
         Assertions.assertEquals(0, root.path("storyState").path("segmentIndex").asInt());
     }
+
+    @Test
+    void sessionContextIsIdenticalAcrossTurns() {
+        PromptUser first = turn(0, null, "Début de l'histoire");
+        PromptUser later = turn(7, "Le secret du chêne", "Le héros a choisi une voie juste");
+
+        SegmentPrompt a = builder.buildSegmentPrompt(first);
+        SegmentPrompt b = builder.buildSegmentPrompt(later);
+
+        // préfixe cachable : octet pour octet identique
+        Assertions.assertEquals(a.contextJson(), b.contextJson());
+        Assertions.assertEquals(a.cacheKey(), b.cacheKey());
+        Assertions.assertNotEquals(a.stateJson(), b.stateJson());
+    }
+
+    private static PromptUser turn(int segmentIndex, String title, String lastChoiceSummary) {
+        return new PromptUser(8, "Lina", "espace", 8, 8, "Lina", "Une station", "Réparer", "Drôle", title,
+                "seed-1", "dialogue", "theme=espace", List.of("forêt"), segmentIndex, 0, lastChoiceSummary, false);
+    }
 }
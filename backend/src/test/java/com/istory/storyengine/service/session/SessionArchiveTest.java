@@ -0,0 +1,66 @@
+package com.istory.storyengine.service.session;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.istory.storyengine.model.StoryNode;
+import com.istory.storyengine.model.StorySession;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+class SessionArchiveTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void appendsOneGzipMemberPerSessionReadableAsASingleStream() throws Exception {
+        LifecycleProperties props = new LifecycleProperties();
+        props.getArchive().setDir(dir.toString());
+        SessionArchive archive = new SessionArchive(props);
+
+        long first = archive.append(session("Léa"), List.of(node(0), node(1)));
+        long second = archive.append(session("Tom"), List.of());
+
+        Assertions.assertTrue(first > 0 && second > 0);
+
+        Path file;
+        try (var files = Files.list(dir)) {
+            file = files.findFirst().orElseThrow();
+        }
+        List<String> lines;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            lines = reader.lines().toList();
+        }
+
+        Assertions.assertEquals(2, lines.size());
+        JsonNode record = new ObjectMapper().readTree(lines.get(0));
+        Assertions.assertEquals("Léa", record.path("session").path("playerName").asText());
+        Assertions.assertEquals(2, record.path("nodes").size());
+        Assertions.assertFalse(record.path("session").path("lastActivityAt").asText().isBlank());
+    }
+
+    private static StorySession session(String playerName) {
+        StorySession s = new StorySession();
+        s.setId(UUID.randomUUID());
+        s.setPlayerName(playerName);
+        s.setLastActivityAt(Instant.now());
+        return s;
+    }
+
+    private static StoryNode node(int index) {
+        return StoryNode.builder().segmentIndex(index).segmentJson("{\"narration\":\"...\"}")
+                .createdAt(Instant.now()).moralSegment(true).build();
+    }
+}
@@ -0,0 +1,96 @@
+package com.istory.storyengine.service.session;
+
+import com.istory.storyengine.model.StorySession;
+import com.istory.storyengine.repository.StoryNodeRepository;
+import com.istory.storyengine.repository.StorySessionRepository;
+import com.istory.storyengine.service.SessionGate;
+import com.istory.storyengine.service.speculation.SpeculativeSegmentEngine;
+import com.istory.storyengine.service.tts.AudioPrefetcher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SessionLifecycleManagerTest {
+
+    private final StorySessionRepository sessionRepository = mock(StorySessionRepository.class);
+    private final StoryNodeRepository nodeRepository = mock(StoryNodeRepository.class);
+    private final SessionStore sessionStore = mock(SessionStore.class);
+    private final LifecycleProperties props = new LifecycleProperties();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final SessionLifecycleManager manager = new SessionLifecycleManager(
+            sessionRepository, nodeRepository, sessionStore, mock(SessionArchive.class), new SessionGate(registry),
+            mock(SpeculativeSegmentEngine.class), mock(AudioPrefetcher.class), props, registry);
+
+    private final UUID oldest = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        props.getArchive().setEnabled(false);
+        props.setMaxStoredBytes(DataSize.ofMegabytes(1));
+
+        // peu de lignes, bien en dessous de maxSessions / maxNodes
+        when(sessionRepository.count()).thenReturn(2L);
+        when(nodeRepository.count()).thenReturn(10L);
+        when(sessionRepository.findLeastRecentlyActiveIds(any())).thenReturn(List.of(oldest));
+
+        StorySession session = new StorySession();
+        session.setId(oldest);
+        when(sessionStore.find(oldest)).thenReturn(Optional.of(session));
+    }
+
+    @Test
+    void heavyNodesTriggerEvictionEvenUnderTheRowCeilings() {
+        // 10 segments de 256 Ko : 2,5 Mo pour 10 lignes ; après éviction, on repasse sous le plafond
+        when(nodeRepository.sumStoredSegmentBytes()).thenReturn(10L * 256 * 1024, 100L);
+        when(nodeRepository.sumStoredSegmentBytes(oldest)).thenReturn(10L * 256 * 1024);
+
+        manager.sweep();
+
+        verify(sessionStore).delete(oldest);
+        Assertions.assertEquals(1.0, registry.counter("story.sessions.expired", "reason", "ceiling").count());
+        // octets rendus lus sur la colonne stockée
+        Assertions.assertTrue(registry.counter("story.sessions.reclaimed.bytes").count() >= 10L * 256 * 1024);
+    }
+
+    @Test
+    void writeBehindIsFlushedOncePerSweepNotPerSession() {
+        UUID other = UUID.randomUUID();
+        StorySession otherSession = new StorySession();
+        otherSession.setId(other);
+        when(sessionStore.find(other)).thenReturn(Optional.of(otherSession));
+        when(sessionRepository.findLeastRecentlyActiveIds(any())).thenReturn(List.of(oldest, other));
+        when(nodeRepository.sumStoredSegmentBytes()).thenReturn(10L * 256 * 1024, 100L);
+
+        manager.sweep();
+
+        verify(sessionStore).delete(oldest);
+        verify(sessionStore).delete(other);
+        verify(sessionStore, times(1)).flushPending();
+    }
+
+    @Test
+    void underTheByteCeilingNothingIsEvicted() {
+        when(nodeRepository.sumStoredSegmentBytes()).thenReturn(64L * 1024);
+
+        manager.sweep();
+
+        verify(sessionStore, never()).delete(any());
+    }
+
+    @Test
+    void byteCeilingDefaultsToAQuarterOfTheHeap() {
+        props.setMaxStoredBytes(null);
+
+        Assertions.assertEquals(Runtime.getRuntime().maxMemory() / 4, manager.maxStoredBytes());
+    }
+}
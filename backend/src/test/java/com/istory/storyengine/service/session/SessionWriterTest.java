@@ -0,0 +1,152 @@
+package com.istory.storyengine.service.session;
+
+import com.istory.storyengine.model.StoryNode;
+import com.istory.storyengine.model.StorySession;
+import com.istory.storyengine.repository.StoryNodeRepository;
+import com.istory.storyengine.repository.StorySessionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SessionWriterTest {
+
+    private final StorySessionRepository sessionRepository = mock(StorySessionRepository.class);
+    private final StoryNodeRepository nodeRepository = mock(StoryNodeRepository.class);
+    private final PersistenceProperties props = new PersistenceProperties();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final SessionWriter writer = new SessionWriter(
+            sessionRepository, nodeRepository, mock(PlatformTransactionManager.class), props, registry);
+
+    @Test
+    void syncWritesSessionAndNodeInOneFlush() {
+        StorySession session = session();
+        when(sessionRepository.save(any())).thenReturn(session);
+
+        writer.write(session, node(session.getId(), 1));
+
+        verify(sessionRepository).save(session);
+        verify(nodeRepository).save(any());
+        Assertions.assertEquals(1.0, registry.counter("story.persistence.flushes", "mode", "sync").count());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void asyncCollapsesUpdatesOfOneSessionIntoOneBatch() {
+        props.setDurability(PersistenceProperties.Durability.ASYNC);
+        StorySession session = session();
+
+        session.setCurrentSegmentIndex(1);
+        StoryNode first = node(session.getId(), 1);
+        writer.write(session, first);
+        session.setCurrentSegmentIndex(2);
+        writer.write(session, node(session.getId(), 2));
+
+        // en attente mais lisible
+        Assertions.assertEquals(2, writer.pendingSession(session.getId()).orElseThrow().getCurrentSegmentIndex());
+        Assertions.assertTrue(writer.pendingNode(first.getId()).isPresent());
+        Assertions.assertTrue(writer.pendingChild(first.getParentNodeId(), "a").isPresent());
+        verifyNoInteractions(sessionRepository, nodeRepository);
+
+        writer.flush();
+
+        ArgumentCaptor<Iterable<StorySession>> sessions = ArgumentCaptor.forClass(Iterable.class);
+        ArgumentCaptor<Iterable<StoryNode>> nodes = ArgumentCaptor.forClass(Iterable.class);
+        verify(sessionRepository).saveAll(sessions.capture());
+        verify(nodeRepository).saveAll(nodes.capture());
+
+        List<StorySession> written = List.copyOf((Collection<StorySession>) sessions.getValue());
+        Assertions.assertEquals(1, written.size());
+        Assertions.assertEquals(2, written.get(0).getCurrentSegmentIndex());
+        Assertions.assertEquals(2, ((List<StoryNode>) nodes.getValue()).size());
+        Assertions.assertTrue(writer.pendingSession(session.getId()).isEmpty());
+    }
+
+    @Test
+    void asyncFailureKeepsTheBatchPending() {
+        props.setDurability(PersistenceProperties.Durability.ASYNC);
+        StorySession session = session();
+        StoryNode node = node(session.getId(), 1);
+        writer.write(session, node);
+        when(nodeRepository.saveAll(any())).thenThrow(new RuntimeException("db down"));
+
+        Assertions.assertThrows(RuntimeException.class, writer::flush);
+
+        Assertions.assertTrue(writer.pendingSession(session.getId()).isPresent());
+        Assertions.assertTrue(writer.pendingNode(node.getId()).isPresent());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void poisonRowIsDroppedAfterMaxAttemptsAndTheRestIsWritten() {
+        props.setDurability(PersistenceProperties.Durability.ASYNC);
+        StorySession session = session();
+        StoryNode ok1 = node(session.getId(), 1);
+        StoryNode poison = node(session.getId(), 2);
+        StoryNode ok2 = node(session.getId(), 3);
+        writer.write(session, ok1);
+        writer.write(session, poison);
+        writer.write(session, ok2);
+
+        List<StoryNode> written = new ArrayList<>();
+        when(nodeRepository.saveAll(any())).thenAnswer(inv -> {
+            List<StoryNode> nodes = List.copyOf((Collection<StoryNode>) inv.getArgument(0));
+            if (nodes.contains(poison)) throw new DataIntegrityViolationException("uk_story_node_parent_choice");
+            written.addAll(nodes);
+            return nodes;
+        });
+
+        for (int i = 1; i < props.getMaxFlushAttempts(); i++) {
+            Assertions.assertThrows(DataIntegrityViolationException.class, writer::flush);
+            Assertions.assertTrue(writer.pendingNode(ok1.getId()).isPresent());
+        }
+        writer.flush();
+
+        Assertions.assertEquals(List.of(ok1, ok2), written);
+        Assertions.assertTrue(writer.pendingNode(poison.getId()).isEmpty());
+        Assertions.assertTrue(writer.pendingSession(session.getId()).isEmpty());
+        Assertions.assertEquals(1.0, registry.counter("story.persistence.dropped", "type", "node").count());
+        Assertions.assertEquals(0.0, registry.counter("story.persistence.dropped", "type", "session").count());
+    }
+
+    @Test
+    void unavailableDatabaseNeverDropsRows() {
+        props.setDurability(PersistenceProperties.Durability.ASYNC);
+        StorySession session = session();
+        StoryNode node = node(session.getId(), 1);
+        writer.write(session, node);
+        when(nodeRepository.saveAll(any())).thenThrow(new DataAccessResourceFailureException("db down"));
+
+        for (int i = 0; i < props.getMaxFlushAttempts() * 2; i++) {
+            Assertions.assertThrows(DataAccessResourceFailureException.class, writer::flush);
+        }
+
+        Assertions.assertTrue(writer.pendingNode(node.getId()).isPresent());
+        Assertions.assertEquals(0.0, registry.counter("story.persistence.dropped", "type", "node").count());
+    }
+
+    private static StorySession session() {
+        StorySession s = new StorySession();
+        s.setId(UUID.randomUUID());
+        return s;
+    }
+
+    private static StoryNode node(UUID sessionId, int index) {
+        return StoryNode.builder().id(UUID.randomUUID()).sessionId(sessionId)
+                .parentNodeId(UUID.randomUUID()).choiceId("A")
+                .segmentIndex(index).segmentJson("{}").createdAt(Instant.now()).build();
+    }
+}
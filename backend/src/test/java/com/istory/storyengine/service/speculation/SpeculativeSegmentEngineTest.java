@@ -0,0 +1,183 @@
+package com.istory.storyengine.service.speculation;
+
+import com.istory.storyengine.model.Choice;
+import com.istory.storyengine.model.StorySegment;
+import com.istory.storyengine.model.StorySession;
+import com.istory.storyengine.service.GeneratedSegment;
+import com.istory.storyengine.service.SegmentGenerator;
+import com.istory.storyengine.service.openai.TokenUsage;
+import com.istory.storyengine.service.prompt.PromptUser;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SpeculativeSegmentEngineTest {
+
+    private final SegmentGenerator generator = mock(SegmentGenerator.class);
+    private final SpeculationProperties props = new SpeculationProperties();
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final SpeculativeSegmentEngine engine = new SpeculativeSegmentEngine(generator, props, executor, registry);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void servesMatchingChoiceAndDropsTheRest() throws Exception {
+        StorySession session = session();
+        when(generator.promptFor(any(), anyInt(), anyInt(), anyString(), anyBoolean()))
+                .thenAnswer(inv -> promptUser(inv.getArgument(4)));
+        when(generator.generate(any()))
+                .thenAnswer(inv -> {
+                    PromptUser p = inv.getArgument(0);
+                    StorySegment s = new StorySegment();
+                    s.setEnded(p.isFailureImminent());
+                    return new GeneratedSegment(s, "{}", new TokenUsage(80, 0, 20));
+                });
+
+        engine.speculate(session, segment(), List.of());
+        // toutes démarrées (une suite encore en file serait annulée au take)
+        verify(generator, timeout(1_000).times(4)).generate(any());
+
+        Optional<GeneratedSegment> immoral = engine.take(session.getId(), 3, "a");
+        Assertions.assertTrue(immoral.isPresent());
+        Assertions.assertTrue(immoral.get().segment().isEnded(), "immoral choice must lead to the ending segment");
+
+        verify(generator, times(4)).generate(any());
+        Assertions.assertEquals(1.0, registry.counter("story.speculation.requests", "result", "hit").count());
+
+        // le lot a été consommé : un second take est un miss
+        Assertions.assertTrue(engine.take(session.getId(), 3, "B").isEmpty());
+        Assertions.assertEquals(1.0, registry.counter("story.speculation.requests", "result", "miss").count());
+    }
+
+    @Test
+    void skipsWhenTokenBudgetIsExhausted() {
+        props.setTokenBudgetPerMinute(1_000);
+
+        engine.speculate(session(), segment(), List.of());
+
+        verifyNoInteractions(generator);
+        Assertions.assertEquals(1.0, registry.counter("story.speculation.skipped", "reason", "budget").count());
+    }
+
+    @Test
+    void burstIsBoundedByReservationsNotByCompletedUsage() throws Exception {
+        // budget d'un seul lot de 4 : le second est refusé alors qu'aucune génération n'est terminée
+        props.setTokenBudgetPerMinute(4 * props.getEstimatedTokensPerSegment());
+        CountDownLatch release = new CountDownLatch(1);
+        when(generator.promptFor(any(), anyInt(), anyInt(), anyString(), anyBoolean()))
+                .thenAnswer(inv -> promptUser(inv.getArgument(4)));
+        when(generator.generate(any())).thenAnswer(inv -> {
+            release.await();
+            return new GeneratedSegment(new StorySegment(), "{}", new TokenUsage(80, 0, 20));
+        });
+
+        engine.speculate(session(), segment(), List.of());
+        engine.speculate(session(), segment(), List.of());
+
+        Assertions.assertEquals(1.0, registry.counter("story.speculation.skipped", "reason", "budget").count());
+        release.countDown();
+    }
+
+    @Test
+    void cancelledSpeculationGivesItsReservationBack() {
+        props.setTokenBudgetPerMinute(4 * props.getEstimatedTokensPerSegment());
+        ExecutorService idle = Executors.newSingleThreadExecutor();
+        idle.submit(() -> { Thread.sleep(5_000); return null; });
+        SpeculativeSegmentEngine queued = new SpeculativeSegmentEngine(generator, props, idle, registry);
+        StorySession session = session();
+        when(generator.promptFor(any(), anyInt(), anyInt(), anyString(), anyBoolean()))
+                .thenAnswer(inv -> promptUser(inv.getArgument(4)));
+
+        try {
+            queued.speculate(session, segment(), List.of());
+
+            // encore en file : annulée, le choose() repart en live sans attendre
+            Assertions.assertTrue(queued.take(session.getId(), 3, "A").isEmpty());
+            Assertions.assertEquals(1.0, registry.counter("story.speculation.requests", "result", "queued").count());
+
+            // les 4 réservations sont rendues : un nouveau lot passe
+            queued.speculate(session, segment(), List.of());
+            Assertions.assertEquals(0.0, registry.counter("story.speculation.skipped", "reason", "budget").count());
+        } finally {
+            idle.shutdownNow();
+        }
+    }
+
+    @Test
+    void takeWaitsForARunningSpeculationAtMostMaxTakeWait() throws Exception {
+        props.setMaxTakeWait(Duration.ofMillis(100));
+        StorySession session = session();
+        when(generator.promptFor(any(), anyInt(), anyInt(), anyString(), anyBoolean()))
+                .thenAnswer(inv -> promptUser(inv.getArgument(4)));
+        when(generator.generate(any())).thenAnswer(inv -> {
+            Thread.sleep(5_000);
+            return new GeneratedSegment(new StorySegment(), "{}", TokenUsage.ZERO);
+        });
+
+        engine.speculate(session, segment(), List.of());
+        verify(generator, timeout(1_000).times(4)).generate(any());
+
+        long start = System.nanoTime();
+        Assertions.assertTrue(engine.take(session.getId(), 3, "A").isEmpty());
+        Assertions.assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 2_000);
+        Assertions.assertEquals(1.0, registry.counter("story.speculation.requests", "result", "timeout").count());
+    }
+
+    @Test
+    void excludedChoicesAreNotGenerated() throws Exception {
+        StorySession session = session();
+        when(generator.promptFor(any(), anyInt(), anyInt(), anyString(), anyBoolean()))
+                .thenAnswer(inv -> promptUser(inv.getArgument(4)));
+        when(generator.generate(any())).thenReturn(new GeneratedSegment(new StorySegment(), "{}", new TokenUsage(8, 0, 2)));
+
+        engine.speculate(session, segment(), List.of("A"));
+
+        Assertions.assertTrue(engine.take(session.getId(), 3, "A").isEmpty());
+        verify(generator, times(3)).promptFor(any(), anyInt(), anyInt(), anyString(), anyBoolean());
+    }
+
+    private static StorySession session() {
+        StorySession session = new StorySession();
+        session.setId(UUID.randomUUID());
+        session.setCurrentSegmentIndex(3);
+        session.setPlayerName("Lina");
+        return session;
+    }
+
+    private static StorySegment segment() {
+        StorySegment segment = new StorySegment();
+        segment.setChoices(List.of(choice("A"), choice("B"), choice("C"), choice("D")));
+        segment.setMoralChoiceIds(Set.of("B", "D"));
+        return segment;
+    }
+
+    private static Choice choice(String id) {
+        Choice c = new Choice();
+        c.setId(id);
+        c.setText("Choix " + id);
+        return c;
+    }
+
+    private static PromptUser promptUser(boolean failureImminent) {
+        return new PromptUser(8, "Lina", "espace", 8, 8, "", "", "", "", "", "seed", "", "", List.of(),
+                4, 0, "", failureImminent);
+    }
+}
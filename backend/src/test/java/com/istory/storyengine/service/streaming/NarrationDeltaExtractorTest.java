@@ -0,0 +1,28 @@
+package com.istory.storyengine.service.streaming;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class NarrationDeltaExtractorTest {
+
+    @Test
+    void emitsNarrationAcrossChunks() {
+        NarrationDeltaExtractor extractor = new NarrationDeltaExtractor();
+        StringBuilder out = new StringBuilder();
+
+        for (String chunk : new String[]{"{\"narr", "ation\": \"Il était ", "une fois\\", "n Lina dit : \\\"Bon", "jour\\\"\\u00e9", "\", \"choices\": []}"}) {
+            out.append(extractor.feed(chunk));
+        }
+
+        Assertions.assertEquals("Il était une fois\nLina dit : \"Bonjour\"é", out.toString());
+        Assertions.assertTrue(extractor.isDone());
+    }
+
+    @Test
+    void ignoresOtherFieldsAfterNarration() {
+        NarrationDeltaExtractor extractor = new NarrationDeltaExtractor();
+
+        Assertions.assertEquals("OK", extractor.feed("{\"narration\":\"OK\",\"explanation\":\"non\"}"));
+        Assertions.assertEquals("", extractor.feed("{\"narration\":\"encore\"}"));
+    }
+}
@@ -0,0 +1,85 @@
+package com.istory.storyengine.service.tts;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+class AudioDurationTest {
+
+    @Test
+    void mp3DurationIsTheSumOfItsFramesAfterTheId3Tag() {
+        ByteArrayOutputStream clip = new ByteArrayOutputStream();
+        // ID3v2 de 20 octets de contenu
+        clip.writeBytes(new byte[]{'I', 'D', '3', 4, 0, 0, 0, 0, 0, 20});
+        clip.writeBytes(new byte[20]);
+        // MPEG-1 Layer III, 128 kbps, 44,1 kHz, sans padding : 417 octets, 1152 échantillons
+        for (int i = 0; i < 100; i++) {
+            byte[] frame = new byte[417];
+            frame[0] = (byte) 0xff;
+            frame[1] = (byte) 0xfb;
+            frame[2] = (byte) 0x90;
+            clip.writeBytes(frame);
+        }
+
+        double seconds = AudioDuration.seconds(AudioFormat.MP3, ByteBuffer.wrap(clip.toByteArray())).orElseThrow();
+
+        Assertions.assertEquals(100 * 1152 / 44100.0, seconds, 1e-9);
+    }
+
+    @Test
+    void aacDurationCountsAdtsBlocks() {
+        ByteArrayOutputStream clip = new ByteArrayOutputStream();
+        // 24 kHz (index 6), trames de 200 octets, 1 bloc de 1024 échantillons
+        for (int i = 0; i < 30; i++) {
+            byte[] frame = new byte[200];
+            frame[0] = (byte) 0xff;
+            frame[1] = (byte) 0xf1;
+            frame[2] = (byte) (6 << 2);
+            frame[3] = (byte) ((200 >> 11) & 0x3);
+            frame[4] = (byte) ((200 >> 3) & 0xff);
+            frame[5] = (byte) ((200 & 0x7) << 5);
+            clip.writeBytes(frame);
+        }
+
+        double seconds = AudioDuration.seconds(AudioFormat.AAC, ByteBuffer.wrap(clip.toByteArray())).orElseThrow();
+
+        Assertions.assertEquals(30 * 1024 / 24000.0, seconds, 1e-9);
+    }
+
+    @Test
+    void opusDurationComesFromTheLastGranuleMinusPreSkip() {
+        ByteArrayOutputStream clip = new ByteArrayOutputStream();
+        ByteBuffer head = ByteBuffer.allocate(19).order(ByteOrder.LITTLE_ENDIAN);
+        head.put("OpusHead".getBytes(StandardCharsets.US_ASCII)).put((byte) 1).put((byte) 1).putShort((short) 312);
+        clip.writeBytes(oggPage(0, head.array()));
+        clip.writeBytes(oggPage(0, "OpusTags".getBytes(StandardCharsets.US_ASCII)));
+        clip.writeBytes(oggPage(48_000, new byte[100]));
+        clip.writeBytes(oggPage(96_312, new byte[100]));
+
+        double seconds = AudioDuration.seconds(AudioFormat.OPUS, ByteBuffer.wrap(clip.toByteArray())).orElseThrow();
+
+        Assertions.assertEquals(2.0, seconds, 1e-9);
+    }
+
+    @Test
+    void unknownContentHasNoDuration() {
+        byte[] junk = "ID3Bonjour".getBytes(StandardCharsets.UTF_8);
+
+        for (AudioFormat format : AudioFormat.values()) {
+            Assertions.assertTrue(AudioDuration.seconds(format, ByteBuffer.wrap(junk)).isEmpty(), format.name());
+        }
+    }
+
+    private static byte[] oggPage(long granule, byte[] payload) {
+        ByteBuffer page = ByteBuffer.allocate(27 + 1 + payload.length).order(ByteOrder.LITTLE_ENDIAN);
+        page.put("OggS".getBytes(StandardCharsets.US_ASCII)).put((byte) 0).put((byte) 0)
+                .putLong(granule).putInt(1).putInt(0).putInt(0)
+                .put((byte) 1).put((byte) payload.length)
+                .put(payload);
+        return page.array();
+    }
+}
@@ -0,0 +1,40 @@
+package com.istory.storyengine.service.tts;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class AudioFormatTest {
+
+    @Test
+    void explicitParameterWins() {
+        Assertions.assertEquals(AudioFormat.OPUS, AudioFormat.negotiate("OPUS", "audio/mpeg"));
+    }
+
+    @Test
+    void acceptHeaderIsReadByQuality() {
+        Assertions.assertEquals(AudioFormat.OPUS, AudioFormat.negotiate(null, "audio/mpeg;q=0.5, audio/ogg"));
+        Assertions.assertEquals(AudioFormat.AAC, AudioFormat.negotiate(null, "audio/aac, audio/mpeg;q=0.9"));
+    }
+
+    @Test
+    void nonAudioTypesOfTheResponseAreSkipped() {
+        // /segment (trames) et /manifest (JSON) : le type de la réponse passe avant le format des clips
+        Assertions.assertEquals(AudioFormat.OPUS,
+                AudioFormat.negotiate(null, AudioFrames.MEDIA_TYPE + ", audio/ogg;q=0.9"));
+        Assertions.assertEquals(AudioFormat.AAC, AudioFormat.negotiate(null, "application/json, audio/aac"));
+        Assertions.assertEquals(AudioFormat.MP3, AudioFormat.negotiate(null, "application/json"));
+    }
+
+    @Test
+    void existingClientsKeepMp3() {
+        Assertions.assertEquals(AudioFormat.MP3, AudioFormat.negotiate(null, null));
+        Assertions.assertEquals(AudioFormat.MP3, AudioFormat.negotiate(null, "*/*"));
+        Assertions.assertEquals(AudioFormat.MP3, AudioFormat.negotiate(null, "audio/*"));
+        Assertions.assertEquals(AudioFormat.MP3, AudioFormat.negotiate(null, "not a media type"));
+    }
+
+    @Test
+    void unknownFormatIsRejected() {
+        Assertions.assertThrows(IllegalStateException.class, () -> AudioFormat.negotiate("flac", null));
+    }
+}
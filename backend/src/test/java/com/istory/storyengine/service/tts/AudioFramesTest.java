@@ -0,0 +1,73 @@
+package com.istory.storyengine.service.tts;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+class AudioFramesTest {
+
+    @Test
+    void writesFramesInPlaybackOrderWhateverTheCompletionOrder() throws Exception {
+        CompletableFuture<AudioClip> first = new CompletableFuture<>();
+        CompletableFuture<AudioClip> second = CompletableFuture.completedFuture(clip("bb"));
+        CompletableFuture<AudioClip> third = CompletableFuture.failedFuture(new RuntimeException("upstream"));
+
+        // le premier clip termine en dernier
+        CompletableFuture.runAsync(() -> first.complete(clip("a")));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // la ligne 1 est une narration découpée en deux morceaux
+        AudioFrames.write(List.of(
+                new AudioPart(0, first),
+                new AudioPart(1, second),
+                new AudioPart(1, CompletableFuture.completedFuture(clip("c"))),
+                new AudioPart(2, third),
+                new AudioPart(3, CompletableFuture.completedFuture(AudioClip.EMPTY))
+        ), out);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        assertFrame(in, 0, "a");
+        assertFrame(in, 1, "bb");
+        assertFrame(in, 1, "c");
+        Assertions.assertEquals(2, in.readInt());
+        Assertions.assertEquals(AudioFrames.FAILED, in.readInt());
+        assertFrame(in, 3, "");
+        Assertions.assertEquals(0, in.available());
+    }
+
+    @Test
+    void cancelsRemainingClipsWhenTheClientLeaves() {
+        CompletableFuture<AudioClip> pending = new CompletableFuture<>();
+        List<AudioPart> parts = List.of(
+                new AudioPart(0, CompletableFuture.completedFuture(clip("a"))),
+                new AudioPart(1, pending));
+
+        OutputStream gone = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("broken pipe");
+            }
+        };
+
+        Assertions.assertThrows(IOException.class, () -> AudioFrames.write(parts, gone));
+        Assertions.assertTrue(pending.isCancelled());
+    }
+
+    private static AudioClip clip(String content) {
+        return AudioClip.of(content, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void assertFrame(DataInputStream in, int index, String content) throws IOException {
+        Assertions.assertEquals(index, in.readInt());
+        int length = in.readInt();
+        Assertions.assertEquals(content, new String(in.readNBytes(length), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,44 @@
+package com.istory.storyengine.service.tts;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+class ByteRangeTest {
+
+    @Test
+    void parsesTheThreeSingleRangeForms() {
+        Assertions.assertEquals(Optional.of(new ByteRange(0, 99)), ByteRange.parse("bytes=0-99", 1000));
+        Assertions.assertEquals(Optional.of(new ByteRange(900, 999)), ByteRange.parse("bytes=900-", 1000));
+        Assertions.assertEquals(Optional.of(new ByteRange(950, 999)), ByteRange.parse("bytes=-50", 1000));
+        // fin au-delà du clip : tronquée
+        Assertions.assertEquals(Optional.of(new ByteRange(500, 999)), ByteRange.parse("bytes=500-5000", 1000));
+    }
+
+    @Test
+    void startPastTheEndIsUnsatisfiable() {
+        Assertions.assertEquals(Optional.of(ByteRange.UNSATISFIABLE), ByteRange.parse("bytes=1000-", 1000));
+        Assertions.assertEquals(Optional.of(ByteRange.UNSATISFIABLE), ByteRange.parse("bytes=-0", 1000));
+    }
+
+    @Test
+    void unsupportedHeadersServeTheWholeClip() {
+        Assertions.assertTrue(ByteRange.parse(null, 1000).isEmpty());
+        Assertions.assertTrue(ByteRange.parse("bytes=0-9,20-29", 1000).isEmpty());
+        Assertions.assertTrue(ByteRange.parse("items=0-9", 1000).isEmpty());
+        Assertions.assertTrue(ByteRange.parse("bytes=9-0", 1000).isEmpty());
+    }
+
+    @Test
+    void sliceAndEtagOfAClip() {
+        AudioClip clip = AudioClip.of("k", "ID3 bonjour".getBytes(StandardCharsets.UTF_8));
+        ByteRange range = ByteRange.parse("bytes=4-", clip.size()).orElseThrow();
+
+        Assertions.assertEquals("bonjour", new String(clip.slice(range.start(), range.length()).toByteArray(), StandardCharsets.UTF_8));
+        Assertions.assertEquals("bytes 4-10/11", range.contentRange(clip.size()));
+        Assertions.assertEquals(clip.etag(), AudioClip.of("other", clip.toByteArray()).etag());
+        Assertions.assertNotEquals(clip.etag(), AudioClip.of("k", "ID3 bonsoir".getBytes(StandardCharsets.UTF_8)).etag());
+    }
+}
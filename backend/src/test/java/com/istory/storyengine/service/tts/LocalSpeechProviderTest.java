@@ -0,0 +1,36 @@
+package com.istory.storyengine.service.tts;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+class LocalSpeechProviderTest {
+
+    @Test
+    void outputMatchingTheRequestedFormatIsReturned() {
+        LocalSpeechProvider local = provider("ID3Bonjour");
+
+        byte[] audio = local.synthesize(Map.of("input", "Bonjour", "response_format", "mp3"));
+
+        Assertions.assertArrayEquals("ID3Bonjour".getBytes(StandardCharsets.UTF_8), audio);
+    }
+
+    @Test
+    void outputInAnotherFormatIsRejected() {
+        // moteur configuré pour du mp3 alors que le client attend de l'opus
+        LocalSpeechProvider local = provider("ID3Bonjour");
+
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> local.synthesize(Map.of("input", "Bonjour", "response_format", "opus")));
+    }
+
+    private static LocalSpeechProvider provider(String output) {
+        TtsProviderProperties props = new TtsProviderProperties();
+        // lit le texte sur stdin puis écrit une sortie fixe
+        props.getLocal().setCommand(List.of("sh", "-c", "cat > /dev/null; printf '" + output + "'"));
+        return new LocalSpeechProvider(props);
+    }
+}
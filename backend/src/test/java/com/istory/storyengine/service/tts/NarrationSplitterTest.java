@@ -0,0 +1,40 @@
+package com.istory.storyengine.service.tts;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+class NarrationSplitterTest {
+
+    @Test
+    void shortTextIsLeftUntouched() {
+        Assertions.assertEquals(List.of("Il était une fois.  Un renard."),
+                NarrationSplitter.split("Il était une fois.  Un renard.", 120, 400));
+    }
+
+    @Test
+    void firstChunkIsSmallAndTheRestIsPackedBySentence() {
+        String text = "Léo entre dans la forêt. Les arbres sont immenses. Un vent léger souffle. "
+                + "Il entend un bruit ! Quelque chose bouge derrière un buisson.";
+
+        List<String> chunks = NarrationSplitter.split(text, 30, 60);
+
+        Assertions.assertEquals(List.of(
+                "Léo entre dans la forêt.",
+                "Les arbres sont immenses. Un vent léger souffle.",
+                "Il entend un bruit !",
+                "Quelque chose bouge derrière un buisson."
+        ), chunks);
+    }
+
+    @Test
+    void neverCutsInsideADialogue() {
+        String text = "Le renard s'approche. \"Bonjour. Je m'appelle Roux. Et toi ?\" Léo sourit.";
+
+        List<String> chunks = NarrationSplitter.split(text, 10, 20);
+
+        Assertions.assertTrue(chunks.contains("\"Bonjour. Je m'appelle Roux. Et toi ?\""));
+        Assertions.assertEquals(text, String.join(" ", chunks));
+    }
+}
@@ -0,0 +1,53 @@
+package com.istory.storyengine.service.tts;
+
+import com.istory.storyengine.dto.TtsUtteranceRequest;
+import com.istory.storyengine.model.Choice;
+import com.istory.storyengine.model.StorySegment;
+import com.istory.storyengine.model.Utterance;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+class PlaybackScriptTest {
+
+    @Test
+    void mirrorsTheClientReadingOrder() {
+        StorySegment segment = new StorySegment();
+        segment.setNarration("Léo entre dans la forêt.\n \"Qui est là ?\" demande-t-il. Le renard répond : « C'est moi ! »");
+        segment.setUtterances(List.of(
+                new Utterance("RENARD", "ADULT", "MALE", "C'est moi !"),
+                new Utterance("HERO", "CHILD", "MALE", "Qui est là ?")
+        ));
+        segment.setChoices(List.of(choice("A", "Suivre le renard"), choice("B", " Rentrer ")));
+
+        List<TtsUtteranceRequest> lines = PlaybackScript.of(segment, 1.15);
+
+        Assertions.assertEquals(List.of(
+                new TtsUtteranceRequest("NARRATOR", "ADULT", "NEUTRAL", "Léo entre dans la forêt.", 1.15),
+                new TtsUtteranceRequest("HERO", "CHILD", "MALE", "Qui est là ?", 1.15),
+                new TtsUtteranceRequest("NARRATOR", "ADULT", "NEUTRAL", "demande-t-il. Le renard répond :", 1.15),
+                new TtsUtteranceRequest("RENARD", "ADULT", "MALE", "C'est moi !", 1.15),
+                new TtsUtteranceRequest("CHOICE_NARRATOR", "ADULT", "NEUTRAL", "L'option bleue. Suivre le renard", 1.15),
+                new TtsUtteranceRequest("CHOICE_NARRATOR", "ADULT", "NEUTRAL", "L'option verte. Rentrer", 1.15)
+        ), lines);
+    }
+
+    @Test
+    void quoteWithoutUtteranceIsSpokenByTheHero() {
+        StorySegment segment = new StorySegment();
+        segment.setNarration("\"Bonjour\"");
+
+        TtsUtteranceRequest line = PlaybackScript.of(segment, 1.0).get(0);
+
+        Assertions.assertEquals("HERO", line.speaker());
+        Assertions.assertEquals("CHILD", line.ageGroup());
+    }
+
+    private static Choice choice(String id, String text) {
+        Choice c = new Choice();
+        c.setId(id);
+        c.setText(text);
+        return c;
+    }
+}
@@ -0,0 +1,147 @@
+package com.istory.storyengine.service.tts;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class TtsAudioCacheTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicInteger upstreamCalls = new AtomicInteger();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void sameRequestIsSynthesizedOnce() {
+        TtsAudioCache cache = new TtsAudioCache(props(), registry);
+
+        AudioClip first = cache.get(request("Bonjour Léa"), () -> synthesize("Bonjour Léa"));
+        AudioClip second = cache.get(request("Bonjour Léa"), () -> synthesize("Bonjour Léa"));
+        cache.get(request("Au revoir"), () -> synthesize("Au revoir"));
+
+        Assertions.assertEquals(2, upstreamCalls.get());
+        Assertions.assertArrayEquals(first.toByteArray(), second.toByteArray());
+        Assertions.assertEquals(1.0, registry.counter("tts.cache.requests", "result", "heap").count());
+        Assertions.assertEquals(2.0, registry.counter("tts.cache.requests", "result", "miss").count());
+        Assertions.assertEquals(first.size(), registry.counter("tts.cache.bytes.served", "tier", "heap").count());
+    }
+
+    @Test
+    void clipsSurviveRestartThroughTheDiskTier() {
+        new TtsAudioCache(props(), registry).get(request("Bonjour Léa"), () -> synthesize("Bonjour Léa"));
+
+        TtsAudioCache restarted = new TtsAudioCache(props(), registry);
+        AudioClip clip = restarted.get(request("Bonjour Léa"), () -> synthesize("Bonjour Léa"));
+
+        Assertions.assertEquals(1, upstreamCalls.get());
+        Assertions.assertFalse(clip.data().hasArray(), "disk hits are served from the mapped file");
+        Assertions.assertArrayEquals(synthesizedBytes("Bonjour Léa"), clip.toByteArray());
+        Assertions.assertEquals(1.0, registry.counter("tts.upstream.saved").count());
+    }
+
+    @Test
+    void missIsRelayedChunkByChunkThenServedFromDisk() throws Exception {
+        TtsAudioCache cache = new TtsAudioCache(props(), registry);
+
+        AudioStream live = cache.open(request("Bonjour Léa"), () -> chunked("ID3", "Bonjour", " Léa"));
+        Assertions.assertEquals(-1, live.contentLength(), "relayed without knowing the size: chunked");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        live.writeTo(out);
+        Assertions.assertArrayEquals(synthesizedBytes("Bonjour Léa"), out.toByteArray());
+
+        AudioStream cached = cache.open(request("Bonjour Léa"), () -> Flux.error(new AssertionError("not cached")));
+        Assertions.assertEquals(synthesizedBytes("Bonjour Léa").length, cached.contentLength());
+        Assertions.assertEquals(1.0, registry.counter("tts.cache.requests", "result", "disk").count());
+    }
+
+    @Test
+    void interruptedRelayIsNotCached() {
+        TtsAudioCache cache = new TtsAudioCache(props(), registry);
+
+        AudioStream live = cache.open(request("Bonjour Léa"), () -> chunked("ID3", "Bonjour", " Léa"));
+        OutputStream gone = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("broken pipe");
+            }
+        };
+        Assertions.assertThrows(IOException.class, () -> live.writeTo(gone));
+
+        AudioStream retry = cache.open(request("Bonjour Léa"), () -> chunked("ID3", "Bonjour", " Léa"));
+        Assertions.assertEquals(-1, retry.contentLength());
+        Assertions.assertEquals(2.0, registry.counter("tts.upstream.calls").count());
+    }
+
+    @Test
+    void providerErrorSurfacesBeforeTheResponseIsCommitted() {
+        TtsAudioCache cache = new TtsAudioCache(props(), registry);
+
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> cache.open(request("Bonjour Léa"), () -> Flux.error(new IllegalStateException("429"))));
+    }
+
+    @Test
+    void etagIsStoredWhenTheRelayedClipIsWritten() throws Exception {
+        TtsAudioCache cache = new TtsAudioCache(props(), registry);
+        String key = cache.register(request("Bonjour Léa"));
+        Assertions.assertTrue(cache.etag(key).isEmpty(), "nothing written yet");
+
+        cache.open(request("Bonjour Léa"), () -> chunked("ID3", "Bonjour", " Léa")).writeTo(new ByteArrayOutputStream());
+
+        String expected = AudioClip.of(key, synthesizedBytes("Bonjour Léa")).etag();
+        Assertions.assertEquals(expected, cache.etag(key).orElseThrow());
+        Assertions.assertEquals(0.0, registry.counter("tts.cache.requests", "result", "disk").count(),
+                "the etag is answered without reading the clip back");
+    }
+
+    @Test
+    void fingerprintDoesNotDependOnFieldOrder() {
+        Map<String, Object> a = new LinkedHashMap<>();
+        a.put("model", "tts-1-hd");
+        a.put("voice", "sage");
+        Map<String, Object> b = new LinkedHashMap<>();
+        b.put("voice", "sage");
+        b.put("model", "tts-1-hd");
+
+        Assertions.assertEquals(TtsAudioCache.fingerprint(a), TtsAudioCache.fingerprint(b));
+    }
+
+    private static Flux<DataBuffer> chunked(String... parts) {
+        return Flux.fromArray(parts)
+                .map(p -> DefaultDataBufferFactory.sharedInstance.wrap(p.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private Map<String, Object> request(String text) {
+        return Map.of("model", "tts-1-hd", "voice", "sage", "response_format", "mp3", "input", text, "speed", 1.0);
+    }
+
+    private byte[] synthesize(String text) {
+        upstreamCalls.incrementAndGet();
+        return synthesizedBytes(text);
+    }
+
+    private static byte[] synthesizedBytes(String text) {
+        return ("ID3" + text).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private TtsCacheProperties props() {
+        TtsCacheProperties props = new TtsCacheProperties();
+        props.getDisk().setDir(dir.toString());
+        return props;
+    }
+}
@@ -0,0 +1,155 @@
+package com.istory.storyengine.service.tts;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+class TtsProvidersTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final TtsProviderProperties props = new TtsProviderProperties();
+
+    {
+        props.getLocal().getCommand().add("fake");
+        props.getHedging().setMinDelay(Duration.ofMillis(20));
+        props.getHedging().setMaxDelay(Duration.ofMillis(200));
+        props.getHedging().setMinSamples(5);
+    }
+
+    @Test
+    void fastPrimaryNeverStartsTheFallback() {
+        Fake local = new Fake("local", Duration.ZERO);
+        TtsProviders providers = providers(new Fake("openai", Duration.ZERO), local);
+
+        String audio = providers.hedge(TtsProviders.COMPLETE, () -> "remote", p -> "local", lost -> {});
+
+        Assertions.assertEquals("remote", audio);
+        Assertions.assertEquals(0, local.calls);
+    }
+
+    @Test
+    void slowPrimaryIsRacedAndKeptForTheCache() throws Exception {
+        TtsProviders providers = providers(new Fake("openai", Duration.ZERO), new Fake("local", Duration.ZERO));
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> lost = new CompletableFuture<>();
+
+        String audio = providers.hedge(TtsProviders.COMPLETE, () -> {
+            await(release);
+            return "remote";
+        }, p -> "local", lost::complete);
+        release.countDown();
+
+        Assertions.assertEquals("local", audio);
+        // le principal n'est pas annulé : son résultat est remis (remplissage du cache)
+        Assertions.assertEquals("remote", lost.get(1, TimeUnit.SECONDS));
+        Assertions.assertEquals(1.0, registry.counter("tts.hedges", "reason", "slow", "winner", "fallback").count());
+    }
+
+    @Test
+    void failingPrimaryFallsBackAtOnce() {
+        TtsProviders providers = providers(new Fake("openai", Duration.ZERO), new Fake("local", Duration.ZERO));
+
+        String audio = providers.hedge(TtsProviders.COMPLETE, () -> {
+            throw new IllegalStateException("upstream 503");
+        }, p -> "local", lost -> {});
+
+        Assertions.assertEquals("local", audio);
+        Assertions.assertEquals(1.0, registry.counter("tts.hedges", "reason", "error", "winner", "fallback").count());
+    }
+
+    @Test
+    void bothFailingSurfacesThePrimaryError() {
+        TtsProviders providers = providers(new Fake("openai", Duration.ZERO), new Fake("local", Duration.ZERO));
+
+        IllegalStateException e = Assertions.assertThrows(IllegalStateException.class,
+                () -> providers.hedge(TtsProviders.COMPLETE,
+                        () -> { throw new IllegalStateException("upstream 503"); },
+                        p -> { throw new IllegalStateException("engine crashed"); },
+                        lost -> {}));
+        Assertions.assertEquals("upstream 503", e.getMessage());
+    }
+
+    @Test
+    void noFallbackConfiguredMeansNoHedging() {
+        props.getLocal().getCommand().clear();
+        TtsProviders providers = new TtsProviders(
+                List.of(new Fake("openai", Duration.ZERO), new LocalSpeechProvider(props)), props, registry);
+
+        Assertions.assertTrue(providers.fallback().isEmpty());
+        Assertions.assertThrows(IllegalStateException.class, () -> providers.hedge(TtsProviders.COMPLETE,
+                () -> { throw new IllegalStateException("upstream 503"); }, p -> "local", lost -> {}));
+    }
+
+    @Test
+    void hedgeDelayFollowsThePrimaryP95WithinBounds() {
+        Fake remote = new Fake("openai", Duration.ofMillis(50));
+        TtsProviders providers = providers(remote, new Fake("local", Duration.ZERO));
+
+        // pas assez de mesures : délai maximal
+        Assertions.assertEquals(Duration.ofMillis(200), providers.hedgeDelay(TtsProviders.COMPLETE));
+
+        for (int i = 0; i < 5; i++) providers.synthesize(remote, Map.of("input", "Bonjour"));
+
+        Duration delay = providers.hedgeDelay(TtsProviders.COMPLETE);
+        Assertions.assertTrue(delay.compareTo(Duration.ofMillis(50)) >= 0 && delay.compareTo(Duration.ofMillis(200)) < 0, delay.toString());
+        Assertions.assertEquals(5, registry.timer("tts.provider.latency", "provider", "openai", "phase", "complete").count());
+    }
+
+    @Test
+    void latencyWindowKeepsOnlyRecentSamples() {
+        LatencyWindow window = new LatencyWindow(4);
+        for (long v : new long[]{1000, 1000, 1000, 1000, 1, 2, 3, 4}) window.record(v);
+
+        Assertions.assertEquals(4, window.percentile(0.95, 1).orElseThrow());
+        Assertions.assertEquals(2, window.percentile(0.5, 1).orElseThrow());
+        Assertions.assertTrue(window.percentile(0.95, 5).isEmpty());
+    }
+
+    private TtsProviders providers(TtsProvider... all) {
+        return new TtsProviders(List.of(all), props, registry);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Fake implements TtsProvider {
+
+        private final String name;
+        private final Duration latency;
+        private int calls;
+
+        Fake(String name, Duration latency) {
+            this.name = name;
+            this.latency = latency;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public byte[] synthesize(Map<String, Object> request) {
+            calls++;
+            try {
+                Thread.sleep(latency.toMillis());
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return (name + ":" + request.get("input")).getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
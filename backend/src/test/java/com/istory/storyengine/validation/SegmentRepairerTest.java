@@ -0,0 +1,79 @@
+package com.istory.storyengine.validation;
+
+import com.istory.storyengine.model.Choice;
+import com.istory.storyengine.model.StorySegment;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+class SegmentRepairerTest {
+
+    private final SegmentRepairer repairer = new SegmentRepairer();
+    private final StorySegmentValidator validator = new StorySegmentValidator();
+
+    @Test
+    void fixesMoralIdCaseMismatch() {
+        StorySegment segment = segment(List.of("A", "B", "C", "D"), Set.of("b", " d "));
+
+        Assertions.assertFalse(validator.violations(segment).isEmpty());
+        repairer.repairLocally(segment);
+
+        Assertions.assertEquals(Set.of("B", "D"), segment.getMoralChoiceIds());
+        Assertions.assertTrue(validator.violations(segment).isEmpty());
+    }
+
+    @Test
+    void renumbersDuplicateIdsWhenMoralIdsStayUnambiguous() {
+        StorySegment segment = segment(List.of("A", "A", "C", "D"), Set.of("C", "D"));
+
+        Assertions.assertFalse(validator.violations(segment).isEmpty());
+        repairer.repairLocally(segment);
+
+        Assertions.assertEquals(List.of("A", "B", "C", "D"), segment.getChoices().stream().map(Choice::getId).toList());
+        Assertions.assertEquals(Set.of("C", "D"), segment.getMoralChoiceIds());
+        Assertions.assertTrue(validator.violations(segment).isEmpty());
+    }
+
+    @Test
+    void leavesAmbiguousDuplicatesToTheModel() {
+        StorySegment segment = segment(List.of("A", "A", "C", "D"), Set.of("A", "D"));
+
+        repairer.repairLocally(segment);
+
+        Assertions.assertFalse(validator.violations(segment).isEmpty());
+    }
+
+    @Test
+    void completesEndedSegment() {
+        StorySegment segment = new StorySegment();
+        segment.setNarration("Le trésor disparaît.");
+        segment.setEnded(true);
+        segment.setChoices(new ArrayList<>(List.of(choice("A"))));
+        segment.setMoralChoiceIds(Set.of("A"));
+
+        List<String> fixes = repairer.repairLocally(segment);
+
+        Assertions.assertEquals(3, fixes.size());
+        Assertions.assertTrue(validator.violations(segment).isEmpty());
+    }
+
+    private static StorySegment segment(List<String> ids, Set<String> moral) {
+        StorySegment segment = new StorySegment();
+        segment.setNarration("Lina hésite devant la porte.");
+        List<Choice> choices = new ArrayList<>();
+        for (String id : ids) choices.add(choice(id));
+        segment.setChoices(choices);
+        segment.setMoralChoiceIds(Set.copyOf(moral));
+        return segment;
+    }
+
+    private static Choice choice(String id) {
+        Choice c = new Choice();
+        c.setId(id);
+        c.setText("Choix " + id);
+        return c;
+    }
+}